@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads an operation file in the binary format written by BinaryOperationWriter, which describes the layout. The file
+ * is read through a FileChannel into a direct buffer and each record is decoded with a few absolute reads, so a replay
+ * is bound by the I/O rather than by parsing.
+ */
+public class BinaryOperationReader implements OperationSource {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private boolean endOfFile;
+    private long lineNumber;
+
+    //the current operation
+    private byte type;
+    private int key1;
+    private int key2;
+    private double value;
+
+    /**
+     * Opens a binary operation file
+     * @param path - path of the file
+     * @throws IOException - if the file cannot be opened or is not a binary operation file
+     */
+    public BinaryOperationReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.flip();
+        try {
+            if(!fill(BinaryOperationWriter.HEADER_SIZE) || this.buffer.getInt() != BinaryOperationWriter.MAGIC
+                    || this.buffer.getInt() != BinaryOperationWriter.VERSION){
+                throw new IOException("not a binary operation file, or written by another version");
+            }
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads more of the file until the buffer holds a number of unread bytes or the end of the file is reached
+     * @param size - number of bytes
+     * @return - false if the file ends before
+     * @throws IOException - if the file cannot be read
+     */
+    private boolean fill(int size) throws IOException {
+        if(this.buffer.remaining() >= size){
+            return true;
+        }
+        this.buffer.compact();
+        while(this.buffer.position() < size && !this.endOfFile){
+            if(this.channel.read(this.buffer) < 0){
+                this.endOfFile = true;
+            }
+        }
+        //read ahead as far as the buffer goes, the channel returns what it has
+        if(!this.endOfFile && this.buffer.hasRemaining() && this.channel.read(this.buffer) < 0){
+            this.endOfFile = true;
+        }
+        this.buffer.flip();
+        return this.buffer.remaining() >= size;
+    }
+
+    /**
+     * Decodes the next record of the file
+     * @return - false if the end of the file is reached
+     * @throws IOException - if the file cannot be read, ends in the middle of a record or holds an unknown type
+     */
+    @Override
+    public boolean next() throws IOException {
+        if(!fill(BinaryOperationWriter.RECORD_SIZE)){
+            if(this.buffer.hasRemaining()){
+                throw new IOException("binary operation file ends in the middle of record " + (this.lineNumber + 1));
+            }
+            return false;
+        }
+        int position = this.buffer.position();
+        this.type = this.buffer.get(position);
+        this.key1 = this.buffer.getInt(position + 1);
+        if(this.type == INSERT){
+            this.value = this.buffer.getDouble(position + 5);
+        }else if(this.type == RANGE_SEARCH){
+            this.key2 = this.buffer.getInt(position + 5);
+        }else if(this.type < INITIALIZE || this.type > RANGE_SEARCH){
+            throw new IOException("unknown operation type " + this.type + " in record " + (this.lineNumber + 1));
+        }
+        this.buffer.position(position + BinaryOperationWriter.RECORD_SIZE);
+        this.lineNumber++;
+        return true;
+    }
+
+    @Override
+    public byte getType() {
+        return type;
+    }
+
+    @Override
+    public int getKey1() {
+        return key1;
+    }
+
+    @Override
+    public int getKey2() {
+        return key2;
+    }
+
+    @Override
+    public double getValue() {
+        return value;
+    }
+
+    @Override
+    public String getName(){
+        switch(this.type){
+            case INITIALIZE:
+                return bplustree.INITIALIZE;
+            case INSERT:
+                return bplustree.INSERT;
+            case DELETE:
+                return bplustree.DELETE;
+            default:
+                return bplustree.SEARCH;
+        }
+    }
+
+    @Override
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
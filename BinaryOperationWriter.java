@@ -0,0 +1,136 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes an operation file in the binary format read by BinaryOperationReader, and converts text operation files to
+ * it. Every operation is a fixed-width record, so a replay reads it with no parsing at all and the file is about
+ * two thirds of the size of the text one.
+ *
+ * File layout, little endian:
+ * header (HEADER_SIZE bytes): magic (4), format version (4)
+ * records (RECORD_SIZE bytes each): type (1), key or order (4), then the value of an insert (8), the higher bound of a
+ * range search (4) followed by 4 zero bytes, or 8 zero bytes for the other types. The types are those of
+ * OperationSource other than INVALID
+ *
+ * Usage: java BinaryOperationWriter input.txt output.ops
+ */
+public class BinaryOperationWriter implements Closeable {
+    static final int MAGIC = 0x53504F42; //"BOPS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 13;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long count;
+
+    /**
+     * Creates a binary operation file, replacing it if it exists
+     * @param path - path of the file
+     * @throws IOException - if the file cannot be created
+     */
+    public BinaryOperationWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.putInt(MAGIC).putInt(VERSION);
+    }
+
+    /**
+     * Appends an operation
+     * @param type - type of the operation, see OperationSource
+     * @param key1 - the order of Initialize, the key of the others or the lower bound of a range search
+     * @param key2 - the higher bound of a range search, ignored for the other types
+     * @param value - the value of an insert, ignored for the other types
+     * @throws IOException - if the file cannot be written
+     */
+    public void write(byte type, int key1, int key2, double value) throws IOException {
+        if(type < OperationSource.INITIALIZE || type > OperationSource.RANGE_SEARCH){
+            throw new IllegalArgumentException("operation type " + type + " cannot be written");
+        }
+        if(this.buffer.remaining() < RECORD_SIZE){
+            flush();
+        }
+        this.buffer.put(type).putInt(key1);
+        if(type == OperationSource.INSERT){
+            this.buffer.putDouble(value);
+        }else if(type == OperationSource.RANGE_SEARCH){
+            this.buffer.putInt(key2).putInt(0);
+        }else{
+            this.buffer.putLong(0);
+        }
+        this.count++;
+    }
+
+    private void flush() throws IOException {
+        this.buffer.flip();
+        while(this.buffer.hasRemaining()){
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Returns the number of operations written
+     * @return - long value
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Writes the buffered records and closes the file
+     * @throws IOException - if the file cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Copies every operation of an operation file to a binary one. An invalid operation cannot be stored in the binary
+     * format, so it is reported the way the replay reports it and left out
+     * @param source - the operation file
+     * @param writer - the binary file
+     * @return - number of operations written
+     * @throws IOException - if a file cannot be read or written
+     */
+    public static long convert(OperationSource source, BinaryOperationWriter writer) throws IOException {
+        while(source.next()){
+            if(source.getType() == OperationSource.INVALID){
+                System.out.println("Invalid operation "+ source.getName());
+            }else{
+                writer.write(source.getType(), source.getKey1(), source.getKey2(), source.getValue());
+            }
+        }
+        return writer.getCount();
+    }
+
+    /**
+     * Converts a text operation file to the binary format
+     * @param args - path of the text file and path of the binary file
+     */
+    public static void main(String args[]){
+        if(args.length != 2){
+            System.out.println("Pass the text operation file and the binary file to write as arguements");
+            return;
+        }
+        try(OperationReader reader = new OperationReader(Paths.get(args[0]));
+            BinaryOperationWriter writer = new BinaryOperationWriter(Paths.get(args[1]))){
+            convert(reader, writer);
+        }catch(Exception e){
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A fixed number of in-memory frames that cache the pages of a PageFile. A page is pinned while it is used and can
+ * only be evicted once every pin is released. Eviction uses the CLOCK algorithm: the clock hand sweeps over the frames
+ * and gives every recently used frame a second chance by clearing its reference bit, so hot pages such as the upper
+ * levels of a tree stay cached while the cost per eviction stays constant. A dirty page is written back to the file
+ * when it is evicted or flushed.
+ */
+public class BufferPool implements PageCache {
+    private final PageFile file;
+    private final ByteBuffer[] frames;
+    private final int[] pageIds; //page held by each frame, -1 for a free frame
+    private final int[] pinCounts;
+    private final boolean[] dirty;
+    private final boolean[] referenced;
+    private final Map<Integer, Integer> pageTable; //page id to frame index
+    private int clockHand;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param file - the page file
+     * @param numFrames - number of pages that can be cached at the same time
+     */
+    public BufferPool(PageFile file, int numFrames){
+        this.file = file;
+        this.frames = new ByteBuffer[numFrames];
+        this.pageIds = new int[numFrames];
+        this.pinCounts = new int[numFrames];
+        this.dirty = new boolean[numFrames];
+        this.referenced = new boolean[numFrames];
+        this.pageTable = new HashMap<>(numFrames * 2);
+        for(int i = 0; i < numFrames; i++){
+            this.frames[i] = ByteBuffer.allocate(file.getPageSize());
+            this.pageIds[i] = -1;
+        }
+    }
+
+    /**
+     * Pins a page, reading it from the file if it is not cached
+     * @param pageId - id of the page
+     * @return - the buffer that holds the page, valid until the page is unpinned
+     */
+    @Override
+    public ByteBuffer pin(int pageId){
+        Integer frame = this.pageTable.get(pageId);
+        if(frame != null){
+            this.hits++;
+        }else{
+            this.misses++;
+            frame = allocateFrame(pageId);
+            try {
+                this.file.read(pageId, this.frames[frame]);
+            } catch (IOException e) {
+                this.pageTable.remove(pageId);
+                this.pageIds[frame] = -1;
+                throw new UncheckedIOException(e);
+            }
+        }
+        this.pinCounts[frame]++;
+        this.referenced[frame] = true;
+        return this.frames[frame];
+    }
+
+    /**
+     * Pins a page that is about to be written from scratch, without reading it from the file. The page is zeroed
+     * and marked dirty
+     * @param pageId - id of the page
+     * @return - the buffer that holds the page, valid until the page is unpinned
+     */
+    @Override
+    public ByteBuffer pinNew(int pageId){
+        Integer frame = this.pageTable.get(pageId);
+        if(frame == null){
+            frame = allocateFrame(pageId);
+        }
+        ByteBuffer page = this.frames[frame];
+        int i = 0;
+        for(; i + 8 <= page.capacity(); i += 8){
+            page.putLong(i, 0);
+        }
+        for(; i < page.capacity(); i++){
+            page.put(i, (byte) 0);
+        }
+        this.pinCounts[frame]++;
+        this.referenced[frame] = true;
+        this.dirty[frame] = true;
+        return page;
+    }
+
+    /**
+     * Releases a pin on a page
+     * @param pageId - id of the page
+     * @param isDirty - true if the page was modified while it was pinned
+     */
+    @Override
+    public void unpin(int pageId, boolean isDirty){
+        int frame = this.pageTable.get(pageId);
+        this.pinCounts[frame]--;
+        if(isDirty){
+            this.dirty[frame] = true;
+        }
+    }
+
+    /**
+     * Finds a frame for a page that is not cached, evicting the page in it if needed, and registers it for the page
+     * @param pageId - id of the page
+     * @return - index of the frame
+     */
+    private int allocateFrame(int pageId){
+        int numFrames = this.frames.length;
+        //two full sweeps clear every reference bit, so a third one finds an unpinned frame if there is any
+        for(int i = 0; i < 3 * numFrames; i++){
+            int frame = this.clockHand;
+            this.clockHand = (this.clockHand + 1) % numFrames;
+            if(this.pinCounts[frame] > 0){
+                continue;
+            }
+            if(this.referenced[frame]){
+                this.referenced[frame] = false;
+                continue;
+            }
+            if(this.pageIds[frame] != -1){
+                if(this.dirty[frame]){
+                    writeBack(frame);
+                }
+                this.pageTable.remove(this.pageIds[frame]);
+            }
+            this.pageIds[frame] = pageId;
+            this.dirty[frame] = false;
+            this.pageTable.put(pageId, frame);
+            return frame;
+        }
+        throw new IllegalStateException("all " + numFrames + " frames of the buffer pool are pinned");
+    }
+
+    /**
+     * Writes the page in a frame back to the file
+     * @param frame - index of the frame
+     */
+    private void writeBack(int frame){
+        try {
+            this.file.write(this.pageIds[frame], this.frames[frame]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.dirty[frame] = false;
+    }
+
+    /**
+     * Writes every dirty page back to the file. The pages stay cached
+     */
+    @Override
+    public void flush(){
+        for(int frame = 0; frame < this.frames.length; frame++){
+            if(this.dirty[frame]){
+                writeBack(frame);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pins served from the cache
+     * @return - long value
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of pins that had to read the page from the file
+     * @return - long value
+     */
+    public long getMisses() {
+        return misses;
+    }
+}
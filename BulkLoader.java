@@ -0,0 +1,227 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a B+ tree bottom-up from pairs that arrive in sorted order. The leaves are packed up to a fill factor as the
+ * pairs stream in and the index levels are then built one level at a time over the finished nodes, so construction
+ * is linear in the number of pairs and the tree is denser and shallower than one built by repeated inserts, which
+ * leave the nodes about half full after a sequential load.
+ */
+public class BulkLoader {
+    private final int indexOrder;
+    private final int leafOrder;
+    private final int pairsPerLeaf;
+    private final int childrenPerIndexNode;
+    private final int minPairs;
+    private final int maxPairs;
+    private final int minDegree;
+    private final boolean augmented;
+    private List<LeafNode> leaves;
+    private LeafNode curLeaf;
+
+    /**
+     * @param m - order of the tree
+     * @param fillFactor - fraction of the capacity of a node that is filled, in the range (0, 1]. Nodes are never
+     *                   filled below the minimum occupancy of the tree
+     */
+    public BulkLoader(int m, double fillFactor){
+        this(m, fillFactor, false);
+    }
+
+    /**
+     * @param m - order of the tree
+     * @param fillFactor - fraction of the capacity of a node that is filled, in the range (0, 1]
+     * @param augmented - whether the index nodes of the tree keep subtree counts and sums
+     */
+    public BulkLoader(int m, double fillFactor, boolean augmented){
+        this(m, m, fillFactor, augmented);
+    }
+
+    /**
+     * @param indexOrder - order of the index nodes of the tree
+     * @param leafOrder - order of the leaf nodes of the tree
+     * @param fillFactor - fraction of the capacity of a node that is filled, in the range (0, 1]
+     * @param augmented - whether the index nodes of the tree keep subtree counts and sums
+     */
+    public BulkLoader(int indexOrder, int leafOrder, double fillFactor, boolean augmented){
+        if(fillFactor <= 0 || fillFactor > 1){
+            throw new IllegalArgumentException("fill factor must be in (0, 1], got " + fillFactor);
+        }
+        this.indexOrder = indexOrder;
+        this.leafOrder = leafOrder;
+        this.augmented = augmented;
+        this.maxPairs = leafOrder - 1;
+        this.minPairs = (int)(Math.ceil(leafOrder / 2.0) - 1);
+        this.minDegree = (int)Math.ceil(indexOrder / 2.0);
+        this.pairsPerLeaf = Math.max(1, Math.max(this.minPairs, (int)Math.round(fillFactor * this.maxPairs)));
+        this.childrenPerIndexNode = Math.max(2, Math.max(this.minDegree, (int)Math.round(fillFactor * indexOrder)));
+        this.leaves = new ArrayList<>();
+    }
+
+    /**
+     * Builds a tree from two parallel arrays of keys and values sorted by key
+     * @param m - order of the tree
+     * @param fillFactor - fraction of the capacity of a node that is filled
+     * @param keys - keys sorted in non-decreasing order
+     * @param values - values[i] is the value of keys[i]
+     * @return - a new bplustree that holds all the pairs
+     */
+    public static bplustree load(int m, double fillFactor, int[] keys, double[] values){
+        if(keys.length != values.length){
+            throw new IllegalArgumentException("keys and values must have the same length");
+        }
+        BulkLoader loader = new BulkLoader(m, fillFactor);
+        for(int i = 0; i < keys.length; i++){
+            loader.add(keys[i], values[i]);
+        }
+        return loader.build();
+    }
+
+    /**
+     * Appends a pair to the tree being built. The key must not be less than the key of the previous pair
+     * @param key - key of the pair
+     * @param value - value of the pair
+     */
+    public void add(int key, double value){
+        if(this.leaves == null){
+            throw new IllegalStateException("the tree has already been built");
+        }
+        if(this.curLeaf == null){
+            this.curLeaf = new LeafNode(this.leafOrder, new int[this.leafOrder], new double[this.leafOrder], 0);
+        }else{
+            int curNumPairs = this.curLeaf.getCurNumPairs();
+            if(key < this.curLeaf.getKey(curNumPairs - 1)){
+                throw new IllegalArgumentException("keys must be added in sorted order, got " + key + " after "
+                        + this.curLeaf.getKey(curNumPairs - 1));
+            }
+            if(curNumPairs == this.pairsPerLeaf){
+                this.leaves.add(this.curLeaf);
+                LeafNode newLeaf = new LeafNode(this.leafOrder, new int[this.leafOrder], new double[this.leafOrder], 0);
+                this.curLeaf.setRightSibling(newLeaf);
+                newLeaf.setLeftSibling(this.curLeaf);
+                this.curLeaf = newLeaf;
+            }
+        }
+        int curNumPairs = this.curLeaf.getCurNumPairs();
+        this.curLeaf.getKeys()[curNumPairs] = key;
+        this.curLeaf.getValues()[curNumPairs] = value;
+        this.curLeaf.setCurNumPairs(curNumPairs + 1);
+    }
+
+    /**
+     * Builds the index levels over the leaves and returns the tree. The loader cannot be used afterwards
+     * @return - a new bplustree that holds all the added pairs
+     */
+    public bplustree build(){
+        if(this.leaves == null){
+            throw new IllegalStateException("the tree has already been built");
+        }
+        List<LeafNode> leaves = this.leaves;
+        this.leaves = null;
+        if(this.curLeaf == null){
+            return new bplustree(this.indexOrder, this.leafOrder, this.augmented, null, null);
+        }
+        leaves.add(this.curLeaf);
+        balanceLastLeaves(leaves);
+
+        //build the index levels bottom up until a level has a single node, which is the root
+        List<Node> level = new ArrayList<>(leaves);
+        int[] minKeys = new int[level.size()];
+        for(int i = 0; i < minKeys.length; i++){
+            minKeys[i] = leaves.get(i).getKey(0);
+        }
+        while(level.size() > 1){
+            int[] groupSizes = groupSizes(level.size());
+            List<Node> parents = new ArrayList<>(groupSizes.length);
+            int[] parentMinKeys = new int[groupSizes.length];
+            IndexNode prev = null;
+            int childIdx = 0;
+            for(int g = 0; g < groupSizes.length; g++){
+                IndexNode node = new IndexNode(this.indexOrder, new int[this.indexOrder]);
+                if(this.augmented){
+                    node.enableAugmentation();
+                }
+                parentMinKeys[g] = minKeys[childIdx];
+                for(int i = 0; i < groupSizes[g]; i++, childIdx++){
+                    //the key before each child except the first is the smallest key in that child's subtree
+                    if(i > 0){
+                        node.getKeys()[i - 1] = minKeys[childIdx];
+                    }
+                    node.addChild(level.get(childIdx));
+                }
+                if(prev != null){
+                    prev.setRightSibling(node);
+                    node.setLeftSibling(prev);
+                }
+                prev = node;
+                parents.add(node);
+            }
+            level = parents;
+            minKeys = parentMinKeys;
+        }
+
+        Node root = level.get(0);
+        return new bplustree(this.indexOrder, this.leafOrder, this.augmented, root.isLeaf ? null : (IndexNode) root,
+                leaves.get(0));
+    }
+
+    /**
+     * The last leaf gets whatever pairs are left over and may have fewer than the minimum number of pairs. It is
+     * merged into the previous leaf if both fit in one node, otherwise the pairs of the two leaves are split evenly
+     * @param leaves - all the leaves in order
+     */
+    private void balanceLastLeaves(List<LeafNode> leaves){
+        int n = leaves.size();
+        LeafNode last = leaves.get(n - 1);
+        if(n == 1 || last.getCurNumPairs() >= this.minPairs){
+            return;
+        }
+        LeafNode prev = leaves.get(n - 2);
+        int total = prev.getCurNumPairs() + last.getCurNumPairs();
+        if(total <= this.maxPairs){
+            prev.appendPairs(last);
+            prev.setRightSibling(null);
+            leaves.remove(n - 1);
+            return;
+        }
+        int numMoved = prev.getCurNumPairs() - (total - total / 2);
+        int[] prevKeys = prev.getKeys();
+        double[] prevValues = prev.getValues();
+        int[] lastKeys = last.getKeys();
+        double[] lastValues = last.getValues();
+        System.arraycopy(lastKeys, 0, lastKeys, numMoved, last.getCurNumPairs());
+        System.arraycopy(lastValues, 0, lastValues, numMoved, last.getCurNumPairs());
+        System.arraycopy(prevKeys, prev.getCurNumPairs() - numMoved, lastKeys, 0, numMoved);
+        System.arraycopy(prevValues, prev.getCurNumPairs() - numMoved, lastValues, 0, numMoved);
+        prev.setCurNumPairs(prev.getCurNumPairs() - numMoved);
+        last.setCurNumPairs(last.getCurNumPairs() + numMoved);
+    }
+
+    /**
+     * Splits the nodes of a level into groups that become the children of one index node each. Every group has
+     * childrenPerIndexNode nodes except the last two, which are merged or evenly split if the last one would have
+     * fewer than the minimum degree
+     * @param numNodes - number of nodes in the level
+     * @return - number of children of each index node in the parent level
+     */
+    private int[] groupSizes(int numNodes){
+        int numGroups = (numNodes + this.childrenPerIndexNode - 1) / this.childrenPerIndexNode;
+        int[] sizes = new int[numGroups];
+        for(int g = 0; g < numGroups; g++){
+            sizes[g] = Math.min(this.childrenPerIndexNode, numNodes - g * this.childrenPerIndexNode);
+        }
+        int last = sizes[numGroups - 1];
+        if(numGroups > 1 && last < this.minDegree){
+            int total = sizes[numGroups - 2] + last;
+            if(total <= this.indexOrder){
+                int[] merged = new int[numGroups - 1];
+                System.arraycopy(sizes, 0, merged, 0, numGroups - 1);
+                merged[numGroups - 2] = total;
+                return merged;
+            }
+            sizes[numGroups - 2] = total - total / 2;
+            sizes[numGroups - 1] = total / 2;
+        }
+        return sizes;
+    }
+}
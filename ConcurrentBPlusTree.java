@@ -0,0 +1,554 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A B+ tree that can be used by many threads at once. Every node is a ConcurrentLeafNode or a ConcurrentIndexNode,
+ * whose NodeLatch holds a version counter and a high key, the exclusive upper bound of the keys that belong to it.
+ * Readers take no latches: they read the version of a node, read the node and then check that the version did not
+ * change, retrying the node if it did. A split only ever moves the upper part of a node to a new right sibling, so a
+ * reader whose key is at or above the high key of the node it reached just follows the right sibling link instead of
+ * starting over from the root.
+ *
+ * Writers can split nodes in one of two ways:
+ * - optimistic lock coupling (the default): full nodes are split on the way down while the node and its parent are
+ *   write locked, so a split never has to go back up more than one level.
+ * - B-link (Lehman and Yao): a node is split after the insert that overflows it. The new right sibling is linked in
+ *   and the node is unlocked before the separator key is added to the parent, so a writer holds only one latch at a
+ *   time and splits proceed bottom-up. Readers that arrive in between find the new node through the right link. This
+ *   suits insert heavy workloads, where coupled latches on the upper levels would serialize the writers.
+ *
+ * Unlike bplustree, a key is stored at most once: inserting an existing key replaces its value. Deletes remove the
+ * pair from its leaf without borrowing or merging, so leaves may become underfull or empty. Nodes are therefore never
+ * removed from the tree and a reader that holds a reference to a node can keep following it safely.
+ */
+public class ConcurrentBPlusTree {
+    private final int m;
+    private final int maxPairs;
+    private final boolean bLink;
+    private final Object rootLock; //serializes the creation of a new root in B-link mode
+    private volatile Node root;
+
+    public ConcurrentBPlusTree(int m){
+        this(m, false);
+    }
+
+    /**
+     * @param m - order of the tree
+     * @param bLink - true to split nodes bottom-up B-link style, false to split them top-down with lock coupling
+     */
+    public ConcurrentBPlusTree(int m, boolean bLink){
+        if(m < 3){
+            throw new IllegalArgumentException("order must be at least 3, got " + m);
+        }
+        this.m = m;
+        this.maxPairs = m - 1;
+        this.bLink = bLink;
+        this.rootLock = new Object();
+        this.root = new ConcurrentLeafNode(m, new int[m], new double[m], 0);
+    }
+
+    /**
+     * Search for a given key in the B+ tree
+     * @param key - the key to be searched
+     * @return - Double value associated with the key. If the key is not found, then the value is null
+     */
+    public Double search(int key){
+        long[] versionHolder = new long[1];
+        LeafNode leafNode = findLeafNode(this.root, key, versionHolder);
+        while(true){
+            int idx = leafNode.search(key);
+            double value = idx == -1 ? 0 : leafNode.getValue(idx);
+            if(latch(leafNode).validateVersion(versionHolder[0])){
+                return idx == -1 ? null : value;
+            }
+            //the leaf node changed while it was read. The key is still in it or in a node to its right
+            leafNode = findLeafNode(leafNode, key, versionHolder);
+        }
+    }
+
+    /**
+     * Search for a range of values in the B+ tree. Each leaf is read optimistically along the sibling chain and its
+     * values are only added to the result once the read is validated; a leaf that changed while it was read is read
+     * again. The result therefore never contains a torn leaf, but pairs inserted or deleted concurrently in the part
+     * of the range that was not read yet may or may not be seen
+     * @param key1 - the lower bound of the search
+     * @param key2 -  the higher bound of the search
+     * @return - List<Double> contains values of all the keys that fall in the range
+     */
+    public List<Double> search(int key1, int key2){
+        List<Double> result = new ArrayList<>();
+        double[] buffer = new double[this.m];
+        long[] versionHolder = new long[1];
+        long from = key1; //the smallest key that has not been returned yet
+        LeafNode leafNode = findLeafNode(this.root, key1, versionHolder);
+
+        while(from <= key2){
+            //copy the pairs in the range to the buffer and only add them to the result after validating
+            int numPairs = leafNode.getCurNumPairs();
+            int[] keys = leafNode.getKeys();
+            double[] values = leafNode.getValues();
+            int count = 0;
+            long lastKey = Long.MIN_VALUE;
+            boolean done = false;
+            for(int i = 0; i < numPairs; i++){
+                if(keys[i] > key2){
+                    done = true;
+                    break;
+                }
+                if(keys[i] >= from){
+                    buffer[count++] = values[i];
+                    lastKey = keys[i];
+                }
+            }
+            LeafNode next = leafNode.getRightSibling();
+            if(!latch(leafNode).validateVersion(versionHolder[0])){
+                leafNode = findLeafNode(leafNode, (int) from, versionHolder);
+                continue;
+            }
+            for(int i = 0; i < count; i++){
+                result.add(buffer[i]);
+            }
+            if(count > 0){
+                from = lastKey + 1;
+            }
+            if(done || next == null){
+                break;
+            }
+            leafNode = findLeafNode(next, (int) Math.min(from, key2), versionHolder);
+        }
+        return result;
+    }
+
+    /**
+     * Descends optimistically from a node to the leaf node for a key, following right sibling links whenever the key
+     * is at or above the high key of a node. Only the reads of each node are validated: a node never loses keys to
+     * its left, so once the parent is read correctly the child it points to or one of its right siblings covers the
+     * key
+     * @param node - the node to start from, either the root or a node known to be at or left of the key's leaf
+     * @param key - key to be searched
+     * @param versionHolder - array whose first element is set to the version of the returned leaf node
+     * @return - the leaf node that covers the key as long as it stays at the returned version
+     */
+    private LeafNode findLeafNode(Node node, int key, long[] versionHolder){
+        while(true){
+            long version = latch(node).readVersion();
+            if(version < 0){
+                Thread.onSpinWait();
+                continue;
+            }
+            if(key >= latch(node).highKey){
+                Node right = getRightSibling(node);
+                if(latch(node).validateVersion(version)){
+                    node = right;
+                }
+                continue;
+            }
+            if(node.isLeaf){
+                versionHolder[0] = version;
+                return (LeafNode) node;
+            }
+            IndexNode indexNode = (IndexNode) node;
+            Node child = indexNode.getChildren()[indexNode.getChildSubtreeIdxForAKey(key)];
+            if(child != null && latch(indexNode).validateVersion(version)){
+                node = child;
+            }
+        }
+    }
+
+    /**
+     * Write locks the leaf node that covers a key. The leaf node found by the optimistic descent may have been split
+     * before it was locked, in which case the lock is passed along the right sibling links, one node at a time
+     * @param key - the key
+     * @return - the write locked leaf node
+     */
+    private LeafNode lockLeafNode(int key){
+        Node node = findLeafNode(this.root, key, new long[1]);
+        latch(node).writeLock();
+        return (LeafNode) moveRightLocked(node, key);
+    }
+
+    /**
+     * Moves a write lock to the right along the sibling links until it is on the node that covers the key. The lock
+     * on a node is released before the next one is taken
+     * @param node - a write locked node at or left of the node that covers the key
+     * @param key - the key
+     * @return - the write locked node that covers the key
+     */
+    private Node moveRightLocked(Node node, int key){
+        while(key >= latch(node).highKey){
+            Node right = getRightSibling(node);
+            latch(node).writeUnlock();
+            latch(right).writeLock();
+            node = right;
+        }
+        return node;
+    }
+
+    /**
+     * Inserts a key value pair into the B+ tree, replacing the value if the key is already present
+     * @param key - key of the dictionary pair to be inserted
+     * @param value - value of the dictionary pair to be inserted
+     */
+    public void insert(int key, double value){
+        if(this.bLink){
+            insertBLink(key, value);
+            return;
+        }
+        while(!tryInsert(key, value)){
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * One attempt at an insert with lock coupling. A full node on the path is split and the attempt restarts, so when
+     * the leaf is reached its parent is known to have room for one more child
+     * @param key - key of the dictionary pair to be inserted
+     * @param value - value of the dictionary pair to be inserted
+     * @return - true if the pair was inserted, false if the attempt has to be restarted
+     */
+    private boolean tryInsert(int key, double value){
+        Node node = this.root;
+        long version = latch(node).readVersion();
+        if(version < 0 || node != this.root){
+            return false;
+        }
+        IndexNode parent = null;
+        long parentVersion = 0;
+        int slot = -1; //index of node in the parent's children array
+
+        while(!node.isLeaf){
+            IndexNode indexNode = (IndexNode) node;
+            if(indexNode.getCurrentDegree() == this.m){
+                if(lockForSplit(parent, parentVersion, indexNode, version)){
+                    splitIndexNode(parent, slot, indexNode);
+                    unlockAfterSplit(parent, indexNode);
+                }
+                return false;
+            }
+            int idx = indexNode.getChildSubtreeIdxForAKey(key);
+            Node child = indexNode.getChildren()[idx];
+            long childVersion = child == null ? -1 : latch(child).readVersion();
+            if(childVersion < 0 || !latch(indexNode).validateVersion(version)){
+                return false;
+            }
+            parent = indexNode;
+            parentVersion = version;
+            slot = idx;
+            node = child;
+            version = childVersion;
+        }
+
+        LeafNode leafNode = (LeafNode) node;
+        if(leafNode.getCurNumPairs() < this.maxPairs){
+            if(!latch(leafNode).tryUpgradeToWriteLock(version)){
+                return false;
+            }
+            insertIntoLeaf(leafNode, key, value);
+            latch(leafNode).writeUnlock();
+            return true;
+        }
+
+        //the leaf node is full, it is split and the pair is inserted into the half it belongs to
+        if(!lockForSplit(parent, parentVersion, leafNode, version)){
+            return false;
+        }
+        int idx = leafNode.search(key);
+        if(idx != -1){
+            leafNode.setValue(idx, value);
+        }else{
+            LeafNode newSibling = splitLeafNode(parent, slot, leafNode);
+            insertIntoLeaf(key < newSibling.getKey(0) ? leafNode : newSibling, key, value);
+        }
+        unlockAfterSplit(parent, leafNode);
+        return true;
+    }
+
+    /**
+     * Inserts a pair into a write locked leaf node that has room for it, or replaces the value of an existing key
+     * @param leafNode - the leaf node
+     * @param key - key of the pair
+     * @param value - value of the pair
+     */
+    private void insertIntoLeaf(LeafNode leafNode, int key, double value){
+        int idx = leafNode.search(key);
+        if(idx != -1){
+            leafNode.setValue(idx, value);
+        }else{
+            leafNode.insertPair(key, value);
+        }
+    }
+
+    /**
+     * Write locks a node that is going to be split and its parent, which receives the separator key. If the node has
+     * no parent, it must still be the root
+     * @param parent - parent of the node, null if the node was reached as the root
+     * @param parentVersion - version of the parent read during the descent
+     * @param node - node to be split
+     * @param version - version of the node read during the descent
+     * @return - true if both nodes are locked, false if either changed and the caller has to restart
+     */
+    private boolean lockForSplit(IndexNode parent, long parentVersion, Node node, long version){
+        if(parent != null && !latch(parent).tryUpgradeToWriteLock(parentVersion)){
+            return false;
+        }
+        if(!latch(node).tryUpgradeToWriteLock(version)){
+            if(parent != null){
+                latch(parent).writeUnlock();
+            }
+            return false;
+        }
+        if(parent == null && node != this.root){
+            latch(node).writeUnlock();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Releases the locks taken by lockForSplit
+     * @param parent - parent of the node, may be null
+     * @param node - the node that was split
+     */
+    private void unlockAfterSplit(IndexNode parent, Node node){
+        latch(node).writeUnlock();
+        if(parent != null){
+            latch(parent).writeUnlock();
+        }
+    }
+
+    /**
+     * Adds the separator key and the new right node created by a split to the parent. If the node that was split is
+     * the root, a new root is created and published
+     * @param parent - write locked parent of the node, null if the node is the root
+     * @param slot - index of the node in the parent's children array
+     * @param node - the node that was split
+     * @param newKey - the separator key between node and newSibling
+     * @param newSibling - the new right sibling of node
+     */
+    private void insertIntoParent(IndexNode parent, int slot, Node node, int newKey, Node newSibling){
+        if(parent == null){
+            this.root = newRoot(node, newKey, newSibling);
+            return;
+        }
+        parent.insertKey(newKey, slot);
+        parent.insertChild(newSibling, slot + 1);
+    }
+
+    /**
+     * Creates a root index node with two children
+     * @param node - the left child
+     * @param newKey - the separator key between the children
+     * @param newSibling - the right child
+     * @return - the new root
+     */
+    private IndexNode newRoot(Node node, int newKey, Node newSibling){
+        int[] keys = new int[this.m];
+        keys[0] = newKey;
+        IndexNode newRoot = new ConcurrentIndexNode(this.m, keys);
+        newRoot.addChild(node);
+        newRoot.addChild(newSibling);
+        return newRoot;
+    }
+
+    /**
+     * Splits a full, write locked leaf node. The new right half is linked into the sibling chain before it is added
+     * to the parent, so a scan that has passed the parent still finds it
+     * @param parent - write locked parent of the leaf node, null if the leaf node is the root
+     * @param slot - index of the leaf node in the parent's children array
+     * @param leafNode - the leaf node to be split
+     * @return - the new right sibling
+     */
+    private LeafNode splitLeafNode(IndexNode parent, int slot, LeafNode leafNode){
+        LeafNode newSibling = leafNode.split(leafNode.getCurNumPairs() / 2);
+        linkRightSibling(leafNode, newSibling.getKey(0), newSibling);
+        insertIntoParent(parent, slot, leafNode, newSibling.getKey(0), newSibling);
+        return newSibling;
+    }
+
+    /**
+     * Splits a full, write locked index node
+     * @param parent - write locked parent of the index node, null if the index node is the root
+     * @param slot - index of the index node in the parent's children array
+     * @param indexNode - the index node to be split
+     */
+    private void splitIndexNode(IndexNode parent, int slot, IndexNode indexNode){
+        int midIdx = (indexNode.getCurrentDegree() - 1) / 2;
+        int newKey = indexNode.getKeys()[midIdx];
+        IndexNode newSibling = indexNode.split(midIdx);
+        linkRightSibling(indexNode, newKey, newSibling);
+        insertIntoParent(parent, slot, indexNode, newKey, newSibling);
+    }
+
+    /**
+     * Inserts a pair B-link style. Only the leaf node is locked for the insert. If it overflows, it is split, the new
+     * right sibling is linked in and the leaf node is unlocked before the separator key is added to the parent
+     * @param key - key of the dictionary pair to be inserted
+     * @param value - value of the dictionary pair to be inserted
+     */
+    private void insertBLink(int key, double value){
+        LeafNode leafNode = lockLeafNode(key);
+        int idx = leafNode.search(key);
+        if(idx != -1){
+            leafNode.setValue(idx, value);
+            latch(leafNode).writeUnlock();
+            return;
+        }
+        if(leafNode.addPair(key, value)){
+            latch(leafNode).writeUnlock();
+            return;
+        }
+
+        //the leaf node is full, the pair makes it overfull and it is split in the middle
+        leafNode.insertPair(key, value);
+        LeafNode newSibling = leafNode.split(leafNode.getCurNumPairs() / 2);
+        int newKey = newSibling.getKey(0);
+        linkRightSibling(leafNode, newKey, newSibling);
+        latch(leafNode).writeUnlock();
+        insertIntoParentBLink(0, leafNode, newKey, newSibling);
+    }
+
+    /**
+     * Adds the separator key and the new right node created by a B-link split to the parent, splitting the parent
+     * and continuing upwards if it overflows. Each parent is locked only after the lock on its child was released,
+     * so other splits of the same node may reach the parent first; the separator is inserted at the position its key
+     * belongs to, which is correct whichever of those nodes the parent already points to
+     * @param level - level of the node that was split, 0 for a leaf node
+     * @param node - the node that was split, already unlocked
+     * @param newKey - the separator key between node and newSibling
+     * @param newSibling - the new right sibling of node, already reachable through the right link of node
+     */
+    private void insertIntoParentBLink(int level, Node node, int newKey, Node newSibling){
+        while(true){
+            IndexNode parent = findIndexNode(newKey, level + 1);
+            if(parent == null){
+                synchronized(this.rootLock){
+                    if(this.root == node){
+                        this.root = newRoot(node, newKey, newSibling);
+                        return;
+                    }
+                }
+                //another node of this level became the root's child, wait for the new root to be published
+                Thread.onSpinWait();
+                continue;
+            }
+
+            latch(parent).writeLock();
+            parent = (IndexNode) moveRightLocked(parent, newKey);
+            int slot = parent.getChildSubtreeIdxForAKey(newKey);
+            parent.insertKey(newKey, slot);
+            parent.insertChild(newSibling, slot + 1);
+            if(!parent.isExceedingLimit()){
+                latch(parent).writeUnlock();
+                return;
+            }
+
+            //the parent is overfull, it is split and its own separator moves up in the next round
+            int midIdx = (int) Math.ceil((this.m + 1) / 2.0) - 1;
+            int parentKey = parent.getKeys()[midIdx];
+            IndexNode parentSibling = parent.split(midIdx);
+            linkRightSibling(parent, parentKey, parentSibling);
+            latch(parent).writeUnlock();
+            level++;
+            node = parent;
+            newKey = parentKey;
+            newSibling = parentSibling;
+        }
+    }
+
+    /**
+     * Descends optimistically from the root towards a key and returns the index node at a given level on the way.
+     * Nodes never change their level and are never removed, so the returned node is at or left of the node of that
+     * level that covers the key, and the caller can lock it and move right
+     * @param key - key to be searched
+     * @param level - level of the wanted index node, counted upwards from 1 for the parents of the leaf nodes
+     * @return - the index node, or null if the tree is not taller than level yet
+     */
+    private IndexNode findIndexNode(int key, int level){
+        Node[] path = new Node[8];
+        int depth = 0;
+        Node node = this.root;
+        while(true){
+            long version = latch(node).readVersion();
+            if(version < 0){
+                Thread.onSpinWait();
+                continue;
+            }
+            if(key >= latch(node).highKey){
+                Node right = getRightSibling(node);
+                if(latch(node).validateVersion(version)){
+                    node = right;
+                }
+                continue;
+            }
+            if(depth == path.length){
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth++] = node;
+            if(node.isLeaf){
+                break;
+            }
+            IndexNode indexNode = (IndexNode) node;
+            Node child = indexNode.getChildren()[indexNode.getChildSubtreeIdxForAKey(key)];
+            if(child == null || !latch(indexNode).validateVersion(version)){
+                depth--;
+                continue;
+            }
+            node = child;
+        }
+        //path[depth - 1] is the leaf node, the nodes above it are one level higher each
+        return level < depth ? (IndexNode) path[depth - 1 - level] : null;
+    }
+
+    /**
+     * Links the new right half of a write locked node that was just split and moves the high keys: the new node takes
+     * over the old high key and the separator becomes the high key of the node
+     * @param node - the node that was split
+     * @param newKey - the separator key between node and newSibling
+     * @param newSibling - the new right half
+     */
+    private void linkRightSibling(Node node, int newKey, Node newSibling){
+        latch(newSibling).highKey = latch(node).highKey;
+        latch(node).highKey = newKey;
+        if(node.isLeaf){
+            LeafNode leafNode = (LeafNode) node;
+            ((LeafNode) newSibling).setRightSibling(leafNode.getRightSibling());
+            leafNode.setRightSibling((LeafNode) newSibling);
+        }else{
+            IndexNode indexNode = (IndexNode) node;
+            ((IndexNode) newSibling).setRightSibling(indexNode.getRightSibling());
+            indexNode.setRightSibling((IndexNode) newSibling);
+        }
+    }
+
+    /**
+     * Returns the latch of a leaf node or an index node of the tree
+     * @param node - the node
+     * @return - NodeLatch reference
+     */
+    private static NodeLatch latch(Node node){
+        return node.isLeaf ? ((ConcurrentLeafNode) node).latch : ((ConcurrentIndexNode) node).latch;
+    }
+
+    /**
+     * Returns the right sibling of a leaf node or an index node
+     * @param node - the node
+     * @return - the right sibling, null for the rightmost node of a level
+     */
+    private static Node getRightSibling(Node node){
+        return node.isLeaf ? ((LeafNode) node).getRightSibling() : ((IndexNode) node).getRightSibling();
+    }
+
+    /**
+     * Deletes the pair with the target key. The pair is removed from its leaf node, which is never merged
+     * @param key - target key
+     */
+    public void delete(int key){
+        LeafNode leafNode = lockLeafNode(key);
+        int idx = leafNode.search(key);
+        if(idx != -1){
+            leafNode.deletePair(idx);
+        }
+        latch(leafNode).writeUnlock();
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * An index node of ConcurrentBPlusTree, which carries the latch that the readers and writers of the node use
+ */
+public class ConcurrentIndexNode extends IndexNode {
+    final NodeLatch latch = new NodeLatch();
+
+    public ConcurrentIndexNode(int m, int[] keys){
+        super(m, keys);
+    }
+
+    public ConcurrentIndexNode(int m, int[] keys, Node[] children){
+        super(m, keys, children);
+    }
+
+    @Override
+    IndexNode newSplitNode(int m, int[] keys, Node[] children){
+        return new ConcurrentIndexNode(m, keys, children);
+    }
+}
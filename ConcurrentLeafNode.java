@@ -0,0 +1,15 @@
+/**
+ * A leaf node of ConcurrentBPlusTree, which carries the latch that the readers and writers of the node use
+ */
+public class ConcurrentLeafNode extends LeafNode {
+    final NodeLatch latch = new NodeLatch();
+
+    public ConcurrentLeafNode(int m, int[] keys, double[] values, int curNumPairs){
+        super(m, keys, values, curNumPairs);
+    }
+
+    @Override
+    LeafNode newSplitNode(int m, int[] keys, double[] values, int curNumPairs){
+        return new ConcurrentLeafNode(m, keys, values, curNumPairs);
+    }
+}
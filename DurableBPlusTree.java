@@ -0,0 +1,225 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * A bplustree whose inserts and deletes survive a crash. The tree is kept in memory and every write is first appended
+ * to a WriteAheadLog and committed according to its sync policy before the write returns. A checkpoint freezes the
+ * tree into a MappedBPlusTree file named after the LSN of the last write it contains and then starts a new empty log,
+ * so the log stays short and recovery only replays the writes made since the last checkpoint.
+ *
+ * On opening, the tree is bulk loaded from the latest checkpoint, if any, and the records of the log that follow the
+ * checkpoint are replayed onto it in their original order. A checkpoint only replaces the previous one once it is
+ * completely written, and the log is only emptied after that, so a crash at any point of a checkpoint leaves a
+ * checkpoint and a log that recover every committed write.
+ *
+ * The methods are thread safe. Writes are applied to the tree in log order under a lock, while the commits that wait
+ * for the log run outside of it, which lets the commits of concurrent writers be grouped into one fsync. A read may
+ * therefore see a write whose commit has not returned yet.
+ */
+public class DurableBPlusTree implements Closeable {
+    private static final String LOG_FILE = "wal.log";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".bpt";
+
+    private final Path dir;
+    private final int m;
+    private final bplustree tree;
+    private final WriteAheadLog log;
+    private long checkpointLsn;
+
+    /**
+     * Opens a durable tree stored in a directory, recovering the writes committed before the last close or crash
+     * @param dir - directory that holds the checkpoint and the log, created if it does not exist
+     * @param m - order of the tree
+     * @param policy - when committed writes are forced to the storage device, see WriteAheadLog.SyncPolicy
+     * @param syncIntervalMillis - time between two forces of the log with the INTERVAL policy
+     * @throws IOException - if the checkpoint or the log cannot be read
+     */
+    public DurableBPlusTree(Path dir, int m, WriteAheadLog.SyncPolicy policy, long syncIntervalMillis)
+            throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.m = m;
+
+        //the checkpoint with the highest LSN is the latest complete one, the others are left over by a crash
+        this.checkpointLsn = 0;
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, CHECKPOINT_PREFIX + "*" + CHECKPOINT_SUFFIX)){
+            for(Path file : files){
+                this.checkpointLsn = Math.max(this.checkpointLsn, parseCheckpointLsn(file));
+            }
+        }
+        this.tree = this.checkpointLsn == 0 ? new bplustree(m) : loadCheckpoint(getCheckpointPath(this.checkpointLsn));
+
+        this.log = new WriteAheadLog(dir.resolve(LOG_FILE), policy, syncIntervalMillis, this.checkpointLsn,
+                (type, key, value) -> {
+                    if(type == WriteAheadLog.INSERT){
+                        this.tree.insert(key, value);
+                    }else{
+                        this.tree.delete(key);
+                    }
+                });
+        deleteOldCheckpoints();
+    }
+
+    /**
+     * Returns the LSN in the name of a checkpoint file
+     * @param file - path of the checkpoint
+     * @return - long value, 0 if the name is not the name of a checkpoint
+     */
+    private static long parseCheckpointLsn(Path file){
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(CHECKPOINT_PREFIX.length(),
+                    name.length() - CHECKPOINT_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+
+    private Path getCheckpointPath(long lsn){
+        return this.dir.resolve(CHECKPOINT_PREFIX + lsn + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * Builds a tree from the pairs of a checkpoint, which are stored in key order
+     * @param file - path of the checkpoint
+     * @return - a new bplustree that holds the pairs
+     * @throws IOException - if the checkpoint cannot be read
+     */
+    private bplustree loadCheckpoint(Path file) throws IOException {
+        try(MappedBPlusTree checkpoint = new MappedBPlusTree(file)){
+            //leave room in the nodes for the writes that follow, a full leaf would split on the first insert
+            BulkLoader loader = new BulkLoader(this.m, 0.75);
+            for(long i = 0; i < checkpoint.size(); i++){
+                loader.add(checkpoint.getKey(i), checkpoint.getValue(i));
+            }
+            return loader.build();
+        }
+    }
+
+    /**
+     * Deletes every checkpoint file other than the current one
+     * @throws IOException - if the directory cannot be listed
+     */
+    private void deleteOldCheckpoints() throws IOException {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(this.dir,
+                CHECKPOINT_PREFIX + "*" + CHECKPOINT_SUFFIX)){
+            for(Path file : files){
+                if(parseCheckpointLsn(file) != this.checkpointLsn){
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts a pair into the tree and returns once the insert is committed to the log
+     * @param key - key of the dictionary pair to be inserted
+     * @param value - value of the dictionary pair to be inserted
+     */
+    public void insert(int key, double value){
+        long lsn;
+        synchronized (this.tree){
+            lsn = this.log.append(WriteAheadLog.INSERT, key, value);
+            this.tree.insert(key, value);
+        }
+        commit(lsn);
+    }
+
+    /**
+     * Deletes a pair that has key equal to the target key and returns once the delete is committed to the log
+     * @param key - target key
+     */
+    public void delete(int key){
+        long lsn;
+        synchronized (this.tree){
+            lsn = this.log.append(WriteAheadLog.DELETE, key, 0);
+            this.tree.delete(key);
+        }
+        commit(lsn);
+    }
+
+    private void commit(long lsn){
+        try {
+            this.log.commit(lsn);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Search for a given key in the tree
+     * @param key - the key to be searched
+     * @return - Double value associated with the key. If the key is not found, then the value is null
+     */
+    public Double search(int key){
+        synchronized (this.tree){
+            return this.tree.search(key);
+        }
+    }
+
+    /**
+     * Search for a range of values in the tree
+     * @param key1 - the lower bound of the search
+     * @param key2 -  the higher bound of the search
+     * @return - List<Double> contains values of all the keys that fall in the range
+     */
+    public List<Double> search(int key1, int key2){
+        synchronized (this.tree){
+            return this.tree.search(key1, key2);
+        }
+    }
+
+    /**
+     * Writes a checkpoint of the tree and empties the log. Writes wait while the tree is frozen
+     * @throws IOException - if the checkpoint or the new log cannot be written
+     */
+    public void checkpoint() throws IOException {
+        synchronized (this.tree){
+            long lsn = this.log.getAppendedLsn();
+            if(lsn == this.checkpointLsn){
+                return; //nothing was written since the last checkpoint
+            }
+            Path tmp = this.dir.resolve(CHECKPOINT_PREFIX + "tmp");
+            MappedBPlusTree.freeze(this.tree, tmp);
+            Files.move(tmp, getCheckpointPath(lsn), StandardCopyOption.ATOMIC_MOVE);
+            WriteAheadLog.syncDirectory(tmp);
+            this.checkpointLsn = lsn;
+            this.log.truncate();
+            deleteOldCheckpoints();
+        }
+    }
+
+    /**
+     * Returns the LSN of the last write contained in the current checkpoint
+     * @return - long value, 0 if there is no checkpoint
+     */
+    public long getCheckpointLsn() {
+        return checkpointLsn;
+    }
+
+    /**
+     * Returns the log of the tree
+     * @return - the WriteAheadLog
+     */
+    public WriteAheadLog getLog() {
+        return log;
+    }
+
+    /**
+     * Forces every write to the storage device and closes the log. The writes since the last checkpoint are replayed
+     * when the tree is opened again
+     * @throws IOException - if the log cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this.tree){
+            this.log.close();
+        }
+    }
+}
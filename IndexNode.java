@@ -1,7 +1,7 @@
-import java.util.stream.IntStream;
+import java.util.Arrays;
 
 /**
- * Internal nodes or non-leaf nodes of a B+ tree
+ * Internal nodes or non-leaf nodes of a B+ tree. Only the first currentDegree - 1 entries of the keys array are valid
  */
 public class IndexNode extends Node{
     private IndexNode leftSibling;
@@ -9,10 +9,19 @@ public class IndexNode extends Node{
     private int currentDegree;
     private int maxDegree;
     private int minDegree;
-    private Integer[] keys;
+    private int[] keys;
     private Node[] children;
 
-    public IndexNode(int m, Integer[] keys){
+    //Number of pairs and sum of the values in the subtree of each child, parallel to the children array. Only kept
+    //in an augmented tree, null otherwise
+    private long[] childCounts;
+    private double[] childSums;
+
+    //Pending inserts and deletes for the subtree of the index node. Only kept in a write buffered tree, null otherwise
+    private MessageBuffer buffer;
+
+    public IndexNode(int m, int[] keys){
+        super(false);
         this.keys = keys;
         this.currentDegree = 0;
         this.maxDegree = m;
@@ -20,7 +29,8 @@ public class IndexNode extends Node{
         this.children = new Node[m + 1]; //When an index node is overfull, it will have m + 1 children
     }
 
-    public IndexNode(int m, Integer[] keys, Node[] children){
+    public IndexNode(int m, int[] keys, Node[] children){
+        super(false);
         this.keys = keys;
         for(int i = 0; i < children.length; i++){
             if(children[i] == null){
@@ -34,20 +44,75 @@ public class IndexNode extends Node{
     }
 
     /**
-     * Adds a new child to the end of children array
-     * @param node
+     * Returns the index of child subtree to which the key belongs to
+     * @param key - value for the search
+     * @return - index of the child subtree to which the key belongs to
      */
-    public void addChild(Node node){
-        this.children[this.currentDegree++] = node;
+    public int getChildSubtreeIdxForAKey(int key){
+        //number of keys = currentDegree - 1
+        return KeySearch.countLessOrEqual(this.keys, this.currentDegree - 1, key);
     }
 
     /**
-     * Returns the index of a child node
-     * @param node - the node for which the index has to be found
-     * @return - integer index value
+     * Returns the index of the first child subtree that can hold a key. Unlike getChildSubtreeIdxForAKey, a key equal
+     * to a separator key maps to the child left of the separator, which can hold pairs with that key when the key
+     * occurs more than once
+     * @param key - value for the search
+     * @return - index of the child subtree, the number of keys that are less than key
      */
-    public int getChildIdx(Node node){
-        return IntStream.range(0, children.length).filter(i -> this.children[i] == node).findFirst().orElse(-1);
+    public int getFirstChildIdxForAKey(int key){
+        return KeySearch.countLess(this.keys, this.currentDegree - 1, key);
+    }
+
+    /**
+     * Splits the index node at midIdx. The keys and the children after midIdx are moved to a new index node, and the
+     * key at midIdx is left in the keys array for the caller to move up to the parent
+     * @param midIdx - index of the key that separates the two nodes
+     * @return - the new index node, which holds the right half of the keys and children
+     */
+    public IndexNode split(int midIdx){
+        int numKeys = this.currentDegree - 1;
+        int[] splitKeys = new int[this.maxDegree];
+        System.arraycopy(this.keys, midIdx + 1, splitKeys, 0, numKeys - midIdx - 1);
+
+        Node[] splitChildren = new Node[this.maxDegree + 1];
+        int numMoved = this.currentDegree - midIdx - 1;
+        System.arraycopy(this.children, midIdx + 1, splitChildren, 0, numMoved);
+        Arrays.fill(this.children, midIdx + 1, this.currentDegree, null);
+        IndexNode newNode = newSplitNode(this.maxDegree, splitKeys, splitChildren);
+        if(this.childCounts != null){
+            newNode.enableAugmentation();
+            System.arraycopy(this.childCounts, midIdx + 1, newNode.childCounts, 0, numMoved);
+            System.arraycopy(this.childSums, midIdx + 1, newNode.childSums, 0, numMoved);
+        }
+        if(this.buffer != null){
+            //the messages for the keys from the separator key on belong to the children that moved
+            newNode.enableBuffer();
+            int from = this.buffer.lowerBound(this.keys[midIdx]);
+            this.buffer.moveTo(newNode.buffer, from, this.buffer.size());
+        }
+        this.currentDegree = midIdx + 1;
+        return newNode;
+    }
+
+    /**
+     * Creates the node that receives the right half of a split, of the same kind as this node
+     * @param m - order of the node
+     * @param keys - keys of the node
+     * @param children - children of the node
+     * @return - the new index node
+     */
+    IndexNode newSplitNode(int m, int[] keys, Node[] children){
+        return new IndexNode(m, keys, children);
+    }
+
+    /**
+     * Adds a new child to the end of children array
+     * @param node
+     */
+    public void addChild(Node node){
+        this.children[this.currentDegree++] = node;
+        refreshChild(this.currentDegree - 1);
     }
 
     /**
@@ -57,11 +122,26 @@ public class IndexNode extends Node{
      */
     public void insertChild(Node node, int idx){
         //shift the child references to the right by 1 index
-        for(int i = this.currentDegree - 1; i >= idx; i--){
-            this.children[i + 1] = this.children[i];
-        }
+        System.arraycopy(this.children, idx, this.children, idx + 1, this.currentDegree - idx);
         this.children[idx] = node;
+        if(this.childCounts != null){
+            System.arraycopy(this.childCounts, idx, this.childCounts, idx + 1, this.currentDegree - idx);
+            System.arraycopy(this.childSums, idx, this.childSums, idx + 1, this.currentDegree - idx);
+        }
         this.currentDegree++;
+        refreshChild(idx);
+    }
+
+    /**
+     * Inserts a key to the keys array at a specified index and shifts the keys from that index to the right by 1.
+     * The key has to be inserted before the matching child reference, as the number of keys is taken to be
+     * currentDegree - 1
+     * @param key - the key to be inserted
+     * @param idx - the index at which the key needs to be inserted
+     */
+    public void insertKey(int key, int idx){
+        System.arraycopy(this.keys, idx, this.keys, idx + 1, this.currentDegree - 1 - idx);
+        this.keys[idx] = key;
     }
 
     /**
@@ -94,11 +174,8 @@ public class IndexNode extends Node{
      * @param index - the index of the key to be deleted
      */
     public void deleteKey(int index){
-        int i = 0;
-        for(i = index; i < this.currentDegree - 2 ; i++){ //Number of keys are always 1 less than the current degree
-            this.keys[i] = this.keys[i + 1];
-        }
-        this.keys[i] = null;
+        //Number of keys are always 1 less than the current degree
+        System.arraycopy(this.keys, index + 1, this.keys, index, this.currentDegree - 2 - index);
     }
 
     /**
@@ -106,11 +183,12 @@ public class IndexNode extends Node{
      * @param index - index of the child in children array that is to be deleted
      */
     public void deleteChildReference(int index){
-        int i = 0;
-        for(i = index; i < this.currentDegree - 1; i++){
-            this.children[i] = this.children[i + 1];
+        System.arraycopy(this.children, index + 1, this.children, index, this.currentDegree - 1 - index);
+        this.children[this.currentDegree - 1] = null;
+        if(this.childCounts != null){
+            System.arraycopy(this.childCounts, index + 1, this.childCounts, index, this.currentDegree - 1 - index);
+            System.arraycopy(this.childSums, index + 1, this.childSums, index, this.currentDegree - 1 - index);
         }
-        this.children[i] = null;
         this.currentDegree--;
     }
 
@@ -130,6 +208,122 @@ public class IndexNode extends Node{
         return this.currentDegree > this.minDegree;
     }
 
+    /**
+     * Starts keeping the number of pairs and the sum of the values in the subtree of each child. Has to be called
+     * before any child is added
+     */
+    public void enableAugmentation(){
+        this.childCounts = new long[this.maxDegree + 1];
+        this.childSums = new double[this.maxDegree + 1];
+    }
+
+    /**
+     * Check if the index node keeps subtree counts and sums
+     * @return - boolean value
+     */
+    public boolean isAugmented(){
+        return this.childCounts != null;
+    }
+
+    /**
+     * Recomputes the count and sum of a child's subtree from the child, after pairs or children were moved into or
+     * out of it. Does nothing if the index node is not augmented
+     * @param idx - index of the child
+     */
+    public void refreshChild(int idx){
+        if(this.childCounts == null){
+            return;
+        }
+        Node child = this.children[idx];
+        if(child.isLeaf){
+            LeafNode leafNode = (LeafNode) child;
+            double[] values = leafNode.getValues();
+            double sum = 0;
+            for(int i = 0; i < leafNode.getCurNumPairs(); i++){
+                sum += values[i];
+            }
+            this.childCounts[idx] = leafNode.getCurNumPairs();
+            this.childSums[idx] = sum;
+        }else{
+            IndexNode indexNode = (IndexNode) child;
+            this.childCounts[idx] = indexNode.getSubtreeCount();
+            this.childSums[idx] = indexNode.getSubtreeSum();
+        }
+    }
+
+    /**
+     * Adds a pair that was inserted into or, with negative arguments, deleted from the subtree of a child
+     * @param idx - index of the child
+     * @param count - change in the number of pairs
+     * @param sum - change in the sum of the values
+     */
+    public void addToChild(int idx, long count, double sum){
+        this.childCounts[idx] += count;
+        this.childSums[idx] += sum;
+    }
+
+    /**
+     * Returns the number of pairs in the subtree of the index node
+     * @return - long value
+     */
+    public long getSubtreeCount(){
+        long count = 0;
+        for(int i = 0; i < this.currentDegree; i++){
+            count += this.childCounts[i];
+        }
+        return count;
+    }
+
+    /**
+     * Returns the sum of the values in the subtree of the index node
+     * @return - double value
+     */
+    public double getSubtreeSum(){
+        double sum = 0;
+        for(int i = 0; i < this.currentDegree; i++){
+            sum += this.childSums[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Starts holding pending inserts and deletes for the subtree of the index node
+     */
+    public void enableBuffer(){
+        this.buffer = new MessageBuffer();
+    }
+
+    /**
+     * Stops holding pending inserts and deletes. The buffer has to be empty
+     */
+    public void disableBuffer(){
+        this.buffer = null;
+    }
+
+    /**
+     * getter for buffer variable
+     * @return - MessageBuffer reference, null if the tree is not write buffered
+     */
+    public MessageBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * getter for childCounts variable. Only the first currentDegree entries are valid
+     * @return - long[] reference, null if the index node is not augmented
+     */
+    public long[] getChildCounts() {
+        return childCounts;
+    }
+
+    /**
+     * getter for childSums variable. Only the first currentDegree entries are valid
+     * @return - double[] reference, null if the index node is not augmented
+     */
+    public double[] getChildSums() {
+        return childSums;
+    }
+
     /**
      * getter for leftSibling variable
      * @return - IndexNode reference
@@ -180,17 +374,17 @@ public class IndexNode extends Node{
 
     /**
      * getter for keys variable
-     * @return - Integer[] reference
+     * @return - int[] reference
      */
-    public Integer[] getKeys() {
+    public int[] getKeys() {
         return keys;
     }
 
     /**
      * setter for keys variable
-     * @param keys - Integer[] reference
+     * @param keys - int[] reference
      */
-    public void setKeys(Integer[] keys) {
+    public void setKeys(int[] keys) {
         this.keys = keys;
     }
 
@@ -0,0 +1,64 @@
+import java.util.Arrays;
+
+/**
+ * The pairs with one key in a leaf node of a write buffered bplustree, to which a point search applies the pending
+ * messages for the key from the oldest to the newest, as flushing them would, without changing the node. The values
+ * of the pairs are copied out of the node when the first message is applied.
+ */
+public class KeyRun {
+    private final LeafNode leafNode;
+    private int numPairs; //number of pairs of the leaf node, including the ones of the run
+    private final int from; //index of the first pair of the run in the leaf node
+    private int size;
+    private double[] values; //values of the run, null while no message has been applied
+
+    /**
+     * @param leafNode - the leaf node that a search for the key reaches
+     * @param key - the key
+     */
+    public KeyRun(LeafNode leafNode, int key){
+        this.leafNode = leafNode;
+        this.numPairs = leafNode.getCurNumPairs();
+        this.from = leafNode.lowerBound(key);
+        this.size = leafNode.upperBound(key) - this.from;
+    }
+
+    /**
+     * Applies a message for the key. An insert adds a pair after the pairs of the run, as LeafNode.insertPair does,
+     * and a delete removes the pair that LeafNode.search would find, if the run has any
+     * @param type - MessageBuffer.INSERT or MessageBuffer.DELETE
+     * @param value - value of an insert, ignored for a delete
+     */
+    public void apply(byte type, double value){
+        if(this.values == null){
+            this.values = new double[this.size + 4];
+            for(int i = 0; i < this.size; i++){
+                this.values[i] = this.leafNode.getValue(this.from + i);
+            }
+        }
+        if(type == MessageBuffer.INSERT){
+            if(this.size == this.values.length){
+                this.values = Arrays.copyOf(this.values, 2 * this.size);
+            }
+            this.values[this.size++] = value;
+            this.numPairs++;
+        }else if(this.size > 0){
+            int idx = LeafNode.probe(this.numPairs, this.from, this.from + this.size) - this.from;
+            System.arraycopy(this.values, idx + 1, this.values, idx, this.size - idx - 1);
+            this.size--;
+            this.numPairs--;
+        }
+    }
+
+    /**
+     * Returns the value of the pair that LeafNode.search would find once the applied messages reach the leaf node
+     * @return - Double value, null if the run is empty
+     */
+    public Double search(){
+        if(this.size == 0){
+            return null;
+        }
+        int idx = LeafNode.probe(this.numPairs, this.from, this.from + this.size);
+        return this.values == null ? this.leafNode.getValue(idx) : this.values[idx - this.from];
+    }
+}
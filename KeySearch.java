@@ -0,0 +1,128 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * The searches in the sorted key arrays of the nodes. Both are expressed as a count of keys: the number of keys
+ * that are less than a key is the index of the first key that is greater than or equal to it, and the number of keys
+ * that are less than or equal to a key is the index of the first key that is greater than it.
+ *
+ * A node with few keys is searched by a scalar binary search. A wider node is searched by the SIMD kernel in
+ * VectorKeySearch when it is available: a binary search narrows the keys down to a few vectors, which are then
+ * compared with the key in vector-width chunks, so the last and most mispredicted steps of the binary search are
+ * replaced by branch-free comparisons. The kernel uses the incubating jdk.incubator.vector module, so it is compiled
+ * separately (make simd) and loaded only if the JVM runs with --add-modules jdk.incubator.vector. Setting the system
+ * property bplustree.simd to false keeps the scalar search.
+ */
+public final class KeySearch {
+    //nodes with fewer keys are searched faster by the scalar binary search than by setting up the vectors
+    static final int MIN_SIMD_KEYS = 16;
+
+    private static final MethodHandle VECTOR_COUNT_LESS;
+    private static final MethodHandle VECTOR_COUNT_LESS_OR_EQUAL;
+
+    static {
+        MethodHandle countLess = null, countLessOrEqual = null;
+        if(Boolean.parseBoolean(System.getProperty("bplustree.simd", "true"))){
+            try {
+                //initializing the class fails if the module of the Vector API is not in the JVM
+                Class<?> kernel = Class.forName("VectorKeySearch", true, KeySearch.class.getClassLoader());
+                MethodType type = MethodType.methodType(int.class, int[].class, int.class, int.class);
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                countLess = lookup.findStatic(kernel, "countLess", type);
+                countLessOrEqual = lookup.findStatic(kernel, "countLessOrEqual", type);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                countLess = countLessOrEqual = null;
+            }
+        }
+        VECTOR_COUNT_LESS = countLess;
+        VECTOR_COUNT_LESS_OR_EQUAL = countLessOrEqual;
+    }
+
+    private KeySearch(){
+    }
+
+    /**
+     * Check if the SIMD kernel is used for wide nodes
+     * @return - boolean value
+     */
+    public static boolean isVectorized(){
+        return VECTOR_COUNT_LESS != null;
+    }
+
+    /**
+     * Returns the number of keys less than a key, which is the index of the first key greater than or equal to it
+     * @param keys - keys sorted in non-decreasing order
+     * @param n - number of valid keys at the start of the array
+     * @param key - the key
+     * @return - integer index between 0 and n
+     */
+    public static int countLess(int[] keys, int n, int key){
+        if(n >= MIN_SIMD_KEYS && VECTOR_COUNT_LESS != null){
+            try {
+                return (int) VECTOR_COUNT_LESS.invokeExact(keys, n, key);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return scalarCountLess(keys, n, key);
+    }
+
+    /**
+     * Returns the number of keys less than or equal to a key, which is the index of the first key greater than it
+     * @param keys - keys sorted in non-decreasing order
+     * @param n - number of valid keys at the start of the array
+     * @param key - the key
+     * @return - integer index between 0 and n
+     */
+    public static int countLessOrEqual(int[] keys, int n, int key){
+        if(n >= MIN_SIMD_KEYS && VECTOR_COUNT_LESS_OR_EQUAL != null){
+            try {
+                return (int) VECTOR_COUNT_LESS_OR_EQUAL.invokeExact(keys, n, key);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return scalarCountLessOrEqual(keys, n, key);
+    }
+
+    /**
+     * Binary search version of countLess
+     * @param keys - keys sorted in non-decreasing order
+     * @param n - number of valid keys at the start of the array
+     * @param key - the key
+     * @return - integer index between 0 and n
+     */
+    static int scalarCountLess(int[] keys, int n, int key){
+        int l = 0, r = n - 1;
+        while(l <= r){
+            int mid = l + (r - l) / 2;
+            if(keys[mid] < key){
+                l = mid + 1;
+            }else{
+                r = mid - 1;
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Binary search version of countLessOrEqual
+     * @param keys - keys sorted in non-decreasing order
+     * @param n - number of valid keys at the start of the array
+     * @param key - the key
+     * @return - integer index between 0 and n
+     */
+    static int scalarCountLessOrEqual(int[] keys, int n, int key){
+        int l = 0, r = n - 1;
+        while(l <= r){
+            int mid = l + (r - l) / 2;
+            if(keys[mid] <= key){
+                l = mid + 1;
+            }else{
+                r = mid - 1;
+            }
+        }
+        return l;
+    }
+}
@@ -1,7 +1,6 @@
-import java.util.Arrays;
-
 /**
- * Leaf node of the B+ tree
+ * Leaf node of the B+ tree. The dictionary pairs are stored in two parallel arrays, keys[i] and values[i] make up
+ * the i-th pair, so that no object is allocated per pair and a binary search only touches the keys array.
  */
 public class LeafNode extends Node{
     private LeafNode leftSibling;
@@ -9,28 +8,26 @@ public class LeafNode extends Node{
     private int minPairs;
     private int maxPairs;
     private int curNumPairs;
-    private Pair[] pairs;
+    private int[] keys;
+    private double[] values;
 
-    public LeafNode(int m, Pair pair){
+    public LeafNode(int m, int key, double value){
+        super(true);
         this.curNumPairs = 0;
         this.minPairs = (int)(Math.ceil(m / 2.0) - 1);
         this.maxPairs = m - 1;
-        this.pairs = new Pair[m];
-        this.addPair(pair);
+        this.keys = new int[m]; //When a leaf node is overfull, it will have m pairs
+        this.values = new double[m];
+        this.addPair(key, value);
     }
 
-    public LeafNode(int m, Pair[] pairs, IndexNode parent){
-        this.pairs = pairs;
-        this.parent = parent;
+    public LeafNode(int m, int[] keys, double[] values, int curNumPairs){
+        super(true);
+        this.keys = keys;
+        this.values = values;
+        this.curNumPairs = curNumPairs;
         this.maxPairs = m - 1;
         this.minPairs = (int)(Math.ceil(m / 2.0) - 1);
-        for(int i = 0; i < pairs.length; i++){
-            if(pairs[i] == null){
-                this.curNumPairs = i;
-                break;
-            }
-        }
-
     }
 
     /**
@@ -82,65 +79,199 @@ public class LeafNode extends Node{
     }
 
     /**
-     * getter for pairs variable
-     * @return - array of Pair references
+     * getter for keys variable. Only the first curNumPairs entries are valid
+     * @return - int[] reference
+     */
+    public int[] getKeys() {
+        return keys;
+    }
+
+    /**
+     * getter for values variable. Only the first curNumPairs entries are valid
+     * @return - double[] reference
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * Returns the key of the pair at an index
+     * @param idx - index of the pair
+     * @return - int value of the key
      */
-    public Pair[] getPairs() {
-        return pairs;
+    public int getKey(int idx){
+        return this.keys[idx];
+    }
+
+    /**
+     * Returns the value of the pair at an index
+     * @param idx - index of the pair
+     * @return - double value
+     */
+    public double getValue(int idx){
+        return this.values[idx];
+    }
+
+    /**
+     * Replaces the value of the pair at an index
+     * @param idx - index of the pair
+     * @param value - the new value
+     */
+    public void setValue(int idx, double value){
+        this.values[idx] = value;
     }
 
     /**
      * Adds a pair to the leaf node
-     * @param pair - The pair to be added
+     * @param key - key of the pair to be added
+     * @param value - value of the pair to be added
      * @return - true if pair is added to the leaf node successfully otherwise false
      */
-    public boolean addPair(Pair pair){
+    public boolean addPair(int key, double value){
         if(curNumPairs == maxPairs){
             return false;
         }
-        this.pairs[curNumPairs++] = pair;
-        this.sortPairs();
+        this.insertPair(key, value);
         return true;
     }
 
     /**
-     * Sorts all the dictionary pairs.
+     * Adds a pair to the leaf node even if the node is full. The node can hold one extra pair, after which it is
+     * overfull and has to be split
+     * @param key - key of the pair to be added
+     * @param value - value of the pair to be added
+     */
+    public void insertPair(int key, double value){
+        //the pairs after the insertion point are shifted to the right by 1 so that the pairs stay sorted
+        int idx = upperBound(key);
+        System.arraycopy(this.keys, idx, this.keys, idx + 1, this.curNumPairs - idx);
+        System.arraycopy(this.values, idx, this.values, idx + 1, this.curNumPairs - idx);
+        this.keys[idx] = key;
+        this.values[idx] = value;
+        this.curNumPairs++;
+    }
+
+    /**
+     * Splits the leaf node by moving the pairs from splitIdx onwards to a new leaf node
+     * @param splitIdx - index of the first pair that is moved
+     * @return - a new LeafNode that has the right half of the pairs
      */
-    public void sortPairs(){
-        Arrays.sort(this.pairs, (a, b) ->{
-           if(a == null && b == null) {
-               return 0;
-           }else if(a == null){
-               return 1;
-           }else if(b == null){
-               return -1;
-           }else{
-               return a.key - b.key;
-           }
-        });
+    public LeafNode split(int splitIdx){
+        int m = this.maxPairs + 1;
+        int numMoved = this.curNumPairs - splitIdx;
+        int[] newKeys = new int[m];
+        double[] newValues = new double[m];
+        System.arraycopy(this.keys, splitIdx, newKeys, 0, numMoved);
+        System.arraycopy(this.values, splitIdx, newValues, 0, numMoved);
+        this.curNumPairs = splitIdx;
+        return newSplitNode(m, newKeys, newValues, numMoved);
     }
 
     /**
-     * Deletes a pair from the leaf node
+     * Creates the node that receives the right half of a split, of the same kind as this node
+     * @param m - order of the node
+     * @param keys - keys of the pairs
+     * @param values - values of the pairs
+     * @param curNumPairs - number of pairs
+     * @return - the new leaf node
+     */
+    LeafNode newSplitNode(int m, int[] keys, double[] values, int curNumPairs){
+        return new LeafNode(m, keys, values, curNumPairs);
+    }
+
+    /**
+     * Appends the pairs of another leaf node whose keys are all greater than or equal to the keys of this node
+     * @param node - the leaf node whose pairs are appended
+     */
+    public void appendPairs(LeafNode node){
+        System.arraycopy(node.keys, 0, this.keys, this.curNumPairs, node.curNumPairs);
+        System.arraycopy(node.values, 0, this.values, this.curNumPairs, node.curNumPairs);
+        this.curNumPairs += node.curNumPairs;
+    }
+
+    /**
+     * Prepends the pairs of another leaf node whose keys are all less than or equal to the keys of this node. The pairs
+     * of the other node with the same key as the first pair of this node go after the pairs of this node with that key,
+     * where inserting them one by one would put them
+     * @param node - the leaf node whose pairs are prepended
+     */
+    public void prependPairs(LeafNode node){
+        int numLess = this.curNumPairs == 0 ? node.curNumPairs : node.lowerBound(this.keys[0]);
+        int numEqual = this.curNumPairs == 0 ? 0 : upperBound(this.keys[0]);
+        int numMoved = node.curNumPairs - numLess;
+        System.arraycopy(this.keys, numEqual, this.keys, numEqual + node.curNumPairs, this.curNumPairs - numEqual);
+        System.arraycopy(this.values, numEqual, this.values, numEqual + node.curNumPairs, this.curNumPairs - numEqual);
+        System.arraycopy(this.keys, 0, this.keys, numLess, numEqual);
+        System.arraycopy(this.values, 0, this.values, numLess, numEqual);
+        System.arraycopy(node.keys, 0, this.keys, 0, numLess);
+        System.arraycopy(node.values, 0, this.values, 0, numLess);
+        System.arraycopy(node.keys, numLess, this.keys, numLess + numEqual, numMoved);
+        System.arraycopy(node.values, numLess, this.values, numLess + numEqual, numMoved);
+        this.curNumPairs += node.curNumPairs;
+    }
+
+    /**
+     * Deletes a pair from the leaf node and shifts the remaining pairs to the left by 1
      * @param idx - the index of the pair to be deleted
      */
     public void deletePair(int idx){
-        this.pairs[idx] = null;
+        System.arraycopy(this.keys, idx + 1, this.keys, idx, this.curNumPairs - idx - 1);
+        System.arraycopy(this.values, idx + 1, this.values, idx, this.curNumPairs - idx - 1);
         this.curNumPairs--;
     }
 
     /**
-     * Binary search for a pair and return the index of the pair if found.
+     * Search for the index of the first pair whose key is greater than the given key, see KeySearch. A pair with this
+     * key inserted at that index keeps the pairs sorted and lands after any pairs with an equal key
+     * @param key - key to be searched
+     * @return - integer index between 0 and curNumPairs
+     */
+    public int upperBound(int key){
+        return KeySearch.countLessOrEqual(this.keys, this.curNumPairs, key);
+    }
+
+    /**
+     * Search for the index of the first pair whose key is greater than or equal to the given key, see KeySearch
+     * @param key - key to be searched
+     * @return - integer index between 0 and curNumPairs
+     */
+    public int lowerBound(int key){
+        return KeySearch.countLess(this.keys, this.curNumPairs, key);
+    }
+
+    /**
+     * Search for a pair and return the index of the pair if found, see KeySearch. Among pairs with an equal key, the
+     * pair found is the one a binary search over the keys lands on first, see probe
      * @param key - key of the pair to be searched
      * @return - integer value -1 if the key is not found or else, the index of the pair which has the target key
      */
     public int search(int key){
-        int l = 0, r = this.curNumPairs - 1;
+        int from = KeySearch.countLess(this.keys, this.curNumPairs, key);
+        if(from == this.curNumPairs || this.keys[from] != key){
+            return -1;
+        }
+        if(from + 1 == this.curNumPairs || this.keys[from + 1] != key){
+            return from;
+        }
+        return probe(this.curNumPairs, from, KeySearch.countLessOrEqual(this.keys, this.curNumPairs, key));
+    }
+
+    /**
+     * Binary search over the positions of a node whose pairs with the searched key are a run, returning the first
+     * position of the run that it probes. Which of the equal pairs search and delete act on only depends on the
+     * number of pairs and on where the run is, so it can be worked out for pairs that are not in a node yet
+     * @param numPairs - number of pairs of the node
+     * @param from - index of the first pair of the run, inclusive
+     * @param to - index of the last pair of the run, exclusive
+     * @return - integer index between from and to, -1 if the run is empty
+     */
+    static int probe(int numPairs, int from, int to){
+        int l = 0, r = numPairs - 1;
         while(l <= r){
             int mid = l + ( r - l ) / 2;
-            if(this.pairs[mid].key == key){
+            if(mid >= from && mid < to){
                 return mid;
-            }else if(this.pairs[mid].key > key){
+            }else if(mid >= to){
                 r = mid - 1;
             }else{
                 l = mid + 1;
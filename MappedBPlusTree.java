@@ -0,0 +1,333 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only B+ tree that is queried directly in a memory-mapped file. A bplustree is frozen into a compact
+ * immutable format: all the keys packed in sorted order, followed by the values in the same order, followed by the
+ * index levels. Level 1 holds the first key of every block of BLOCK_SIZE keys and each level above holds the first key
+ * of every block of the level below, up to a top level of at most BLOCK_SIZE keys. A lookup binary searches one block
+ * per level, so it touches a handful of pages of the file.
+ *
+ * Opening a frozen file only maps it, nothing is deserialized, so a tree of any size can be queried as soon as it is
+ * opened and the operating system pages the file in on demand. A file larger than 2GB is mapped in several chunks.
+ *
+ * File layout, little endian:
+ * header (HEADER_SIZE bytes): magic (4), format version (4), number of pairs (8), block size (4), number of levels
+ * (4), offset of the values (8), offset of each level from level 0, the keys, upwards (8 each)
+ * keys (4 * number of pairs), values (8 * number of pairs), levels 1 and above (4 per key). Every section starts at a
+ * multiple of 8 bytes
+ */
+public class MappedBPlusTree implements Closeable {
+    private static final int MAGIC = 0x46545042; //"BPTF"
+    private static final int VERSION = 1;
+    private static final int BLOCK_SIZE = 32;
+    private static final int MAX_LEVELS = 28;
+    private static final int HEADER_SIZE = 32 + 8 * MAX_LEVELS;
+    private static final int DEFAULT_CHUNK_SHIFT = 30; //1GB chunks
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final int chunkShift;
+    private final long chunkMask;
+    private final long numPairs;
+    private final int blockSize;
+    private final int numLevels;
+    private final long valuesOffset;
+    private final long[] levelOffsets;
+    private final long[] levelSizes;
+
+    /**
+     * Opens a frozen tree
+     * @param path - path of the file written by freeze
+     * @throws IOException - if the file cannot be mapped or is not a frozen tree
+     */
+    public MappedBPlusTree(Path path) throws IOException {
+        this(path, DEFAULT_CHUNK_SHIFT);
+    }
+
+    /**
+     * Opens a frozen tree mapped in chunks of a given size
+     * @param path - path of the file written by freeze
+     * @param chunkShift - log2 of the chunk size, between 3 and 30
+     * @throws IOException - if the file cannot be mapped or is not a frozen tree
+     */
+    MappedBPlusTree(Path path, int chunkShift) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = this.channel.size();
+            if(size < HEADER_SIZE){
+                throw new IOException("not a frozen B+ tree file");
+            }
+            this.chunkShift = chunkShift;
+            this.chunkMask = (1L << chunkShift) - 1;
+            int numChunks = (int) ((size + this.chunkMask) >>> chunkShift);
+            this.chunks = new MappedByteBuffer[numChunks];
+            for(int i = 0; i < numChunks; i++){
+                long position = (long) i << chunkShift;
+                this.chunks[i] = this.channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(1L << chunkShift, size - position));
+                this.chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            if(getInt(0) != MAGIC || getInt(4) != VERSION){
+                throw new IOException("not a frozen B+ tree file, or written by another version");
+            }
+            this.numPairs = getLong(8);
+            this.blockSize = getInt(16);
+            this.numLevels = getInt(20);
+            this.valuesOffset = getLong(24);
+            this.levelOffsets = new long[this.numLevels];
+            this.levelSizes = new long[this.numLevels];
+            long levelSize = this.numPairs;
+            for(int level = 0; level < this.numLevels; level++){
+                this.levelOffsets[level] = getLong(32 + 8 * level);
+                this.levelSizes[level] = levelSize;
+                levelSize = (levelSize + this.blockSize - 1) / this.blockSize;
+            }
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the pairs of a tree to a file in the frozen format and forces the file to the storage device. The tree
+     * is read three times along its leaves and only the index levels are kept in memory
+     * @param tree - the tree
+     * @param path - path of the file, which is replaced if it exists
+     * @throws IOException - if the file cannot be written
+     */
+    public static void freeze(bplustree tree, Path path) throws IOException {
+        long numPairs = 0;
+        RangeCursor cursor = tree.cursor(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        while(cursor.next()){
+            numPairs++;
+        }
+
+        //the sizes of the levels decide the offsets, so they are known before anything is written
+        List<Long> levelSizes = new ArrayList<>();
+        levelSizes.add(numPairs);
+        while(levelSizes.get(levelSizes.size() - 1) > BLOCK_SIZE){
+            long size = levelSizes.get(levelSizes.size() - 1);
+            levelSizes.add((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        }
+        int numLevels = levelSizes.size();
+        long valuesOffset = align(HEADER_SIZE + 4 * numPairs);
+        long[] levelOffsets = new long[numLevels];
+        levelOffsets[0] = HEADER_SIZE;
+        long offset = align(valuesOffset + 8 * numPairs);
+        for(int level = 1; level < numLevels; level++){
+            levelOffsets[level] = offset;
+            offset = align(offset + 4 * levelSizes.get(level));
+        }
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(numPairs).putInt(BLOCK_SIZE).putInt(numLevels)
+                    .putLong(valuesOffset);
+            for(int level = 0; level < MAX_LEVELS; level++){
+                buffer.putLong(level < numLevels ? levelOffsets[level] : 0);
+            }
+
+            //level 1 is filled in while the keys are written and each higher level is built from the one below
+            int[][] levels = new int[numLevels][];
+            for(int level = 1; level < numLevels; level++){
+                levels[level] = new int[(int) (long) levelSizes.get(level)];
+            }
+            long i = 0;
+            cursor = tree.cursor(Integer.MIN_VALUE, Integer.MAX_VALUE);
+            while(cursor.next()){
+                if(numLevels > 1 && i % BLOCK_SIZE == 0){
+                    levels[1][(int) (i / BLOCK_SIZE)] = cursor.getKey();
+                }
+                write(channel, buffer, 4).putInt(cursor.getKey());
+                i++;
+            }
+            pad(channel, buffer, valuesOffset);
+            cursor = tree.cursor(Integer.MIN_VALUE, Integer.MAX_VALUE);
+            while(cursor.next()){
+                write(channel, buffer, 8).putDouble(cursor.getValue());
+            }
+            for(int level = 1; level < numLevels; level++){
+                pad(channel, buffer, levelOffsets[level]);
+                int[] keys = levels[level];
+                for(int k = 0; k < keys.length; k++){
+                    if(level + 1 < numLevels && k % BLOCK_SIZE == 0){
+                        levels[level + 1][k / BLOCK_SIZE] = keys[k];
+                    }
+                    write(channel, buffer, 4).putInt(keys[k]);
+                }
+            }
+            buffer.flip();
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Makes room for a value in the write buffer, writing the buffer to the channel if it is full
+     * @param channel - the channel being written
+     * @param buffer - the write buffer
+     * @param size - size of the value in bytes
+     * @return - the buffer
+     * @throws IOException - if the channel cannot be written
+     */
+    private static ByteBuffer write(FileChannel channel, ByteBuffer buffer, int size) throws IOException {
+        if(buffer.remaining() < size){
+            buffer.flip();
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes zero bytes until the file reaches an offset
+     * @param channel - the channel being written
+     * @param buffer - the write buffer
+     * @param offset - the offset
+     * @throws IOException - if the channel cannot be written
+     */
+    private static void pad(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while(channel.position() + buffer.position() < offset){
+            write(channel, buffer, 1).put((byte) 0);
+        }
+    }
+
+    /**
+     * Rounds an offset up to a multiple of 8
+     * @param offset - the offset
+     * @return - the aligned offset
+     */
+    private static long align(long offset){
+        return (offset + 7) & ~7L;
+    }
+
+    private int getInt(long position){
+        return this.chunks[(int) (position >>> this.chunkShift)].getInt((int) (position & this.chunkMask));
+    }
+
+    private long getLong(long position){
+        return this.chunks[(int) (position >>> this.chunkShift)].getLong((int) (position & this.chunkMask));
+    }
+
+    private double getDouble(long position){
+        return this.chunks[(int) (position >>> this.chunkShift)].getDouble((int) (position & this.chunkMask));
+    }
+
+    /**
+     * Returns the key at an index of a level
+     * @param level - the level, 0 for the keys of the pairs
+     * @param idx - index of the key
+     * @return - int value of the key
+     */
+    private int getLevelKey(int level, long idx){
+        return getInt(this.levelOffsets[level] + 4 * idx);
+    }
+
+    /**
+     * Returns the number of pairs in the tree
+     * @return - long value
+     */
+    public long size(){
+        return this.numPairs;
+    }
+
+    /**
+     * Returns the index of the first pair whose key is greater than or equal to a key. Each level narrows the search
+     * down to one block of the level below: the block that starts with the last key of the level that is less than the
+     * key, as pairs with equal keys may begin at the end of that block
+     * @param key - the key
+     * @return - index between 0 and size()
+     */
+    private long lowerBound(int key){
+        long from = 0;
+        long to = this.levelSizes[this.numLevels - 1];
+        for(int level = this.numLevels - 1; level >= 0; level--){
+            //binary search for the number of keys in [from, to) that are less than key
+            long l = from, r = to - 1;
+            while(l <= r){
+                long mid = (l + r) >>> 1;
+                if(getLevelKey(level, mid) < key){
+                    l = mid + 1;
+                }else{
+                    r = mid - 1;
+                }
+            }
+            if(level == 0){
+                return l;
+            }
+            long block = Math.max(from, l - 1);
+            from = block * this.blockSize;
+            to = Math.min(from + this.blockSize, this.levelSizes[level - 1]);
+        }
+        return from;
+    }
+
+    /**
+     * Returns the key of the pair at a position in key order
+     * @param idx - position of the pair, between 0 and size() - 1
+     * @return - int value of the key
+     */
+    public int getKey(long idx){
+        return getLevelKey(0, idx);
+    }
+
+    /**
+     * Returns the value of the pair at a position in key order
+     * @param idx - position of the pair, between 0 and size() - 1
+     * @return - double value
+     */
+    public double getValue(long idx){
+        return getDouble(this.valuesOffset + 8 * idx);
+    }
+
+    /**
+     * Search for a given key in the tree
+     * @param key - the key to be searched
+     * @return - Double value associated with the key. If the key is not found, then the value is null
+     */
+    public Double search(int key){
+        long idx = lowerBound(key);
+        if(idx == this.numPairs || getLevelKey(0, idx) != key){
+            return null;
+        }
+        return getDouble(this.valuesOffset + 8 * idx);
+    }
+
+    /**
+     * Search for a range of values in the tree
+     * @param key1 - the lower bound of the search
+     * @param key2 -  the higher bound of the search
+     * @return - List<Double> contains values of all the keys that fall in the range
+     */
+    public List<Double> search(int key1, int key2){
+        List<Double> result = new ArrayList<>();
+        for(long idx = lowerBound(key1); idx < this.numPairs && getLevelKey(0, idx) <= key2; idx++){
+            result.add(getDouble(this.valuesOffset + 8 * idx));
+        }
+        return result;
+    }
+
+    /**
+     * Closes the file. The mappings are released when they are garbage collected
+     * @throws IOException - if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
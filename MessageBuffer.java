@@ -0,0 +1,383 @@
+import java.util.Arrays;
+
+/**
+ * The pending inserts and deletes held by an index node of a write buffered bplustree, see
+ * bplustree.enableWriteBuffering. The messages are kept sorted by key and, among equal keys, from the oldest to the
+ * newest, so the messages that go to one child of the node are a contiguous run and moving them down to the child or
+ * to a sibling after a split or a merge is an array copy.
+ *
+ * A new message is appended to an unsorted tail instead of being inserted at its position, which would shift half of
+ * the buffer on every write to the root, and so is a run that the parent of the node flushes down. The tail is sorted
+ * and merged into the sorted messages by sort, which lowerBound and upperBound call, so it is sorted once per flush
+ * rather than once per message.
+ *
+ * So that a point search neither scans the tail, which grows up to the capacity of the buffer, nor binary searches the
+ * sorted messages, the messages are also chained by the hash of their key, from the oldest to the newest, and applyTo
+ * follows the chain of its key only. Appending a message extends its chain; sort and the moves between buffers, which
+ * change the positions of the messages, rebuild the chains, once per flush rather than once per message.
+ *
+ * No message cancels another one: a delete removes the pair with its key that LeafNode.search finds, which may be a
+ * pair of the leaf node rather than the one a buffered insert adds, so every message reaches the leaf node.
+ */
+public class MessageBuffer {
+    static final byte INSERT = 1;
+    static final byte DELETE = 2;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] keys;
+    private double[] values;
+    private byte[] types;
+    private int size;
+    private int sortedSize; //the messages from sortedSize on are the unsorted tail, in the order they were added
+
+    //Spare arrays that sort merges into, allocated by the first sort
+    private int[] mergedKeys;
+    private double[] mergedValues;
+    private byte[] mergedTypes;
+    private long[] order;
+
+    //Hash chains of the messages: the first and the last message in each bucket, -1 if there is none, and the next
+    //newer message in the bucket of a message, -1 for the last one. There are as many buckets as the arrays can hold
+    //messages, a power of 2
+    private int[] firstInBucket;
+    private int[] lastInBucket;
+    private int[] nextInBucket;
+    //A bit per 8 bits of a second hash of the keys of the messages, set for every chained message, so that a point
+    //search for a key without messages, the common case, reads one small array instead of the buckets
+    private long[] filter;
+
+    public MessageBuffer(){
+        this.keys = new int[INITIAL_CAPACITY];
+        this.values = new double[INITIAL_CAPACITY];
+        this.types = new byte[INITIAL_CAPACITY];
+        this.nextInBucket = new int[INITIAL_CAPACITY];
+        this.firstInBucket = new int[INITIAL_CAPACITY];
+        this.lastInBucket = new int[INITIAL_CAPACITY];
+        this.filter = new long[INITIAL_CAPACITY / 8];
+        Arrays.fill(this.firstInBucket, -1);
+        Arrays.fill(this.lastInBucket, -1);
+    }
+
+    /**
+     * Grows the arrays so that they can hold a number of messages, and the hash chains with them
+     * @param capacity - number of messages
+     */
+    private void ensureCapacity(int capacity){
+        if(capacity > this.keys.length){
+            int newCapacity = Integer.highestOneBit(Math.max(capacity, 2 * this.keys.length) - 1) << 1;
+            this.keys = Arrays.copyOf(this.keys, newCapacity);
+            this.values = Arrays.copyOf(this.values, newCapacity);
+            this.types = Arrays.copyOf(this.types, newCapacity);
+            this.nextInBucket = new int[newCapacity];
+            this.firstInBucket = new int[newCapacity];
+            this.lastInBucket = new int[newCapacity];
+            this.filter = new long[newCapacity / 8];
+            Arrays.fill(this.firstInBucket, -1);
+            Arrays.fill(this.lastInBucket, -1);
+            chainAll();
+        }
+    }
+
+    /**
+     * Returns the hash chain of a key
+     * @param key - the key
+     * @return - int value between 0 and the number of buckets
+     */
+    private int bucket(int key){
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (this.firstInBucket.length - 1);
+    }
+
+    /**
+     * Returns the bit of a key in filter
+     * @param key - the key
+     * @return - int value between 0 and 64 times the length of filter
+     */
+    private int filterBit(int key){
+        int h = key * 0x85EBCA6B;
+        return (h ^ (h >>> 15)) & (64 * this.filter.length - 1);
+    }
+
+    /**
+     * Appends a message to the hash chain of its key
+     * @param idx - index of the message, newer than the messages already chained
+     */
+    private void chain(int idx){
+        int bucket = bucket(this.keys[idx]);
+        int bit = filterBit(this.keys[idx]);
+        this.filter[bit >>> 6] |= 1L << bit;
+        this.nextInBucket[idx] = -1;
+        if(this.lastInBucket[bucket] == -1){
+            this.firstInBucket[bucket] = idx;
+        }else{
+            this.nextInBucket[this.lastInBucket[bucket]] = idx;
+        }
+        this.lastInBucket[bucket] = idx;
+    }
+
+    /**
+     * Chains every message, in the order of their indices
+     */
+    private void chainAll(){
+        for(int i = 0; i < this.size; i++){
+            chain(i);
+        }
+    }
+
+    /**
+     * Empties the hash chains, before the messages are moved
+     */
+    private void unchainAll(){
+        for(int i = 0; i < this.size; i++){
+            int bucket = bucket(this.keys[i]);
+            this.firstInBucket[bucket] = -1;
+            this.lastInBucket[bucket] = -1;
+        }
+        Arrays.fill(this.filter, 0);
+    }
+
+    /**
+     * Adds a message that is newer than every message in the buffer to the unsorted tail
+     * @param key - key of the message
+     * @param value - value of an insert, ignored for a delete
+     * @param type - INSERT or DELETE
+     */
+    public void add(int key, double value, byte type){
+        ensureCapacity(this.size + 1);
+        this.keys[this.size] = key;
+        this.values[this.size] = value;
+        this.types[this.size] = type;
+        chain(this.size);
+        this.size++;
+    }
+
+    /**
+     * Copies a run of messages of the sorted buffer to the tail of another buffer, whose messages are older. The
+     * run is not removed from this buffer
+     * @param target - the buffer that receives the messages
+     * @param from - index of the first message of the run, inclusive
+     * @param to - index of the last message of the run, exclusive
+     */
+    public void appendTo(MessageBuffer target, int from, int to){
+        int n = to - from;
+        target.ensureCapacity(target.size + n);
+        System.arraycopy(this.keys, from, target.keys, target.size, n);
+        System.arraycopy(this.values, from, target.values, target.size, n);
+        System.arraycopy(this.types, from, target.types, target.size, n);
+        for(int i = 0; i < n; i++){
+            target.chain(target.size++);
+        }
+    }
+
+    /**
+     * Sorts the tail and merges it into the sorted messages. The tail is sorted by key and position, which keeps
+     * equal keys in the order they were added, and goes after the sorted messages with equal keys as it is newer
+     */
+    public void sort(){
+        int tail = this.size - this.sortedSize;
+        if(tail == 0){
+            return;
+        }
+        unchainAll();
+        if(this.order == null || this.order.length < tail){
+            this.order = new long[Math.max(tail, INITIAL_CAPACITY)];
+        }
+        if(this.mergedKeys == null || this.mergedKeys.length < this.keys.length){
+            this.mergedKeys = new int[this.keys.length];
+            this.mergedValues = new double[this.keys.length];
+            this.mergedTypes = new byte[this.keys.length];
+        }
+        for(int i = 0; i < tail; i++){
+            this.order[i] = ((long) this.keys[this.sortedSize + i] << 32) | i;
+        }
+        Arrays.sort(this.order, 0, tail);
+
+        int i = 0, j = 0, k = 0;
+        while(i < this.sortedSize || j < tail){
+            int src;
+            if(j == tail || (i < this.sortedSize && this.keys[i] <= (int) (this.order[j] >> 32))){
+                src = i++;
+            }else{
+                src = this.sortedSize + (int) this.order[j++];
+            }
+            this.mergedKeys[k] = this.keys[src];
+            this.mergedValues[k] = this.values[src];
+            this.mergedTypes[k] = this.types[src];
+            k++;
+        }
+
+        int[] keys = this.keys;
+        double[] values = this.values;
+        byte[] types = this.types;
+        this.keys = this.mergedKeys;
+        this.values = this.mergedValues;
+        this.types = this.mergedTypes;
+        this.mergedKeys = keys;
+        this.mergedValues = values;
+        this.mergedTypes = types;
+        this.sortedSize = this.size;
+        chainAll();
+    }
+
+    /**
+     * Returns the index of the first message whose key is greater than or equal to a key, after sorting the buffer
+     * @param key - the key
+     * @return - int value between 0 and size()
+     */
+    public int lowerBound(int key){
+        sort();
+        int l = 0, r = this.size;
+        while(l < r){
+            int mid = (l + r) >>> 1;
+            if(this.keys[mid] < key){
+                l = mid + 1;
+            }else{
+                r = mid;
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Returns the index of the first message whose key is greater than a key, after sorting the buffer
+     * @param key - the key
+     * @return - int value between 0 and size()
+     */
+    public int upperBound(int key){
+        sort();
+        int l = 0, r = this.size;
+        while(l < r){
+            int mid = (l + r) >>> 1;
+            if(this.keys[mid] <= key){
+                l = mid + 1;
+            }else{
+                r = mid;
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Applies the messages for a key to a run of pairs from the oldest to the newest, which a point search does on its
+     * path from the leaf node up to the root. Does not sort the buffer
+     * @param key - the key
+     * @param run - the pairs with the key
+     */
+    public void applyTo(int key, KeyRun run){
+        int bit = filterBit(key);
+        if((this.filter[bit >>> 6] & (1L << bit)) == 0){
+            return;
+        }
+        for(int i = this.firstInBucket[bucket(key)]; i != -1; i = this.nextInBucket[i]){
+            if(this.keys[i] == key){
+                run.apply(this.types[i], this.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Moves a run of messages of the sorted buffer to another buffer. The moved messages are taken to be newer than
+     * those of the target buffer, so they are placed after the messages of the target that have equal keys
+     * @param target - the buffer that receives the messages
+     * @param from - index of the first message of the run, inclusive
+     * @param to - index of the last message of the run, exclusive
+     */
+    public void moveTo(MessageBuffer target, int from, int to){
+        int n = to - from;
+        if(n <= 0){
+            return;
+        }
+        target.sort();
+        target.ensureCapacity(target.size + n);
+        target.unchainAll();
+
+        //merge from the back so that the target messages are moved at most once
+        int i = target.size - 1, j = to - 1, k = target.size + n - 1;
+        while(j >= from){
+            if(i >= 0 && target.keys[i] > this.keys[j]){
+                target.keys[k] = target.keys[i];
+                target.values[k] = target.values[i];
+                target.types[k] = target.types[i];
+                i--;
+            }else{
+                target.keys[k] = this.keys[j];
+                target.values[k] = this.values[j];
+                target.types[k] = this.types[j];
+                j--;
+            }
+            k--;
+        }
+        target.size += n;
+        target.sortedSize = target.size;
+        target.chainAll();
+        remove(from, to);
+    }
+
+    /**
+     * Moves every message to another buffer, whose messages are older
+     * @param target - the buffer that receives the messages
+     */
+    public void moveAllTo(MessageBuffer target){
+        sort();
+        moveTo(target, 0, this.size);
+    }
+
+    /**
+     * Removes a run of messages of the sorted buffer and shifts the following ones to the left
+     * @param from - index of the first message of the run, inclusive
+     * @param to - index of the last message of the run, exclusive
+     */
+    public void remove(int from, int to){
+        unchainAll();
+        System.arraycopy(this.keys, to, this.keys, from, this.size - to);
+        System.arraycopy(this.values, to, this.values, from, this.size - to);
+        System.arraycopy(this.types, to, this.types, from, this.size - to);
+        this.size -= to - from;
+        this.sortedSize = this.size;
+        chainAll();
+    }
+
+    /**
+     * Removes every message
+     */
+    public void clear(){
+        unchainAll();
+        this.size = 0;
+        this.sortedSize = 0;
+    }
+
+    /**
+     * Returns the number of messages in the buffer
+     * @return - int value
+     */
+    public int size(){
+        return this.size;
+    }
+
+    /**
+     * Returns the key of the message at an index
+     * @param idx - index of the message
+     * @return - int value of the key
+     */
+    public int getKey(int idx){
+        return this.keys[idx];
+    }
+
+    /**
+     * Returns the value of the message at an index
+     * @param idx - index of the message
+     * @return - double value, meaningless for a delete
+     */
+    public double getValue(int idx){
+        return this.values[idx];
+    }
+
+    /**
+     * Returns the type of the message at an index
+     * @param idx - index of the message
+     * @return - INSERT or DELETE
+     */
+    public byte getType(int idx){
+        return this.types[idx];
+    }
+}
@@ -2,5 +2,9 @@
  * A node in B+ tree
  */
 public class Node {
-    IndexNode parent;
+    final boolean isLeaf; //lets the tree descent tell leaves from index nodes without a type check
+
+    Node(boolean isLeaf){
+        this.isLeaf = isLeaf;
+    }
 }
@@ -0,0 +1,77 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * The concurrency control state of a node of ConcurrentBPlusTree, held by ConcurrentLeafNode and ConcurrentIndexNode
+ * so that the nodes of the single threaded trees do not carry it
+ */
+public class NodeLatch {
+    //Exclusive upper bound of the keys that belong to the node, so that a reader that reaches a node after it was
+    //split can tell that its key moved to the right sibling. Long.MAX_VALUE for the rightmost node of a level
+    long highKey = Long.MAX_VALUE;
+
+    //Version counter used for optimistic lock coupling. Bit 1 is set while a writer holds the node and every write
+    //lock / unlock pair advances the counter, so a reader can detect that the node changed under it by comparing the
+    //version before and after its reads
+    private volatile long version;
+
+    private static final long LOCKED = 2;
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(NodeLatch.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Starts an optimistic read of the node
+     * @return - the current version, or -1 if a writer holds the node and the reader has to restart
+     */
+    long readVersion(){
+        long version = this.version;
+        return (version & LOCKED) != 0 ? -1 : version;
+    }
+
+    /**
+     * Checks that the node has not been changed since an optimistic read started. The fence keeps the reads of the
+     * node contents from being reordered after the read of the version
+     * @param version - version returned by readVersion
+     * @return - true if every read of the node made after readVersion is consistent
+     */
+    boolean validateVersion(long version){
+        VarHandle.acquireFence();
+        return this.version == version;
+    }
+
+    /**
+     * Turns an optimistic read into a write lock if the node is still at the version that was read
+     * @param version - version returned by readVersion
+     * @return - true if the write lock is held, false if the node changed and the caller has to restart
+     */
+    boolean tryUpgradeToWriteLock(long version){
+        return VERSION.compareAndSet(this, version, version + LOCKED);
+    }
+
+    /**
+     * Acquires the write lock, spinning while another writer holds it
+     */
+    void writeLock(){
+        while(true){
+            long version = this.version;
+            if((version & LOCKED) == 0 && VERSION.compareAndSet(this, version, version + LOCKED)){
+                return;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Releases the write lock and publishes a new version to readers
+     */
+    void writeUnlock(){
+        this.version = this.version + LOCKED;
+    }
+}
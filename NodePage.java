@@ -0,0 +1,550 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the B+ tree nodes stored in fixed-size pages. A node is read and modified in place in its page buffer,
+ * the keys and values of a leaf and the keys and child page ids of an index node being parallel arrays at fixed
+ * offsets, so nothing is deserialized into objects on the way.
+ *
+ * Leaf page:  type (1 byte), unused (1), number of pairs (2), previous leaf (4), next leaf (4), unused (4),
+ *             keys (4 * leafCapacity), values (8 * leafCapacity)
+ * Index page: type (1 byte), unused (1), degree (2), unused (4), keys (4 * (maxDegree - 1)), children (4 * maxDegree)
+ *
+ * Leaves can instead be delta encoded (frame of reference), which suits dense keys such as sequence ids and
+ * timestamps. A compressed leaf stores a base key, the smallest key it held when it was last encoded, and the
+ * difference of every key from it in 1, 2 or 4 bytes, the smallest width that fits the largest difference. The values
+ * grow from the header towards the end of the page and the key deltas from the end of the page towards the header, so
+ * a leaf holds as many pairs as fit in the page at its current width: (pageSize - 16) / 9 pairs with 1-byte deltas
+ * against (pageSize - 16) / 12 with full keys. Keys are decoded on the fly by searches and scans, and a leaf is
+ * re-encoded when an insert falls outside the range of its width and when it is split, so its width fits its keys.
+ *
+ * Compressed leaf page: type (1 byte), delta width (1), number of pairs (2), previous leaf (4), next leaf (4),
+ *             base key (4), values (8 per pair), free space, key deltas in reverse order (width per pair)
+ *
+ * All multi-byte fields are big endian.
+ */
+public class NodePage {
+    static final byte LEAF = 0;
+    static final byte INDEX = 1;
+    static final byte FREE = 2;
+    static final int NONE = -1; //page id used for a missing sibling
+
+    private static final int LEAF_HEADER = 16;
+    private static final int INDEX_HEADER = 8;
+
+    private final int pageSize;
+    private final boolean compressed;
+    private final int leafCapacity;
+    private final int maxDegree;
+    private final int leafValuesOffset;
+    private final int indexChildrenOffset;
+    private final int[] scratchKeys; //keys of a compressed leaf being re-encoded, so a NodePage is not thread safe
+
+    /**
+     * @param pageSize - size of a page in bytes
+     */
+    public NodePage(int pageSize){
+        this(pageSize, false);
+    }
+
+    /**
+     * @param pageSize - size of a page in bytes
+     * @param compressed - true to delta encode the keys of the leaves
+     */
+    public NodePage(int pageSize, boolean compressed){
+        this.pageSize = pageSize;
+        this.compressed = compressed;
+        //a compressed leaf is always able to hold 3 pairs with full 4-byte keys
+        this.leafCapacity = (pageSize - LEAF_HEADER) / (compressed ? 9 : 12);
+        this.maxDegree = (pageSize - INDEX_HEADER + 4) / 8;
+        if((pageSize - LEAF_HEADER) / 12 < 3 || this.maxDegree < 3){
+            throw new IllegalArgumentException("page size " + pageSize + " is too small to hold 3 entries per node");
+        }
+        this.leafValuesOffset = compressed ? LEAF_HEADER : LEAF_HEADER + 4 * this.leafCapacity;
+        this.indexChildrenOffset = INDEX_HEADER + 4 * (this.maxDegree - 1);
+        this.scratchKeys = compressed ? new int[this.leafCapacity] : null;
+    }
+
+    /**
+     * getter for pageSize variable
+     * @return - int value of pageSize
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * getter for compressed variable
+     * @return - true if the keys of the leaves are delta encoded
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * getter for leafCapacity variable
+     * @return - maximum number of pairs in a leaf page, which for compressed leaves is only reached with 1-byte deltas
+     */
+    public int getLeafCapacity() {
+        return leafCapacity;
+    }
+
+    /**
+     * getter for maxDegree variable
+     * @return - maximum number of children of an index page
+     */
+    public int getMaxDegree() {
+        return maxDegree;
+    }
+
+    /**
+     * Formats a page as an empty leaf node
+     * @param page - the page buffer
+     */
+    public void initLeaf(ByteBuffer page){
+        page.put(0, LEAF);
+        if(this.compressed){
+            page.put(1, (byte) 1);
+        }
+        setCount(page, 0);
+        setPrev(page, NONE);
+        setNext(page, NONE);
+    }
+
+    /**
+     * Formats a page as an index node without children
+     * @param page - the page buffer
+     */
+    public void initIndex(ByteBuffer page){
+        page.put(0, INDEX);
+        setCount(page, 0);
+    }
+
+    /**
+     * Check if a page holds a leaf node
+     * @param page - the page buffer
+     * @return - boolean value
+     */
+    public boolean isLeaf(ByteBuffer page){
+        return page.get(0) == LEAF;
+    }
+
+    /**
+     * Returns the number of pairs of a leaf page or the degree of an index page
+     * @param page - the page buffer
+     * @return - int value
+     */
+    public int getCount(ByteBuffer page){
+        return page.getShort(2) & 0xFFFF;
+    }
+
+    /**
+     * Sets the number of pairs of a leaf page or the degree of an index page
+     * @param page - the page buffer
+     * @param count - int value
+     */
+    public void setCount(ByteBuffer page, int count){
+        page.putShort(2, (short) count);
+    }
+
+    /**
+     * Returns the page id of the previous leaf of a leaf page
+     * @param page - the page buffer
+     * @return - page id, NONE for the leftmost leaf
+     */
+    public int getPrev(ByteBuffer page){
+        return page.getInt(4);
+    }
+
+    /**
+     * Sets the page id of the previous leaf of a leaf page
+     * @param page - the page buffer
+     * @param pageId - page id, NONE for the leftmost leaf
+     */
+    public void setPrev(ByteBuffer page, int pageId){
+        page.putInt(4, pageId);
+    }
+
+    /**
+     * Returns the page id of the next leaf of a leaf page
+     * @param page - the page buffer
+     * @return - page id, NONE for the rightmost leaf
+     */
+    public int getNext(ByteBuffer page){
+        return page.getInt(8);
+    }
+
+    /**
+     * Sets the page id of the next leaf of a leaf page
+     * @param page - the page buffer
+     * @param pageId - page id, NONE for the rightmost leaf
+     */
+    public void setNext(ByteBuffer page, int pageId){
+        page.putInt(8, pageId);
+    }
+
+    /**
+     * Returns the key of the pair at an index of a leaf page
+     * @param page - the page buffer
+     * @param idx - index of the pair
+     * @return - int value of the key
+     */
+    public int getKey(ByteBuffer page, int idx){
+        if(this.compressed){
+            return page.getInt(12) + getDelta(page, page.get(1), idx);
+        }
+        return page.getInt(LEAF_HEADER + 4 * idx);
+    }
+
+    /**
+     * Returns the difference between the key at an index of a compressed leaf page and its base key
+     * @param page - the page buffer
+     * @param width - width of the deltas of the page in bytes
+     * @param idx - index of the pair
+     * @return - the delta, to be read as an unsigned int
+     */
+    private int getDelta(ByteBuffer page, int width, int idx){
+        int offset = this.pageSize - width * (idx + 1);
+        switch(width){
+            case 1:
+                return page.get(offset) & 0xFF;
+            case 2:
+                return page.getShort(offset) & 0xFFFF;
+            default:
+                return page.getInt(offset);
+        }
+    }
+
+    /**
+     * Writes the difference between a key and the base key at an index of a compressed leaf page
+     * @param page - the page buffer
+     * @param width - width of the deltas of the page in bytes
+     * @param idx - index of the pair
+     * @param delta - the delta
+     */
+    private void putDelta(ByteBuffer page, int width, int idx, int delta){
+        int offset = this.pageSize - width * (idx + 1);
+        switch(width){
+            case 1:
+                page.put(offset, (byte) delta);
+                break;
+            case 2:
+                page.putShort(offset, (short) delta);
+                break;
+            default:
+                page.putInt(offset, delta);
+        }
+    }
+
+    /**
+     * Returns the smallest width that holds a delta
+     * @param delta - the delta, read as an unsigned int
+     * @return - 1, 2 or 4 bytes
+     */
+    private static int getDeltaWidth(int delta){
+        if((delta & ~0xFF) == 0){
+            return 1;
+        }
+        return (delta & ~0xFFFF) == 0 ? 2 : 4;
+    }
+
+    /**
+     * Rewrites the key deltas of a compressed leaf page against a new base key and width. The values stay in place
+     * @param page - the page buffer
+     * @param base - the new base key, not greater than any key of the page
+     * @param width - the new width, large enough for every key of the page
+     */
+    private void reencode(ByteBuffer page, int base, int width){
+        int count = getCount(page);
+        for(int i = 0; i < count; i++){
+            this.scratchKeys[i] = getKey(page, i);
+        }
+        page.put(1, (byte) width);
+        page.putInt(12, base);
+        for(int i = 0; i < count; i++){
+            putDelta(page, width, i, this.scratchKeys[i] - base);
+        }
+    }
+
+    /**
+     * Check if a leaf page has room for one more pair with a given key. A compressed leaf may have fewer pairs than
+     * getLeafCapacity and still be full, at its current width or at the width the key would need
+     * @param page - the page buffer
+     * @param key - key of the pair
+     * @return - boolean value
+     */
+    public boolean leafHasRoom(ByteBuffer page, int key){
+        int count = getCount(page);
+        if(!this.compressed || count == 0){
+            return count < this.leafCapacity;
+        }
+        int base = Math.min(page.getInt(12), key);
+        int maxKey = Math.max(getKey(page, count - 1), key);
+        int width = Math.max(page.get(1), getDeltaWidth(maxKey - base));
+        return LEAF_HEADER + (8 + width) * (count + 1) <= this.pageSize;
+    }
+
+    /**
+     * Returns the value of the pair at an index of a leaf page
+     * @param page - the page buffer
+     * @param idx - index of the pair
+     * @return - double value
+     */
+    public double getValue(ByteBuffer page, int idx){
+        return page.getDouble(this.leafValuesOffset + 8 * idx);
+    }
+
+    /**
+     * Replaces the value of the pair at an index of a leaf page
+     * @param page - the page buffer
+     * @param idx - index of the pair
+     * @param value - the new value
+     */
+    public void setValue(ByteBuffer page, int idx, double value){
+        page.putDouble(this.leafValuesOffset + 8 * idx, value);
+    }
+
+    /**
+     * Binary search for a pair in a leaf page
+     * @param page - the page buffer
+     * @param key - key of the pair to be searched
+     * @return - index of the pair, or -(insertion point) - 1 if the key is not found
+     */
+    public int leafSearch(ByteBuffer page, int key){
+        if(this.compressed){
+            return compressedLeafSearch(page, key);
+        }
+        int l = 0, r = getCount(page) - 1;
+        while(l <= r){
+            int mid = l + (r - l) / 2;
+            int midKey = getKey(page, mid);
+            if(midKey == key){
+                return mid;
+            }else if(midKey > key){
+                r = mid - 1;
+            }else{
+                l = mid + 1;
+            }
+        }
+        return -l - 1;
+    }
+
+    /**
+     * Binary search for a pair in a compressed leaf page. The key is turned into a delta once and compared with the
+     * deltas of the page, so no key is decoded
+     * @param page - the page buffer
+     * @param key - key of the pair to be searched
+     * @return - index of the pair, or -(insertion point) - 1 if the key is not found
+     */
+    private int compressedLeafSearch(ByteBuffer page, int key){
+        int count = getCount(page);
+        int base = page.getInt(12);
+        if(count == 0 || key < base){
+            return -1;
+        }
+        int width = page.get(1);
+        long target = (long) key - base;
+        int l = 0, r = count - 1;
+        while(l <= r){
+            int mid = l + (r - l) / 2;
+            long midDelta = getDelta(page, width, mid) & 0xFFFFFFFFL;
+            if(midDelta == target){
+                return mid;
+            }else if(midDelta > target){
+                r = mid - 1;
+            }else{
+                l = mid + 1;
+            }
+        }
+        return -l - 1;
+    }
+
+    /**
+     * Inserts a pair into a leaf page that has room for it, shifting the pairs after idx to the right by 1
+     * @param page - the page buffer
+     * @param idx - index at which the pair is inserted
+     * @param key - key of the pair
+     * @param value - value of the pair
+     */
+    public void leafInsert(ByteBuffer page, int idx, int key, double value){
+        int count = getCount(page);
+        int numMoved = count - idx;
+        if(this.compressed){
+            if(!leafHasRoom(page, key)){
+                throw new IllegalStateException("the leaf page has no room for key " + key);
+            }
+            int base = page.getInt(12);
+            int width = page.get(1);
+            if(count == 0){
+                page.putInt(12, key);
+                base = key;
+            }else{
+                int newBase = Math.min(base, key);
+                int newWidth = Math.max(width, getDeltaWidth(Math.max(getKey(page, count - 1), key) - newBase));
+                if(newBase != base || newWidth != width){
+                    reencode(page, newBase, newWidth);
+                    base = newBase;
+                    width = newWidth;
+                }
+            }
+            page.put(this.leafValuesOffset + 8 * (idx + 1), page, this.leafValuesOffset + 8 * idx, 8 * numMoved);
+            page.putDouble(this.leafValuesOffset + 8 * idx, value);
+            int keysStart = this.pageSize - width * count;
+            page.put(keysStart - width, page, keysStart, width * numMoved);
+            putDelta(page, width, idx, key - base);
+            setCount(page, count + 1);
+            return;
+        }
+        page.put(LEAF_HEADER + 4 * (idx + 1), page, LEAF_HEADER + 4 * idx, 4 * numMoved);
+        page.put(this.leafValuesOffset + 8 * (idx + 1), page, this.leafValuesOffset + 8 * idx, 8 * numMoved);
+        page.putInt(LEAF_HEADER + 4 * idx, key);
+        page.putDouble(this.leafValuesOffset + 8 * idx, value);
+        setCount(page, count + 1);
+    }
+
+    /**
+     * Deletes the pair at an index from a leaf page and shifts the remaining pairs to the left by 1
+     * @param page - the page buffer
+     * @param idx - index of the pair
+     */
+    public void leafDelete(ByteBuffer page, int idx){
+        int count = getCount(page);
+        int numMoved = count - idx - 1;
+        if(this.compressed){
+            int width = page.get(1);
+            page.put(this.leafValuesOffset + 8 * idx, page, this.leafValuesOffset + 8 * (idx + 1), 8 * numMoved);
+            int keysStart = this.pageSize - width * count;
+            page.put(keysStart + width, page, keysStart, width * numMoved);
+            setCount(page, count - 1);
+            return;
+        }
+        page.put(LEAF_HEADER + 4 * idx, page, LEAF_HEADER + 4 * (idx + 1), 4 * numMoved);
+        page.put(this.leafValuesOffset + 8 * idx, page, this.leafValuesOffset + 8 * (idx + 1), 8 * numMoved);
+        setCount(page, count - 1);
+    }
+
+    /**
+     * Moves the pairs from splitIdx onwards to an empty leaf page. Compressed leaves are both re-encoded with the
+     * narrowest width for their keys
+     * @param page - the page buffer of the leaf being split
+     * @param splitIdx - index of the first pair that is moved
+     * @param newPage - the page buffer of the new leaf
+     */
+    public void leafSplit(ByteBuffer page, int splitIdx, ByteBuffer newPage){
+        int count = getCount(page);
+        int numMoved = count - splitIdx;
+        if(this.compressed){
+            newPage.put(this.leafValuesOffset, page, this.leafValuesOffset + 8 * splitIdx, 8 * numMoved);
+            int newBase = getKey(page, splitIdx);
+            int newWidth = getDeltaWidth(getKey(page, count - 1) - newBase);
+            newPage.put(1, (byte) newWidth);
+            newPage.putInt(12, newBase);
+            for(int i = 0; i < numMoved; i++){
+                putDelta(newPage, newWidth, i, getKey(page, splitIdx + i) - newBase);
+            }
+            setCount(newPage, numMoved);
+            setCount(page, splitIdx);
+            if(splitIdx > 0){
+                int base = getKey(page, 0);
+                reencode(page, base, getDeltaWidth(getKey(page, splitIdx - 1) - base));
+            }
+            return;
+        }
+        newPage.put(LEAF_HEADER, page, LEAF_HEADER + 4 * splitIdx, 4 * numMoved);
+        newPage.put(this.leafValuesOffset, page, this.leafValuesOffset + 8 * splitIdx, 8 * numMoved);
+        setCount(newPage, numMoved);
+        setCount(page, splitIdx);
+    }
+
+    /**
+     * Returns a separator key of an index page
+     * @param page - the page buffer
+     * @param idx - index of the key
+     * @return - int value of the key
+     */
+    public int getIndexKey(ByteBuffer page, int idx){
+        return page.getInt(INDEX_HEADER + 4 * idx);
+    }
+
+    /**
+     * Sets a separator key of an index page
+     * @param page - the page buffer
+     * @param idx - index of the key
+     * @param key - int value of the key
+     */
+    public void setIndexKey(ByteBuffer page, int idx, int key){
+        page.putInt(INDEX_HEADER + 4 * idx, key);
+    }
+
+    /**
+     * Returns the page id of a child of an index page
+     * @param page - the page buffer
+     * @param idx - index of the child
+     * @return - page id of the child
+     */
+    public int getChild(ByteBuffer page, int idx){
+        return page.getInt(this.indexChildrenOffset + 4 * idx);
+    }
+
+    /**
+     * Sets the page id of a child of an index page
+     * @param page - the page buffer
+     * @param idx - index of the child
+     * @param pageId - page id of the child
+     */
+    public void setChild(ByteBuffer page, int idx, int pageId){
+        page.putInt(this.indexChildrenOffset + 4 * idx, pageId);
+    }
+
+    /**
+     * Returns the index of child subtree to which the key belongs to
+     * @param page - the page buffer of an index node
+     * @param key - value for the search
+     * @return - index of the child subtree
+     */
+    public int getChildIdxForAKey(ByteBuffer page, int key){
+        int l = 0, r = getCount(page) - 2;
+        while(l <= r){
+            int mid = l + (r - l) / 2;
+            if(getIndexKey(page, mid) <= key){
+                l = mid + 1;
+            }else{
+                r = mid - 1;
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Inserts a separator key at idx and a child right after it into an index page that has room for them
+     * @param page - the page buffer
+     * @param idx - index of the key, the child is inserted at idx + 1
+     * @param key - the separator key
+     * @param pageId - page id of the new child
+     */
+    public void indexInsert(ByteBuffer page, int idx, int key, int pageId){
+        int degree = getCount(page);
+        page.put(INDEX_HEADER + 4 * (idx + 1), page, INDEX_HEADER + 4 * idx, 4 * (degree - 1 - idx));
+        page.put(this.indexChildrenOffset + 4 * (idx + 2), page, this.indexChildrenOffset + 4 * (idx + 1),
+                4 * (degree - 1 - idx));
+        setIndexKey(page, idx, key);
+        setChild(page, idx + 1, pageId);
+        setCount(page, degree + 1);
+    }
+
+    /**
+     * Deletes the child at idx from an index page along with the separator key next to it: the key on its left, or
+     * the key on its right for the first child
+     * @param page - the page buffer
+     * @param idx - index of the child
+     */
+    public void indexDelete(ByteBuffer page, int idx){
+        int degree = getCount(page);
+        int keyIdx = Math.max(0, idx - 1);
+        if(degree > 1){
+            page.put(INDEX_HEADER + 4 * keyIdx, page, INDEX_HEADER + 4 * (keyIdx + 1), 4 * (degree - 2 - keyIdx));
+        }
+        page.put(this.indexChildrenOffset + 4 * idx, page, this.indexChildrenOffset + 4 * (idx + 1),
+                4 * (degree - 1 - idx));
+        setCount(page, degree - 1);
+    }
+}
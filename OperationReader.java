@@ -0,0 +1,359 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A streaming parser for the operation file read by bplustree.main, with lines of the form Initialize(3),
+ * Insert(21, 0.3534), Delete (108), Search(234) and Search(23, 99). The file is read through a FileChannel into one
+ * large buffer and each line is decoded in place from its bytes, so no String is created per line and no regular
+ * expression is run; only a number that is not a plain decimal falls back to Integer.parseInt or Double.parseDouble.
+ *
+ * A line is decoded exactly as the previous parser did, which trimmed it, split it on the characters ',', '(' and ')'
+ * with String.split and trimmed every part: the operation is the first part, its arguments are the following parts and
+ * a Search with one argument is a point search while a Search with more is a range search. Lines end with "\n", "\r"
+ * or "\r\n" and the text is ASCII or UTF-8.
+ */
+public class OperationReader implements OperationSource {
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    private static final int MAX_PARTS = 3; //the operation and at most two arguments are ever read
+    //powers of ten that are exactly representable as a double
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+            1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final FileChannel channel;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfFile;
+    private long lineNumber;
+
+    //start and end of every part of the current line in the buffer, and the number of parts String.split would return
+    private final int[] partStarts = new int[MAX_PARTS];
+    private final int[] partEnds = new int[MAX_PARTS];
+    private int numParts;
+
+    //the current operation
+    private byte type;
+    private int key1;
+    private int key2;
+    private double value;
+
+    /**
+     * Opens an operation file
+     * @param path - path of the file
+     * @throws IOException - if the file cannot be opened
+     */
+    public OperationReader(Path path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Opens an operation file with a read buffer of a given size, which grows if a line is longer
+     * @param path - path of the file
+     * @param bufferSize - initial size of the read buffer in bytes
+     * @throws IOException - if the file cannot be opened
+     */
+    OperationReader(Path path, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * Reads more of the file after the unread bytes of the buffer. The unread bytes are moved to the start of the
+     * buffer first, and the buffer is doubled if it is full of them
+     * @param from - position of the first unread byte that must be kept
+     * @return - the number of bytes the kept ones moved back by
+     * @throws IOException - if the file cannot be read
+     */
+    private int fill(int from) throws IOException {
+        int kept = this.limit - from;
+        if(kept == this.buffer.length){
+            byte[] grown = new byte[2 * this.buffer.length];
+            System.arraycopy(this.buffer, from, grown, 0, kept);
+            this.buffer = grown;
+        }else{
+            System.arraycopy(this.buffer, from, this.buffer, 0, kept);
+        }
+        this.position -= from;
+        this.limit = kept;
+        ByteBuffer target = ByteBuffer.wrap(this.buffer, kept, this.buffer.length - kept);
+        while(target.hasRemaining()){
+            if(this.channel.read(target) < 0){
+                this.endOfFile = true;
+                break;
+            }
+        }
+        this.limit = target.position();
+        return from;
+    }
+
+    /**
+     * Decodes the next line of the file
+     * @return - false if the end of the file is reached
+     * @throws IOException - if the file cannot be read
+     * @throws NumberFormatException - if an argument of the operation is not a number
+     */
+    @Override
+    public boolean next() throws IOException {
+        if(this.position == this.limit){
+            if(this.endOfFile){
+                return false;
+            }
+            fill(this.position);
+            if(this.position == this.limit){
+                return false;
+            }
+        }
+
+        //find the end of the line, reading more of the file until it is in the buffer
+        int start = this.position;
+        int end = start;
+        while(true){
+            while(end < this.limit && this.buffer[end] != '\n' && this.buffer[end] != '\r'){
+                end++;
+            }
+            if(end < this.limit || this.endOfFile){
+                break;
+            }
+            int moved = fill(start);
+            start -= moved;
+            end -= moved;
+        }
+        int next = end;
+        if(next < this.limit){
+            if(this.buffer[next] == '\r' && next + 1 == this.limit && !this.endOfFile){
+                int moved = fill(start); //the "\n" of a "\r\n" may be in the part of the file not read yet
+                start -= moved;
+                end -= moved;
+                next -= moved;
+            }
+            next++;
+            if(this.buffer[next - 1] == '\r' && next < this.limit && this.buffer[next] == '\n'){
+                next++;
+            }
+        }
+        this.position = next;
+        this.lineNumber++;
+        decode(start, end);
+        return true;
+    }
+
+    /**
+     * Splits a line into its parts and decodes the operation and its arguments
+     * @param start - position of the first byte of the line
+     * @param end - position after the last byte of the line
+     */
+    private void decode(int start, int end){
+        //String.trim removes every character up to ' '
+        while(start < end && (this.buffer[start] & 0xff) <= ' '){
+            start++;
+        }
+        while(end > start && (this.buffer[end - 1] & 0xff) <= ' '){
+            end--;
+        }
+
+        //String.split keeps empty leading and middle parts but removes the empty parts at the end
+        this.numParts = 0;
+        int parts = 0;
+        int partStart = start;
+        for(int i = start; i <= end; i++){
+            if(i == end || this.buffer[i] == ',' || this.buffer[i] == '(' || this.buffer[i] == ')'){
+                if(parts < MAX_PARTS){
+                    this.partStarts[parts] = partStart;
+                    this.partEnds[parts] = i;
+                }
+                parts++;
+                if(i > partStart || (parts == 1 && end == start)){
+                    this.numParts = parts; //an empty line is split into one empty part
+                }
+                partStart = i + 1;
+            }
+        }
+
+        this.type = INVALID;
+        if(partEquals(0, bplustree.INSERT)){
+            this.type = INSERT;
+            this.key1 = parseInt(1);
+            this.value = parseDouble(2);
+        }else if(partEquals(0, bplustree.SEARCH)){
+            this.key1 = parseInt(1);
+            if(this.numParts == 2){
+                this.type = SEARCH;
+            }else{
+                this.type = RANGE_SEARCH;
+                this.key2 = parseInt(2);
+            }
+        }else if(partEquals(0, bplustree.DELETE)){
+            this.type = DELETE;
+            this.key1 = parseInt(1);
+        }else if(partEquals(0, bplustree.INITIALIZE)){
+            this.type = INITIALIZE;
+            this.key1 = parseInt(1);
+        }
+    }
+
+    /**
+     * Returns the start of a part of the current line after its leading spaces, and checks that the line has the part
+     * @param part - index of the part
+     * @return - position in the buffer
+     */
+    private int trimmedStart(int part){
+        if(part >= this.numParts){
+            throw new ArrayIndexOutOfBoundsException("line " + this.lineNumber + " has no argument " + part);
+        }
+        int start = this.partStarts[part];
+        while(start < this.partEnds[part] && (this.buffer[start] & 0xff) <= ' '){
+            start++;
+        }
+        return start;
+    }
+
+    private int trimmedEnd(int part){
+        int end = this.partEnds[part];
+        while(end > this.partStarts[part] && (this.buffer[end - 1] & 0xff) <= ' '){
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Check if a trimmed part of the current line is equal to an ASCII string
+     * @param part - index of the part
+     * @param text - the string
+     * @return - boolean value
+     */
+    private boolean partEquals(int part, String text){
+        int start = trimmedStart(part);
+        int end = trimmedEnd(part);
+        if(end - start != text.length()){
+            return false;
+        }
+        for(int i = 0; i < text.length(); i++){
+            if(this.buffer[start + i] != text.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String partString(int part){
+        int start = trimmedStart(part);
+        return new String(this.buffer, start, trimmedEnd(part) - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a part of the current line as an int. Anything other than an optional sign followed by at most 9 digits
+     * is left to Integer.parseInt
+     * @param part - index of the part
+     * @return - int value
+     */
+    private int parseInt(int part){
+        int start = trimmedStart(part);
+        int end = trimmedEnd(part);
+        int i = start;
+        boolean negative = false;
+        if(i < end && (this.buffer[i] == '-' || this.buffer[i] == '+')){
+            negative = this.buffer[i] == '-';
+            i++;
+        }
+        if(i == end || end - i > 9){
+            return Integer.parseInt(partString(part));
+        }
+        int result = 0;
+        for(; i < end; i++){
+            int digit = this.buffer[i] - '0';
+            if(digit < 0 || digit > 9){
+                return Integer.parseInt(partString(part));
+            }
+            result = 10 * result + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses a part of the current line as a double. A plain decimal whose digits fit in a long below 2^53 and whose
+     * decimal exponent is at most 22 is exactly one IEEE multiplication or division of two exact doubles, so it is
+     * rounded exactly as Double.parseDouble would round it; anything else is left to Double.parseDouble
+     * @param part - index of the part
+     * @return - double value
+     */
+    private double parseDouble(int part){
+        int start = trimmedStart(part);
+        int end = trimmedEnd(part);
+        int i = start;
+        boolean negative = false;
+        if(i < end && (this.buffer[i] == '-' || this.buffer[i] == '+')){
+            negative = this.buffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int numDigits = 0;
+        int exponent = 0;
+        boolean point = false;
+        boolean digits = false;
+        for(; i < end; i++){
+            byte b = this.buffer[i];
+            if(b >= '0' && b <= '9'){
+                if(numDigits == 18){
+                    return Double.parseDouble(partString(part));
+                }
+                mantissa = 10 * mantissa + (b - '0');
+                digits = true;
+                if(mantissa != 0){
+                    numDigits++; //leading zeros do not count against the precision
+                }
+                if(point){
+                    exponent--;
+                }
+            }else if(b == '.' && !point){
+                point = true;
+            }else{
+                return Double.parseDouble(partString(part));
+            }
+        }
+        if(!digits || mantissa >= 1L << 53 || exponent < -22){
+            return Double.parseDouble(partString(part)); //no digits, or not exact
+        }
+        double result = exponent == 0 ? mantissa : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -result : result;
+    }
+
+    @Override
+    public byte getType() {
+        return type;
+    }
+
+    @Override
+    public int getKey1() {
+        return key1;
+    }
+
+    @Override
+    public int getKey2() {
+        return key2;
+    }
+
+    @Override
+    public double getValue() {
+        return value;
+    }
+
+    @Override
+    public String getName(){
+        return new String(this.buffer, this.partStarts[0], this.partEnds[0] - this.partStarts[0],
+                StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,60 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A file of operations replayed by bplustree.main, decoded one operation at a time. OperationReader reads the text
+ * format and BinaryOperationReader the binary one
+ */
+public interface OperationSource extends Closeable {
+    //types of the decoded operations
+    byte INITIALIZE = 1;
+    byte INSERT = 2;
+    byte DELETE = 3;
+    byte SEARCH = 4;
+    byte RANGE_SEARCH = 5;
+    byte INVALID = 6;
+
+    /**
+     * Decodes the next operation of the file
+     * @return - false if the end of the file is reached
+     * @throws IOException - if the file cannot be read
+     */
+    boolean next() throws IOException;
+
+    /**
+     * Returns the type of the operation
+     * @return - one of INITIALIZE, INSERT, DELETE, SEARCH, RANGE_SEARCH and INVALID
+     */
+    byte getType();
+
+    /**
+     * Returns the first argument of the operation: the order of Initialize and the key of the others, or the lower
+     * bound of a range search
+     * @return - int value
+     */
+    int getKey1();
+
+    /**
+     * Returns the higher bound of a range search
+     * @return - int value
+     */
+    int getKey2();
+
+    /**
+     * Returns the value of an insert
+     * @return - double value
+     */
+    double getValue();
+
+    /**
+     * Returns the name of the operation, as written in the file
+     * @return - String value
+     */
+    String getName();
+
+    /**
+     * Returns the number of the current operation in the file
+     * @return - long value, starting at 1
+     */
+    long getLineNumber();
+}
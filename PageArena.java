@@ -0,0 +1,99 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Pages kept in off-heap memory. The pages are carved out of large direct buffers, the arenas, and addressed by page
+ * id: page i is at offset (i % pagesPerArena) * pageSize of arena i / pagesPerArena. Only the arenas and one small
+ * buffer object per page live on the heap, so the garbage collector has nothing to trace in the nodes of the tree
+ * however many pairs it holds, and pinning a page is an array lookup.
+ *
+ * The memory of the arenas counts against the limit on direct memory of the JVM, -XX:MaxDirectMemorySize, and is
+ * released when the arena is garbage collected. An arena is never shrunk, freed pages are reused by the tree.
+ */
+public class PageArena implements PageCache {
+    private static final int DEFAULT_ARENA_SIZE = 1 << 26; //64MB
+
+    private final int pageSize;
+    private final int pagesPerArena;
+    private ByteBuffer[] arenas;
+    private ByteBuffer[] pages; //a slice of an arena for every page that was allocated
+    private int numArenas;
+
+    /**
+     * @param pageSize - size of a page in bytes
+     */
+    public PageArena(int pageSize){
+        this(pageSize, DEFAULT_ARENA_SIZE);
+    }
+
+    /**
+     * @param pageSize - size of a page in bytes
+     * @param arenaSize - size of an arena in bytes, rounded down to a multiple of the page size
+     */
+    public PageArena(int pageSize, int arenaSize){
+        this.pageSize = pageSize;
+        this.pagesPerArena = Math.max(1, arenaSize / pageSize);
+        this.arenas = new ByteBuffer[4];
+        this.pages = new ByteBuffer[this.pagesPerArena];
+    }
+
+    /**
+     * Returns the buffer of a page, allocating arenas up to the page if needed. A page that was never written is
+     * zeroed, as direct buffers are
+     * @param pageId - id of the page
+     * @return - the buffer that holds the page
+     */
+    private ByteBuffer getPage(int pageId){
+        if(pageId < this.pages.length && this.pages[pageId] != null){
+            return this.pages[pageId];
+        }
+        int arena = pageId / this.pagesPerArena;
+        while(this.numArenas <= arena){
+            if(this.numArenas == this.arenas.length){
+                this.arenas = Arrays.copyOf(this.arenas, this.numArenas * 2);
+            }
+            this.arenas[this.numArenas++] = ByteBuffer.allocateDirect(this.pagesPerArena * this.pageSize);
+        }
+        if(pageId >= this.pages.length){
+            this.pages = Arrays.copyOf(this.pages, Math.max(pageId + 1, this.pages.length * 2));
+        }
+        ByteBuffer page = this.arenas[arena].slice((pageId % this.pagesPerArena) * this.pageSize, this.pageSize);
+        this.pages[pageId] = page;
+        return page;
+    }
+
+    @Override
+    public ByteBuffer pin(int pageId){
+        return getPage(pageId);
+    }
+
+    @Override
+    public ByteBuffer pinNew(int pageId){
+        ByteBuffer page = getPage(pageId);
+        int i = 0;
+        for(; i + 8 <= this.pageSize; i += 8){
+            page.putLong(i, 0);
+        }
+        for(; i < this.pageSize; i++){
+            page.put(i, (byte) 0);
+        }
+        return page;
+    }
+
+    @Override
+    public void unpin(int pageId, boolean isDirty){
+        //the pages never leave memory, so there is nothing to release or write back
+    }
+
+    @Override
+    public void flush(){
+    }
+
+    /**
+     * Returns the off-heap memory allocated by the arenas
+     * @return - number of bytes
+     */
+    public long getMemoryUsed(){
+        return (long) this.numArenas * this.pagesPerArena * this.pageSize;
+    }
+}
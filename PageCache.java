@@ -0,0 +1,34 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The pages of a PagedBPlusTree as seen by the tree: a page is pinned to read or modify it in place and unpinned when
+ * the tree is done with it. Implemented by BufferPool, which caches the pages of a file, and by PageArena, which keeps
+ * every page in off-heap memory.
+ */
+public interface PageCache {
+    /**
+     * Pins a page
+     * @param pageId - id of the page
+     * @return - the buffer that holds the page, valid until the page is unpinned
+     */
+    ByteBuffer pin(int pageId);
+
+    /**
+     * Pins a page that is about to be written from scratch. The page is zeroed and marked dirty
+     * @param pageId - id of the page
+     * @return - the buffer that holds the page, valid until the page is unpinned
+     */
+    ByteBuffer pinNew(int pageId);
+
+    /**
+     * Releases a pin on a page
+     * @param pageId - id of the page
+     * @param isDirty - true if the page was modified while it was pinned
+     */
+    void unpin(int pageId, boolean isDirty);
+
+    /**
+     * Writes every dirty page back to where the pages are stored
+     */
+    void flush();
+}
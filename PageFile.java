@@ -0,0 +1,93 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file made of fixed-size pages that are read and written whole by page id, page i starting at byte
+ * i * pageSize. Reads past the end of the file return zeroed pages.
+ */
+public class PageFile implements Closeable {
+    private final FileChannel channel;
+    private final int pageSize;
+
+    /**
+     * Opens a page file, creating it if it does not exist
+     * @param path - path of the file
+     * @param pageSize - size of a page in bytes
+     * @throws IOException - if the file cannot be opened
+     */
+    public PageFile(Path path, int pageSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * getter for pageSize variable
+     * @return - int value of pageSize
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Returns the number of pages in the file
+     * @return - int value
+     * @throws IOException - if the size of the file cannot be read
+     */
+    public int getNumPages() throws IOException {
+        return (int) (this.channel.size() / this.pageSize);
+    }
+
+    /**
+     * Reads a page into a buffer
+     * @param pageId - id of the page
+     * @param page - buffer of pageSize bytes that receives the page
+     * @throws IOException - if the page cannot be read
+     */
+    public void read(int pageId, ByteBuffer page) throws IOException {
+        page.clear();
+        long position = (long) pageId * this.pageSize;
+        while(page.hasRemaining()){
+            int n = this.channel.read(page, position + page.position());
+            if(n < 0){
+                //the page was never written
+                while(page.hasRemaining()){
+                    page.put((byte) 0);
+                }
+            }
+        }
+        page.clear();
+    }
+
+    /**
+     * Writes a page from a buffer
+     * @param pageId - id of the page
+     * @param page - buffer of pageSize bytes that holds the page
+     * @throws IOException - if the page cannot be written
+     */
+    public void write(int pageId, ByteBuffer page) throws IOException {
+        page.clear();
+        long position = (long) pageId * this.pageSize;
+        while(page.hasRemaining()){
+            this.channel.write(page, position + page.position());
+        }
+        page.clear();
+    }
+
+    /**
+     * Forces the pages written so far to the storage device
+     * @throws IOException - if the file cannot be synced
+     */
+    public void sync() throws IOException {
+        this.channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
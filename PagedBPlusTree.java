@@ -0,0 +1,548 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A B+ tree stored in a file of fixed-size pages, so that it can hold more pairs than fit in memory and survives a
+ * restart. Nodes refer to their children and siblings by page id and are read and modified in place in the pages of a
+ * bounded BufferPool, which keeps the hot pages cached and writes dirty pages back when they are evicted, flushed or
+ * the tree is closed. The fanouts follow from the page size, see NodePage.
+ *
+ * A tree can also be kept in memory without a file, with its pages in the off-heap arenas of a PageArena. Such a tree
+ * holds any number of pairs in a constant number of heap objects per page rather than per pair, so the heap and the
+ * pauses of the garbage collector stay small however large it grows, but it is lost when it is closed.
+ *
+ * Page 0 holds the metadata: a magic number, the page size, the root page id, the head of the list of free pages,
+ * the number of pages in use and whether the leaves are compressed. Pages freed by deletes are chained into the free
+ * list and reused by later splits.
+ *
+ * As in ConcurrentBPlusTree, a key is stored at most once and inserting an existing key replaces its value. A node is
+ * removed from the tree only once it is empty rather than merged with a sibling when it falls below half full, which
+ * saves the page writes of merges at the cost of some space after heavy deletes. The tree is not thread safe.
+ */
+public class PagedBPlusTree implements Closeable {
+    private static final int MAGIC = 0x42505431; //"BPT1"
+    private static final int META_PAGE = 0;
+
+    private final PageFile file; //null for an off-heap tree
+    private final PageCache pool;
+    private final NodePage layout;
+    private int rootPageId;
+    private int freeListHead;
+    private int numPages;
+
+    //The index pages visited by the last descent of a write operation, see bplustree
+    private int[] pathPages;
+    private int[] pathSlots;
+    private int pathDepth;
+
+    //Scratch arrays for splitting an overfull index node
+    private final int[] splitKeys;
+    private final int[] splitChildren;
+
+    /**
+     * Opens the tree stored in a file, or creates an empty tree if the file does not exist or is empty
+     * @param path - path of the file
+     * @param pageSize - size of a page in bytes, which has to match the page size of an existing file
+     * @param poolPages - number of pages cached by the buffer pool, at least 8
+     * @throws IOException - if the file cannot be opened or is not a tree with this page size
+     */
+    public PagedBPlusTree(Path path, int pageSize, int poolPages) throws IOException {
+        this(path, pageSize, poolPages, false);
+    }
+
+    /**
+     * Opens the tree stored in a file, or creates an empty tree if the file does not exist or is empty
+     * @param path - path of the file
+     * @param pageSize - size of a page in bytes, which has to match the page size of an existing file
+     * @param poolPages - number of pages cached by the buffer pool, at least 8
+     * @param compressedLeaves - true to delta encode the keys of the leaves, see NodePage. It has to match the leaves
+     *                         of an existing file
+     * @throws IOException - if the file cannot be opened or is not a tree with this page size and leaf format
+     */
+    public PagedBPlusTree(Path path, int pageSize, int poolPages, boolean compressedLeaves) throws IOException {
+        if(poolPages < 8){
+            throw new IllegalArgumentException("the buffer pool needs at least 8 pages, got " + poolPages);
+        }
+        this.layout = new NodePage(pageSize, compressedLeaves);
+        this.file = new PageFile(path, pageSize);
+        this.pool = new BufferPool(this.file, poolPages);
+        this.pathPages = new int[8];
+        this.pathSlots = new int[8];
+        this.splitKeys = new int[this.layout.getMaxDegree()];
+        this.splitChildren = new int[this.layout.getMaxDegree() + 1];
+
+        try {
+            if(this.file.getNumPages() == 0){
+                initEmptyTree();
+            }else{
+                readMeta();
+            }
+        } catch (IOException | RuntimeException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates an empty tree in off-heap memory
+     * @param pageSize - size of a page in bytes
+     */
+    public PagedBPlusTree(int pageSize){
+        this(pageSize, false);
+    }
+
+    /**
+     * Creates an empty tree in off-heap memory
+     * @param pageSize - size of a page in bytes
+     * @param compressedLeaves - true to delta encode the keys of the leaves, see NodePage
+     */
+    public PagedBPlusTree(int pageSize, boolean compressedLeaves){
+        this.layout = new NodePage(pageSize, compressedLeaves);
+        this.file = null;
+        this.pool = new PageArena(pageSize);
+        this.pathPages = new int[8];
+        this.pathSlots = new int[8];
+        this.splitKeys = new int[this.layout.getMaxDegree()];
+        this.splitChildren = new int[this.layout.getMaxDegree() + 1];
+        initEmptyTree();
+    }
+
+    /**
+     * Formats the pages of an empty tree, which is a single empty leaf in page 1
+     */
+    private void initEmptyTree(){
+        this.numPages = 2;
+        this.rootPageId = 1;
+        this.freeListHead = NodePage.NONE;
+        this.layout.initLeaf(this.pool.pinNew(this.rootPageId));
+        this.pool.unpin(this.rootPageId, true);
+        writeMeta();
+    }
+
+    /**
+     * Reads the metadata page of an existing file
+     * @throws IOException - if the file is not a tree with the page size and leaf format of this tree
+     */
+    private void readMeta() throws IOException {
+        ByteBuffer meta = this.pool.pin(META_PAGE);
+        try {
+            if(meta.getInt(0) != MAGIC){
+                throw new IOException("not a B+ tree page file");
+            }
+            if(meta.getInt(4) != this.layout.getPageSize()){
+                throw new IOException("the file has a page size of " + meta.getInt(4) + " bytes, not "
+                        + this.layout.getPageSize());
+            }
+            if((meta.getInt(20) != 0) != this.layout.isCompressed()){
+                throw new IOException("the file has " + (meta.getInt(20) != 0 ? "compressed" : "uncompressed")
+                        + " leaves");
+            }
+            this.rootPageId = meta.getInt(8);
+            this.freeListHead = meta.getInt(12);
+            this.numPages = meta.getInt(16);
+        } finally {
+            this.pool.unpin(META_PAGE, false);
+        }
+    }
+
+    /**
+     * Writes the metadata to page 0 in the buffer pool
+     */
+    private void writeMeta(){
+        ByteBuffer meta = this.pool.pin(META_PAGE);
+        meta.putInt(0, MAGIC);
+        meta.putInt(4, this.layout.getPageSize());
+        meta.putInt(8, this.rootPageId);
+        meta.putInt(12, this.freeListHead);
+        meta.putInt(16, this.numPages);
+        meta.putInt(20, this.layout.isCompressed() ? 1 : 0);
+        this.pool.unpin(META_PAGE, true);
+    }
+
+    /**
+     * Returns a page for a new node, reusing a freed page if there is one
+     * @return - page id
+     */
+    private int allocatePage(){
+        if(this.freeListHead == NodePage.NONE){
+            return this.numPages++;
+        }
+        int pageId = this.freeListHead;
+        ByteBuffer page = this.pool.pin(pageId);
+        this.freeListHead = page.getInt(4);
+        this.pool.unpin(pageId, false);
+        return pageId;
+    }
+
+    /**
+     * Adds a page that is no longer used to the free list
+     * @param pageId - page id
+     */
+    private void freePage(int pageId){
+        ByteBuffer page = this.pool.pinNew(pageId);
+        page.put(0, NodePage.FREE);
+        page.putInt(4, this.freeListHead);
+        this.pool.unpin(pageId, true);
+        this.freeListHead = pageId;
+    }
+
+    /**
+     * Returns the maximum number of pairs a leaf page can hold
+     * @return - int value
+     */
+    public int getLeafCapacity(){
+        return this.layout.getLeafCapacity();
+    }
+
+    /**
+     * Returns the number of children an index page can hold
+     * @return - int value
+     */
+    public int getMaxDegree(){
+        return this.layout.getMaxDegree();
+    }
+
+    /**
+     * getter for the buffer pool, e.g to read its hit and miss counts
+     * @return - BufferPool reference, null for an off-heap tree
+     */
+    public BufferPool getBufferPool(){
+        return this.file != null ? (BufferPool) this.pool : null;
+    }
+
+    /**
+     * getter for the pages of an off-heap tree, e.g to read the memory they use
+     * @return - PageArena reference, null for a tree stored in a file
+     */
+    public PageArena getPageArena(){
+        return this.file == null ? (PageArena) this.pool : null;
+    }
+
+    /**
+     * Returns the page id of the leaf for a key without recording the path
+     * @param key - key to be searched
+     * @return - page id of the leaf
+     */
+    private int getLeafPage(int key){
+        int pageId = this.rootPageId;
+        while(true){
+            ByteBuffer page = this.pool.pin(pageId);
+            if(this.layout.isLeaf(page)){
+                this.pool.unpin(pageId, false);
+                return pageId;
+            }
+            int child = this.layout.getChild(page, this.layout.getChildIdxForAKey(page, key));
+            this.pool.unpin(pageId, false);
+            pageId = child;
+        }
+    }
+
+    /**
+     * Returns the page id of the leaf for a key and records the path to it in pathPages and pathSlots
+     * @param key - key to be searched
+     * @return - page id of the leaf
+     */
+    private int getLeafPageAndPath(int key){
+        int pageId = this.rootPageId;
+        this.pathDepth = 0;
+        while(true){
+            ByteBuffer page = this.pool.pin(pageId);
+            if(this.layout.isLeaf(page)){
+                this.pool.unpin(pageId, false);
+                return pageId;
+            }
+            int idx = this.layout.getChildIdxForAKey(page, key);
+            int child = this.layout.getChild(page, idx);
+            this.pool.unpin(pageId, false);
+            if(this.pathDepth == this.pathPages.length){
+                this.pathPages = Arrays.copyOf(this.pathPages, this.pathDepth * 2);
+                this.pathSlots = Arrays.copyOf(this.pathSlots, this.pathDepth * 2);
+            }
+            this.pathPages[this.pathDepth] = pageId;
+            this.pathSlots[this.pathDepth] = idx;
+            this.pathDepth++;
+            pageId = child;
+        }
+    }
+
+    /**
+     * Search for a given key in the B+ tree
+     * @param key - the key to be searched
+     * @return - Double value associated with the key. If the key is not found, then the value is null
+     */
+    public Double search(int key){
+        int pageId = getLeafPage(key);
+        ByteBuffer page = this.pool.pin(pageId);
+        int idx = this.layout.leafSearch(page, key);
+        Double value = idx < 0 ? null : this.layout.getValue(page, idx);
+        this.pool.unpin(pageId, false);
+        return value;
+    }
+
+    /**
+     * Search for a range of values in the B+ tree. Only one leaf page is pinned at a time
+     * @param key1 - the lower bound of the search
+     * @param key2 -  the higher bound of the search
+     * @return - List<Double> contains values of all the keys that fall in the range
+     */
+    public List<Double> search(int key1, int key2){
+        List<Double> result = new ArrayList<>();
+        int pageId = getLeafPage(key1);
+        while(pageId != NodePage.NONE){
+            ByteBuffer page = this.pool.pin(pageId);
+            int count = this.layout.getCount(page);
+            int from = this.layout.leafSearch(page, key1);
+            from = from < 0 ? -from - 1 : from;
+            //the end of the range in the leaf is found by one more binary search rather than by decoding every key
+            int to = this.layout.leafSearch(page, key2);
+            to = to < 0 ? -to - 1 : to + 1;
+            for(int i = from; i < to; i++){
+                result.add(this.layout.getValue(page, i));
+            }
+            if(to < count){
+                this.pool.unpin(pageId, false);
+                return result;
+            }
+            int next = this.layout.getNext(page);
+            this.pool.unpin(pageId, false);
+            pageId = next;
+        }
+        return result;
+    }
+
+    /**
+     * Inserts a key value pair into the B+ tree, replacing the value if the key is already present. A full leaf is
+     * split in two and the separator key is added to its parent, splitting the index nodes up the path as needed
+     * @param key - key of the dictionary pair to be inserted
+     * @param value - value of the dictionary pair to be inserted
+     */
+    public void insert(int key, double value){
+        int pageId = getLeafPageAndPath(key);
+        ByteBuffer page = this.pool.pin(pageId);
+        int idx = this.layout.leafSearch(page, key);
+        if(idx >= 0){
+            this.layout.setValue(page, idx, value);
+            this.pool.unpin(pageId, true);
+            return;
+        }
+        idx = -idx - 1;
+        int count = this.layout.getCount(page);
+        if(this.layout.leafHasRoom(page, key)){
+            this.layout.leafInsert(page, idx, key, value);
+            this.pool.unpin(pageId, true);
+            return;
+        }
+
+        //the leaf is full, its upper half moves to a new leaf and the pair goes into the half it belongs to
+        int newPageId = allocatePage();
+        ByteBuffer newPage = this.pool.pinNew(newPageId);
+        this.layout.initLeaf(newPage);
+        int splitIdx = count / 2;
+        this.layout.leafSplit(page, splitIdx, newPage);
+        if(idx < splitIdx){
+            this.layout.leafInsert(page, idx, key, value);
+        }else{
+            this.layout.leafInsert(newPage, idx - splitIdx, key, value);
+        }
+
+        //link the new leaf between the leaf and its next leaf
+        int next = this.layout.getNext(page);
+        this.layout.setNext(newPage, next);
+        this.layout.setPrev(newPage, pageId);
+        this.layout.setNext(page, newPageId);
+        if(next != NodePage.NONE){
+            ByteBuffer nextPage = this.pool.pin(next);
+            this.layout.setPrev(nextPage, newPageId);
+            this.pool.unpin(next, true);
+        }
+        int newKey = this.layout.getKey(newPage, 0);
+        this.pool.unpin(newPageId, true);
+        this.pool.unpin(pageId, true);
+
+        insertIntoParent(this.pathDepth - 1, pageId, newKey, newPageId);
+    }
+
+    /**
+     * Adds the separator key and the new right node created by a split to the parent of the node that was split,
+     * splitting the parent if it is full. If the node that was split is the root, a new root is created
+     * @param level - level of the parent in the recorded path, -1 if the node that was split is the root
+     * @param pageId - page id of the node that was split
+     * @param newKey - the separator key between the node and the new node
+     * @param newPageId - page id of the new right sibling of the node
+     */
+    private void insertIntoParent(int level, int pageId, int newKey, int newPageId){
+        if(level < 0){
+            int rootPageId = allocatePage();
+            ByteBuffer root = this.pool.pinNew(rootPageId);
+            this.layout.initIndex(root);
+            this.layout.setChild(root, 0, pageId);
+            this.layout.setIndexKey(root, 0, newKey);
+            this.layout.setChild(root, 1, newPageId);
+            this.layout.setCount(root, 2);
+            this.pool.unpin(rootPageId, true);
+            this.rootPageId = rootPageId;
+            return;
+        }
+
+        int parentId = this.pathPages[level];
+        int slot = this.pathSlots[level];
+        ByteBuffer parent = this.pool.pin(parentId);
+        int degree = this.layout.getCount(parent);
+        if(degree < this.layout.getMaxDegree()){
+            this.layout.indexInsert(parent, slot, newKey, newPageId);
+            this.pool.unpin(parentId, true);
+            return;
+        }
+
+        //the parent is full. Its keys and children are gathered with the new ones and split between the parent and
+        //a new index node, and the key between the halves moves up
+        int[] keys = this.splitKeys;
+        int[] children = this.splitChildren;
+        for(int i = 0, k = 0; i < degree - 1; i++, k++){
+            if(i == slot){
+                keys[k++] = newKey;
+            }
+            keys[k] = this.layout.getIndexKey(parent, i);
+        }
+        if(slot == degree - 1){
+            keys[degree - 1] = newKey;
+        }
+        for(int i = 0, k = 0; i < degree; i++, k++){
+            children[k] = this.layout.getChild(parent, i);
+            if(i == slot){
+                children[++k] = newPageId;
+            }
+        }
+
+        int total = degree + 1;
+        int leftDegree = total - total / 2;
+        int siblingId = allocatePage();
+        ByteBuffer sibling = this.pool.pinNew(siblingId);
+        this.layout.initIndex(sibling);
+        for(int i = 0; i < leftDegree; i++){
+            this.layout.setChild(parent, i, children[i]);
+        }
+        for(int i = 0; i < leftDegree - 1; i++){
+            this.layout.setIndexKey(parent, i, keys[i]);
+        }
+        this.layout.setCount(parent, leftDegree);
+        for(int i = leftDegree; i < total; i++){
+            this.layout.setChild(sibling, i - leftDegree, children[i]);
+        }
+        for(int i = leftDegree; i < total - 1; i++){
+            this.layout.setIndexKey(sibling, i - leftDegree, keys[i]);
+        }
+        this.layout.setCount(sibling, total - leftDegree);
+        this.pool.unpin(siblingId, true);
+        this.pool.unpin(parentId, true);
+
+        insertIntoParent(level - 1, parentId, keys[leftDegree - 1], siblingId);
+    }
+
+    /**
+     * Deletes the pair with the target key. A leaf that becomes empty is unlinked from its siblings and removed from
+     * its parent, and its page is freed
+     * @param key - target key
+     */
+    public void delete(int key){
+        int pageId = getLeafPageAndPath(key);
+        ByteBuffer page = this.pool.pin(pageId);
+        int idx = this.layout.leafSearch(page, key);
+        if(idx < 0){
+            this.pool.unpin(pageId, false);
+            return;
+        }
+        this.layout.leafDelete(page, idx);
+        if(this.layout.getCount(page) > 0 || this.pathDepth == 0){
+            this.pool.unpin(pageId, true);
+            return;
+        }
+
+        //unlink the empty leaf from the sibling chain
+        int prev = this.layout.getPrev(page);
+        int next = this.layout.getNext(page);
+        this.pool.unpin(pageId, true);
+        if(prev != NodePage.NONE){
+            ByteBuffer prevPage = this.pool.pin(prev);
+            this.layout.setNext(prevPage, next);
+            this.pool.unpin(prev, true);
+        }
+        if(next != NodePage.NONE){
+            ByteBuffer nextPage = this.pool.pin(next);
+            this.layout.setPrev(nextPage, prev);
+            this.pool.unpin(next, true);
+        }
+        freePage(pageId);
+        removeFromParent(this.pathDepth - 1);
+    }
+
+    /**
+     * Removes the child on the recorded path from the index node at a level. An index node left without children is
+     * freed and removed from its own parent, and a root left with a single child is replaced by that child
+     * @param level - level of the index node in the recorded path
+     */
+    private void removeFromParent(int level){
+        int parentId = this.pathPages[level];
+        ByteBuffer parent = this.pool.pin(parentId);
+        this.layout.indexDelete(parent, this.pathSlots[level]);
+        int degree = this.layout.getCount(parent);
+        int onlyChild = this.layout.getChild(parent, 0);
+        this.pool.unpin(parentId, true);
+
+        if(level == 0){
+            //a root with a single child does not route anything and is replaced by the child, which can itself be
+            //an index node with a single child
+            while(degree == 1){
+                freePage(parentId);
+                this.rootPageId = onlyChild;
+                ByteBuffer root = this.pool.pin(onlyChild);
+                boolean isLeaf = this.layout.isLeaf(root);
+                degree = this.layout.getCount(root);
+                parentId = onlyChild;
+                onlyChild = isLeaf ? NodePage.NONE : this.layout.getChild(root, 0);
+                this.pool.unpin(parentId, false);
+                if(isLeaf){
+                    break;
+                }
+            }
+        }else if(degree == 0){
+            freePage(parentId);
+            removeFromParent(level - 1);
+        }
+    }
+
+    /**
+     * Writes the dirty pages and the metadata to the file and forces them to the storage device. Does nothing for an
+     * off-heap tree
+     * @throws IOException - if the file cannot be written
+     */
+    public void flush() throws IOException {
+        if(this.file == null){
+            return;
+        }
+        writeMeta();
+        this.pool.flush();
+        this.file.sync();
+    }
+
+    /**
+     * Flushes the tree and closes the file
+     * @throws IOException - if the file cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        if(this.file == null){
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            this.file.close();
+        }
+    }
+}
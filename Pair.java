@@ -1,12 +0,0 @@
-/**
- * A smallest unit of dictionary, i.e a key and value pair
- */
-public class Pair {
-    int key;
-    double value;
-
-    public Pair(int key, double value){
-        this.key = key;
-        this.value = value;
-    }
-}
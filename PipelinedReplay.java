@@ -0,0 +1,273 @@
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Replays an operation file the way bplustree.replay does, with the parsing, the tree and the formatting of the
+ * results on three threads. A parser thread decodes the lines into batches of BATCH_SIZE operations, the calling thread
+ * runs the operations of each batch on the tree in order and stores the results of the searches in the batch, and a
+ * writer thread formats the results to the result file. The batches are recycled through a free queue, so at most
+ * NUM_BATCHES batches are in flight, which bounds the memory used and makes a stage that runs ahead wait for the slower
+ * one; the tree thread only waits when the parser has not decoded the next batch yet or the writer is NUM_BATCHES
+ * batches behind, never on the I/O itself.
+ *
+ * The result file and the messages printed for invalid operations are the same as those of the sequential replay,
+ * also when an operation fails: the lines before it are run and their results written, and the exception is thrown
+ * once the writer is done.
+ */
+public class PipelinedReplay {
+    static final int BATCH_SIZE = 4096;
+    static final int NUM_BATCHES = 8;
+
+    /**
+     * A batch of decoded operations, followed by the results of its searches once the tree has run them
+     */
+    static class Batch {
+        final byte[] types = new byte[BATCH_SIZE];
+        final int[] keys1 = new int[BATCH_SIZE];
+        final int[] keys2 = new int[BATCH_SIZE];
+        final double[] values = new double[BATCH_SIZE];
+        final String[] names = new String[BATCH_SIZE]; //names of the invalid operations
+        int count;
+
+        //the results of operation i are results[resultEnds[i - 1]] to results[resultEnds[i] - 1], none for Null
+        final int[] resultEnds = new int[BATCH_SIZE];
+        double[] results = new double[BATCH_SIZE];
+
+        //set on the last batch of the file, with the exception that ended the replay, if any
+        boolean last;
+        Throwable error;
+
+        void clear(){
+            this.count = 0;
+            this.last = false;
+            this.error = null;
+        }
+    }
+
+    private final OperationSource reader;
+    private final ResultWriter writer;
+    private final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(NUM_BATCHES);
+    private final BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(NUM_BATCHES);
+    private final BlockingQueue<Batch> applied = new ArrayBlockingQueue<>(NUM_BATCHES);
+    private Throwable writeError;
+
+    /**
+     * Creates a replay of an operation file
+     * @param reader - the operation file
+     * @param writer - the result file
+     */
+    public PipelinedReplay(OperationSource reader, ResultWriter writer){
+        this.reader = reader;
+        this.writer = writer;
+        for(int i = 0; i < NUM_BATCHES; i++){
+            this.free.add(new Batch());
+        }
+    }
+
+    /**
+     * Runs every operation of the file and writes the results. The reader and the writer are not used after this
+     * returns and are left open
+     * @return - number of lines replayed
+     * @throws IOException - if a file cannot be read or written
+     */
+    public long replay() throws IOException {
+        Thread parser = new Thread(this::parse, "replay-parser");
+        Thread formatter = new Thread(this::write, "replay-writer");
+        parser.setDaemon(true);
+        formatter.setDaemon(true);
+        parser.start();
+        formatter.start();
+
+        Throwable error = null;
+        try {
+            error = apply();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            formatter.interrupt(); //no last batch will reach the writer
+            error = e;
+        } finally {
+            if(error != null){
+                parser.interrupt(); //the parser may be waiting for a free batch that will not come back
+            }
+            join(parser);
+            join(formatter);
+        }
+        if(error == null){
+            error = this.writeError;
+        }
+        if(error instanceof IOException){
+            throw (IOException) error;
+        }else if(error instanceof RuntimeException){
+            throw (RuntimeException) error;
+        }else if(error instanceof Error){
+            throw (Error) error;
+        }else if(error != null){
+            throw new IOException("replay interrupted", error);
+        }
+        return this.reader.getLineNumber();
+    }
+
+    private static void join(Thread thread){
+        boolean interrupted = false;
+        while(thread.isAlive()){
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parser stage: decodes the file into batches until its end or the first line that cannot be decoded
+     */
+    private void parse(){
+        try {
+            while(true){
+                Batch batch = this.free.take();
+                batch.clear();
+                try {
+                    while(batch.count < BATCH_SIZE && this.reader.next()){
+                        int i = batch.count++;
+                        byte type = this.reader.getType();
+                        batch.types[i] = type;
+                        batch.keys1[i] = this.reader.getKey1();
+                        batch.keys2[i] = this.reader.getKey2();
+                        batch.values[i] = this.reader.getValue();
+                        batch.names[i] = type == OperationSource.INVALID ? this.reader.getName() : null;
+                    }
+                    batch.last = batch.count < BATCH_SIZE;
+                } catch (IOException | RuntimeException e) {
+                    batch.error = e;
+                    batch.last = true;
+                }
+                //the batch belongs to the next stages once it is queued
+                boolean last = batch.last;
+                this.parsed.put(batch);
+                if(last){
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            //the tree stage failed and the replay is abandoned
+        }
+    }
+
+    /**
+     * Tree stage: runs the operations of the batches in order and passes each batch on to the writer
+     * @return - the exception that ended the replay, or null
+     * @throws InterruptedException - if the thread is interrupted while waiting for a batch
+     */
+    private Throwable apply() throws InterruptedException {
+        bplustree tree = null;
+        while(true){
+            Batch batch = this.parsed.take();
+            int numResults = 0;
+            int i = 0;
+            try {
+                for(; i < batch.count; i++){
+                    switch(batch.types[i]){
+                        case OperationSource.INITIALIZE:
+                            tree = new bplustree(batch.keys1[i]);
+                            break;
+                        case OperationSource.INSERT:
+                            tree.insert(batch.keys1[i], batch.values[i]);
+                            break;
+                        case OperationSource.SEARCH:
+                            Double value = tree.search(batch.keys1[i]);
+                            if(value != null){
+                                ensureResults(batch, numResults + 1);
+                                batch.results[numResults++] = value;
+                            }
+                            break;
+                        case OperationSource.RANGE_SEARCH:
+                            RangeCursor cursor = tree.cursor(batch.keys1[i], batch.keys2[i]);
+                            while(cursor.next()){
+                                ensureResults(batch, numResults + 1);
+                                batch.results[numResults++] = cursor.getValue();
+                            }
+                            break;
+                        case OperationSource.DELETE:
+                            tree.delete(batch.keys1[i]);
+                            break;
+                        default:
+                            break; //printed by the writer, in order with the results
+                    }
+                    batch.resultEnds[i] = numResults;
+                }
+            } catch (RuntimeException | Error e) {
+                batch.count = i; //the operations before the failed one are written
+                batch.error = e;
+                batch.last = true;
+            }
+            //the batch may be recycled by the parser as soon as it is queued
+            boolean last = batch.last;
+            Throwable error = batch.error;
+            this.applied.put(batch);
+            if(last){
+                return error;
+            }
+        }
+    }
+
+    private static void ensureResults(Batch batch, int size){
+        if(size > batch.results.length){
+            double[] grown = new double[Math.max(size, 2 * batch.results.length)];
+            System.arraycopy(batch.results, 0, grown, 0, batch.results.length);
+            batch.results = grown;
+        }
+    }
+
+    /**
+     * Writer stage: formats the results of the batches and returns each batch to the parser. After a write fails the
+     * batches are still taken so that the other stages can finish
+     */
+    private void write(){
+        try {
+            while(true){
+                Batch batch = this.applied.take();
+                if(this.writeError == null){
+                    try {
+                        format(batch);
+                    } catch (IOException | RuntimeException e) {
+                        this.writeError = e;
+                    }
+                }
+                boolean last = batch.last;
+                this.free.put(batch);
+                if(last){
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            this.writeError = e;
+        }
+    }
+
+    private void format(Batch batch) throws IOException {
+        int start = 0;
+        for(int i = 0; i < batch.count; i++){
+            byte type = batch.types[i];
+            if(type == OperationSource.SEARCH || type == OperationSource.RANGE_SEARCH){
+                int end = batch.resultEnds[i];
+                if(start == end){
+                    this.writer.writeNull();
+                }else{
+                    this.writer.writeValue(batch.results[start]);
+                    for(int j = start + 1; j < end; j++){
+                        this.writer.writeChar(',');
+                        this.writer.writeValue(batch.results[j]);
+                    }
+                }
+                this.writer.newLine();
+                start = end;
+            }else if(type == OperationSource.INVALID){
+                System.out.println("Invalid operation "+ batch.names[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join task that aggregates the values of the pairs whose keys fall in a range without materializing them. The
+ * range is split at the separator keys of the index nodes: every child subtree that overlaps the range becomes a
+ * subtask, down to the index nodes just above the leaves, whose run of leaf nodes is aggregated sequentially. The
+ * results of the subtasks are combined in key order, so the aggregation only has to be associative.
+ *
+ * The tree must not be modified while the task runs.
+ * @param <R> - type of the partial results
+ */
+class RangeAggregateTask<R> extends RecursiveTask<R> {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Defines an aggregation over the values of a range
+     * @param <R> - type of the partial results
+     */
+    interface Aggregator<R> {
+        /**
+         * @return - a new result that holds no values
+         */
+        R newResult();
+
+        /**
+         * Adds a slice of the values of a leaf node to a result
+         * @param result - the result
+         * @param values - values array of the leaf node
+         * @param from - index of the first value, inclusive
+         * @param to - index of the last value, exclusive
+         * @return - the result with the values added
+         */
+        R accumulate(R result, double[] values, int from, int to);
+
+        /**
+         * Combines two results, the first of which holds the values of smaller keys
+         * @param left - result for the smaller keys
+         * @param right - result for the larger keys
+         * @return - the combined result
+         */
+        R combine(R left, R right);
+    }
+
+    private final Node node;
+    private final int key1;
+    private final int key2;
+    private final Aggregator<R> aggregator;
+
+    /**
+     * @param node - root of the subtree to aggregate, may be null for an empty tree
+     * @param key1 - the lower bound of the range
+     * @param key2 - the higher bound of the range
+     * @param aggregator - the aggregation
+     */
+    RangeAggregateTask(Node node, int key1, int key2, Aggregator<R> aggregator){
+        this.node = node;
+        this.key1 = key1;
+        this.key2 = key2;
+        this.aggregator = aggregator;
+    }
+
+    @Override
+    protected R compute(){
+        Node node = this.node;
+        if(node == null || this.key1 > this.key2){
+            return this.aggregator.newResult();
+        }
+        while(!node.isLeaf){
+            IndexNode indexNode = (IndexNode) node;
+            Node[] children = indexNode.getChildren();
+            int first = indexNode.getFirstChildIdxForAKey(this.key1);
+            int last = indexNode.getChildSubtreeIdxForAKey(this.key2);
+            if(children[first].isLeaf){
+                //a run of leaf nodes is too little work to be split further
+                R result = this.aggregator.newResult();
+                for(int i = first; i <= last; i++){
+                    result = accumulate(result, (LeafNode) children[i]);
+                }
+                return result;
+            }
+            if(first < last){
+                return forkChildren(children, first, last);
+            }
+            node = children[first];
+        }
+        return accumulate(this.aggregator.newResult(), (LeafNode) node);
+    }
+
+    /**
+     * Aggregates the children of an index node from first to last in parallel. The last child is aggregated by this
+     * task while the others run as subtasks
+     * @param children - the children of the index node
+     * @param first - index of the first child that overlaps the range
+     * @param last - index of the last child that overlaps the range
+     * @return - the combined result of the children
+     */
+    private R forkChildren(Node[] children, int first, int last){
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        RangeAggregateTask<R>[] subtasks = new RangeAggregateTask[last - first];
+        for(int i = first; i < last; i++){
+            subtasks[i - first] = new RangeAggregateTask<>(children[i], this.key1, this.key2, this.aggregator);
+            subtasks[i - first].fork();
+        }
+        R lastResult = new RangeAggregateTask<>(children[last], this.key1, this.key2, this.aggregator).compute();
+
+        //join in order so that the results are combined in key order
+        R result = subtasks[0].join();
+        for(int i = 1; i < subtasks.length; i++){
+            result = this.aggregator.combine(result, subtasks[i].join());
+        }
+        return this.aggregator.combine(result, lastResult);
+    }
+
+    /**
+     * Adds the values of a leaf node whose keys are in the range to a result
+     * @param result - the result
+     * @param leafNode - the leaf node
+     * @return - the result with the values added
+     */
+    private R accumulate(R result, LeafNode leafNode){
+        int from = leafNode.lowerBound(this.key1);
+        int to = leafNode.upperBound(this.key2);
+        return from < to ? this.aggregator.accumulate(result, leafNode.getValues(), from, to) : result;
+    }
+}
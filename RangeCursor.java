@@ -0,0 +1,113 @@
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+
+/**
+ * A cursor over the pairs of a B+ tree whose keys fall in a range. The pairs are read lazily from the leaf nodes along
+ * the sibling chain, in key order, and nothing is allocated per pair, so a range of any size can be consumed in
+ * constant memory and the caller can stop at any point. The cursor is also a Spliterator over the values, which is
+ * what bplustree.stream is built on.
+ *
+ * The cursor reads the live leaf nodes, so it must not be used after the tree is modified.
+ */
+public class RangeCursor implements Spliterator.OfDouble {
+    private LeafNode leafNode; //null once the cursor is exhausted
+    private int idx; //index of the next pair in leafNode
+    private final int key2;
+    private int key;
+    private double value;
+
+    /**
+     * @param leafNode - the leaf node that holds the first pair, or null for an empty range
+     * @param idx - index of the first pair in the leaf node
+     * @param key2 - the higher bound of the range
+     */
+    RangeCursor(LeafNode leafNode, int idx, int key2){
+        this.leafNode = leafNode;
+        this.idx = idx;
+        this.key2 = key2;
+    }
+
+    /**
+     * Moves the cursor to the next pair in the range
+     * @return - true if the cursor is on a pair, false if there are no more pairs in the range
+     */
+    public boolean next(){
+        while(this.leafNode != null){
+            if(this.idx < this.leafNode.getCurNumPairs()){
+                int key = this.leafNode.getKey(this.idx);
+                if(key > this.key2){
+                    this.leafNode = null;
+                    return false;
+                }
+                this.key = key;
+                this.value = this.leafNode.getValue(this.idx);
+                this.idx++;
+                return true;
+            }
+            this.leafNode = this.leafNode.getRightSibling();
+            this.idx = 0;
+        }
+        return false;
+    }
+
+    /**
+     * getter for the key of the pair the cursor is on
+     * @return - int value of the key
+     */
+    public int getKey() {
+        return key;
+    }
+
+    /**
+     * getter for the value of the pair the cursor is on
+     * @return - double value
+     */
+    public double getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean tryAdvance(DoubleConsumer action){
+        if(!next()){
+            return false;
+        }
+        action.accept(this.value);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(DoubleConsumer action){
+        //walks the arrays of each leaf node directly instead of going through next for every pair
+        LeafNode leafNode = this.leafNode;
+        int idx = this.idx;
+        this.leafNode = null;
+        while(leafNode != null){
+            int[] keys = leafNode.getKeys();
+            double[] values = leafNode.getValues();
+            int numPairs = leafNode.getCurNumPairs();
+            for(; idx < numPairs; idx++){
+                if(keys[idx] > this.key2){
+                    return;
+                }
+                action.accept(values[idx]);
+            }
+            leafNode = leafNode.getRightSibling();
+            idx = 0;
+        }
+    }
+
+    @Override
+    public Spliterator.OfDouble trySplit(){
+        return null;
+    }
+
+    @Override
+    public long estimateSize(){
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics(){
+        return Spliterator.ORDERED | Spliterator.NONNULL;
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the results of the searches of bplustree.main to a file. The results are encoded straight into one reusable
+ * byte buffer that is written to a FileChannel when it is full, so no String, StringBuffer or list is built per line
+ * other than the text of each value, which comes from Double.toString so that the output is unchanged.
+ */
+public class ResultWriter implements Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+    private final FileChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer wrapped;
+    private int position;
+
+    /**
+     * Creates a result file, replacing it if it exists
+     * @param path - path of the file
+     * @throws IOException - if the file cannot be created
+     */
+    public ResultWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+        this.wrapped = ByteBuffer.wrap(this.buffer);
+    }
+
+    /**
+     * Makes room for a number of bytes in the buffer, writing the buffer to the file if they do not fit
+     * @param size - number of bytes, at most the size of the buffer
+     * @throws IOException - if the file cannot be written
+     */
+    private void ensure(int size) throws IOException {
+        if(this.buffer.length - this.position < size){
+            flush();
+        }
+    }
+
+    /**
+     * Writes the text of a value, as Double.toString writes it
+     * @param value - the value
+     * @throws IOException - if the file cannot be written
+     */
+    public void writeValue(double value) throws IOException {
+        String text = Double.toString(value);
+        ensure(text.length());
+        for(int i = 0; i < text.length(); i++){
+            this.buffer[this.position++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Writes one ASCII character
+     * @param c - the character
+     * @throws IOException - if the file cannot be written
+     */
+    public void writeChar(char c) throws IOException {
+        ensure(1);
+        this.buffer[this.position++] = (byte) c;
+    }
+
+    /**
+     * Writes the text that stands for a search that found nothing
+     * @throws IOException - if the file cannot be written
+     */
+    public void writeNull() throws IOException {
+        ensure(bplustree.NULL.length());
+        for(int i = 0; i < bplustree.NULL.length(); i++){
+            this.buffer[this.position++] = (byte) bplustree.NULL.charAt(i);
+        }
+    }
+
+    /**
+     * Ends the current line with the line separator of the platform
+     * @throws IOException - if the file cannot be written
+     */
+    public void newLine() throws IOException {
+        ensure(LINE_SEPARATOR.length);
+        System.arraycopy(LINE_SEPARATOR, 0, this.buffer, this.position, LINE_SEPARATOR.length);
+        this.position += LINE_SEPARATOR.length;
+    }
+
+    /**
+     * Writes the buffered bytes to the file
+     * @throws IOException - if the file cannot be written
+     */
+    public void flush() throws IOException {
+        this.wrapped.clear().limit(this.position);
+        while(this.wrapped.hasRemaining()){
+            this.channel.write(this.wrapped);
+        }
+        this.position = 0;
+    }
+
+    /**
+     * Writes the buffered bytes and closes the file
+     * @throws IOException - if the file cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+}
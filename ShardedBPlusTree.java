@@ -0,0 +1,355 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A B+ tree for many threads made of independent bplustree shards, each owning a contiguous range of keys and guarded
+ * by its own read-write lock. An operation on a key locks only the shard that owns it, so writers to different shards
+ * run in parallel and no lock is shared by every operation. Initially the shards split the int range into equal
+ * parts.
+ *
+ * As the data skews, a shard that grows to more than SKEW_FACTOR times the average shard size moves part of its pairs
+ * to its smaller neighbour: the boundary between the two is moved so that they hold about the same number of pairs,
+ * and both are rebuilt with BulkLoader. A shard's range never changes in place: a rebalance replaces the two shards by
+ * new ones and retires the old ones, so a thread that was waiting for the lock of a retired shard routes its key again.
+ * A shard is checked for skew each time its size crosses a multiple of CHECK_INTERVAL, so the check costs nothing on
+ * most inserts.
+ *
+ * A range search reads the shards that overlap the range in key order, each under its read lock, which merges the
+ * per-shard results in order since the ranges of the shards are disjoint. Each shard is read consistently, but a
+ * write to a shard that has not been read yet may or may not be seen. As with bplustree, a key may be stored more than
+ * once.
+ */
+public class ShardedBPlusTree {
+    static final int CHECK_INTERVAL = 1024;
+    static final int SKEW_FACTOR = 2;
+    //a shard smaller than this is never rebalanced, moving a few pairs is not worth rebuilding two trees
+    static final int MIN_REBALANCE_SIZE = 4 * CHECK_INTERVAL;
+    private static final double FILL_FACTOR = 0.75;
+
+    /**
+     * A bplustree that owns the keys from low to high, both included
+     */
+    private static class Shard {
+        final int low;
+        final int high;
+        final bplustree tree;
+        final ReentrantReadWriteLock lock;
+        //written under the write lock, read without it by the skew check
+        volatile long size;
+        //set under the write lock once the shard has been replaced by a rebalance
+        boolean retired;
+
+        Shard(int low, int high, bplustree tree, long size){
+            this.low = low;
+            this.high = high;
+            this.tree = tree;
+            this.lock = new ReentrantReadWriteLock();
+            this.size = size;
+        }
+    }
+
+    private final int indexOrder;
+    private final int leafOrder;
+    //the shards in key order, covering every int. Replaced as a whole by a rebalance
+    private volatile Shard[] shards;
+    private final LongAdder size;
+    private final Object rebalanceLock; //serializes the rebalances
+    private final LongAdder numRebalances;
+
+    /**
+     * @param numShards - number of shards, which split the int range into equal parts
+     * @param m - order of the trees of the shards
+     */
+    public ShardedBPlusTree(int numShards, int m){
+        this(numShards, m, m);
+    }
+
+    /**
+     * @param numShards - number of shards, which split the int range into equal parts
+     * @param indexOrder - order of the index nodes of the trees of the shards
+     * @param leafOrder - order of the leaf nodes of the trees of the shards
+     */
+    public ShardedBPlusTree(int numShards, int indexOrder, int leafOrder){
+        if(numShards < 1){
+            throw new IllegalArgumentException("number of shards must be at least 1, got " + numShards);
+        }
+        this.indexOrder = indexOrder;
+        this.leafOrder = leafOrder;
+        this.size = new LongAdder();
+        this.rebalanceLock = new Object();
+        this.numRebalances = new LongAdder();
+        long width = (1L << 32) / numShards;
+        Shard[] shards = new Shard[numShards];
+        for(int i = 0; i < numShards; i++){
+            long low = Integer.MIN_VALUE + i * width;
+            long high = i == numShards - 1 ? Integer.MAX_VALUE : low + width - 1;
+            shards[i] = new Shard((int) low, (int) high, new bplustree(indexOrder, leafOrder, false), 0);
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * Returns the shard that owns a key
+     * @param shards - the shards in key order
+     * @param key - the key
+     * @return - index of the shard
+     */
+    private static int route(Shard[] shards, int key){
+        int l = 0, r = shards.length - 1;
+        while(l < r){
+            int mid = (l + r + 1) >>> 1;
+            if(shards[mid].low <= key){
+                l = mid;
+            }else{
+                r = mid - 1;
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Locks the shard that owns a key, routing the key again if the shard is retired before it is locked
+     * @param key - the key
+     * @param write - true for the write lock, false for the read lock
+     * @return - the locked shard
+     */
+    private Shard lockShard(int key, boolean write){
+        while(true){
+            Shard[] shards = this.shards;
+            Shard shard = shards[route(shards, key)];
+            Lock lock = write ? shard.lock.writeLock() : shard.lock.readLock();
+            lock.lock();
+            if(!shard.retired){
+                return shard;
+            }
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts a pair into the shard that owns its key
+     * @param key - key of the dictionary pair to be inserted
+     * @param value - value of the dictionary pair to be inserted
+     */
+    public void insert(int key, double value){
+        Shard shard = lockShard(key, true);
+        long shardSize;
+        try {
+            shard.tree.insert(key, value);
+            shardSize = ++shard.size;
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+        this.size.increment();
+        if(shardSize % CHECK_INTERVAL == 0){
+            rebalanceIfSkewed(shard);
+        }
+    }
+
+    /**
+     * Deletes a pair that has key equal to the target key
+     * @param key - target key
+     */
+    public void delete(int key){
+        Shard shard = lockShard(key, true);
+        boolean removed;
+        try {
+            removed = shard.tree.remove(key);
+            if(removed){
+                shard.size--;
+            }
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+        if(removed){
+            this.size.decrement();
+        }
+    }
+
+    /**
+     * Search for a given key in the tree
+     * @param key - the key to be searched
+     * @return - Double value associated with the key. If the key is not found, then the value is null
+     */
+    public Double search(int key){
+        Shard shard = lockShard(key, false);
+        try {
+            return shard.tree.search(key);
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search for a range of values in the tree. The shards that overlap the range are read one after the other
+     * @param key1 - the lower bound of the search
+     * @param key2 -  the higher bound of the search
+     * @return - List<Double> contains values of all the keys that fall in the range
+     */
+    public List<Double> search(int key1, int key2){
+        List<Double> result = new ArrayList<>();
+        int from = key1;
+        while(from <= key2){
+            //the shard is locked again by the key the scan has reached, as a rebalance may have moved its boundary
+            Shard shard = lockShard(from, false);
+            try {
+                RangeCursor cursor = shard.tree.cursor(from, Math.min(key2, shard.high));
+                while(cursor.next()){
+                    result.add(cursor.getValue());
+                }
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+            if(shard.high >= key2){
+                break;
+            }
+            from = shard.high + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Moves pairs from a shard to its smaller neighbour if the shard holds more than SKEW_FACTOR times the average
+     * shard size
+     * @param shard - the shard that grew
+     */
+    private void rebalanceIfSkewed(Shard shard){
+        synchronized (this.rebalanceLock){
+            Shard[] shards = this.shards;
+            int idx = route(shards, shard.low);
+            long shardSize = shard.size;
+            if(shards[idx] != shard || shards.length == 1 || shardSize < MIN_REBALANCE_SIZE
+                    || shardSize <= SKEW_FACTOR * (this.size.sum() / shards.length)){
+                return; //retired by another rebalance, or not skewed
+            }
+            int neighbour;
+            if(idx == 0){
+                neighbour = 1;
+            }else if(idx == shards.length - 1){
+                neighbour = idx - 1;
+            }else{
+                neighbour = shards[idx - 1].size <= shards[idx + 1].size ? idx - 1 : idx + 1;
+            }
+            if(2 * shards[neighbour].size >= shardSize){
+                return; //the neighbour is as loaded, it is rebalanced with its own neighbour when it grows
+            }
+            rebalance(shards, Math.min(idx, neighbour));
+        }
+    }
+
+    /**
+     * Moves the boundary between two neighbouring shards so that they hold about the same number of pairs. Both
+     * shards are write locked, lower one first, while their pairs are copied into two new trees
+     * @param shards - the shards in key order
+     * @param idx - index of the lower of the two shards
+     */
+    private void rebalance(Shard[] shards, int idx){
+        Shard left = shards[idx];
+        Shard right = shards[idx + 1];
+        left.lock.writeLock().lock();
+        right.lock.writeLock().lock();
+        try {
+            int total = (int) (left.size + right.size);
+            int[] keys = new int[total];
+            double[] values = new double[total];
+            int n = 0;
+            for(Shard shard : new Shard[]{left, right}){
+                RangeCursor cursor = shard.tree.cursor(shard.low, shard.high);
+                while(cursor.next()){
+                    keys[n] = cursor.getKey();
+                    values[n] = cursor.getValue();
+                    n++;
+                }
+            }
+
+            //all the pairs of a key must stay in one shard, so the split point is moved to the start of a key
+            int mid = n / 2;
+            while(mid > 0 && keys[mid - 1] == keys[mid]){
+                mid--;
+            }
+            if(mid == 0){
+                mid = n / 2;
+                while(mid < n && keys[mid] == keys[mid - 1]){
+                    mid++;
+                }
+            }
+            if(mid == 0 || mid == n || mid == left.size){
+                return; //a single key, or the boundary is already there
+            }
+
+            Shard newLeft = new Shard(left.low, keys[mid] - 1, load(keys, values, 0, mid), mid);
+            Shard newRight = new Shard(keys[mid], right.high, load(keys, values, mid, n), n - mid);
+            Shard[] newShards = shards.clone();
+            newShards[idx] = newLeft;
+            newShards[idx + 1] = newRight;
+            this.shards = newShards;
+            left.retired = true;
+            right.retired = true;
+            this.numRebalances.increment();
+        } finally {
+            right.lock.writeLock().unlock();
+            left.lock.writeLock().unlock();
+        }
+    }
+
+    private bplustree load(int[] keys, double[] values, int from, int to){
+        BulkLoader loader = new BulkLoader(this.indexOrder, this.leafOrder, FILL_FACTOR, false);
+        for(int i = from; i < to; i++){
+            loader.add(keys[i], values[i]);
+        }
+        return loader.build();
+    }
+
+    /**
+     * Returns the number of pairs in the tree
+     * @return - long value
+     */
+    public long size(){
+        return this.size.sum();
+    }
+
+    /**
+     * Returns the number of shards
+     * @return - int value
+     */
+    public int getNumShards(){
+        return this.shards.length;
+    }
+
+    /**
+     * Returns the lowest key owned by every shard, in key order
+     * @return - int array
+     */
+    public int[] getShardBounds(){
+        Shard[] shards = this.shards;
+        int[] bounds = new int[shards.length];
+        for(int i = 0; i < shards.length; i++){
+            bounds[i] = shards[i].low;
+        }
+        return bounds;
+    }
+
+    /**
+     * Returns the number of pairs in every shard, in key order
+     * @return - long array
+     */
+    public long[] getShardSizes(){
+        Shard[] shards = this.shards;
+        long[] sizes = new long[shards.length];
+        for(int i = 0; i < shards.length; i++){
+            sizes[i] = shards[i].size;
+        }
+        return sizes;
+    }
+
+    /**
+     * Returns the number of rebalances since the tree was created
+     * @return - long value
+     */
+    public long getNumRebalances(){
+        return this.numRebalances.sum();
+    }
+}
@@ -0,0 +1,379 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A copy-on-write B+ tree whose readers see consistent snapshots. Published nodes are never modified: a writer copies
+ * the leaf node it changes and every index node on the path from it to the root, links the copies together with the
+ * untouched subtrees and then publishes the new root with a single volatile write. A reader pins the root it reads
+ * and walks an immutable tree from it, so a long range scan neither blocks the writer nor sees any of its changes,
+ * however long it takes.
+ *
+ * Old versions are reclaimed by the garbage collector: once no reader holds a snapshot of an old root, the nodes that
+ * were replaced in later versions are no longer reachable. Writers are serialized with each other. As with
+ * ConcurrentBPlusTree, a key is stored at most once and inserting an existing key replaces its value.
+ *
+ * Leaf nodes are not linked to their siblings here, because a link would tie a leaf node to the next leaf node of one
+ * particular version. Range scans descend from the pinned root instead.
+ */
+public class SnapshotBPlusTree {
+    private final int m;
+    private final int maxPairs;
+    private volatile Node root;
+
+    //Path from the root to the leaf node found by the last write, see getLeafNodeAndPath
+    private IndexNode[] pathNodes;
+    private int[] pathSlots;
+    private int pathDepth;
+
+    public SnapshotBPlusTree(int m){
+        if(m < 3){
+            throw new IllegalArgumentException("order must be at least 3, got " + m);
+        }
+        this.m = m;
+        this.maxPairs = m - 1;
+        this.root = new LeafNode(m, new int[m], new double[m], 0);
+        this.pathNodes = new IndexNode[8];
+        this.pathSlots = new int[8];
+    }
+
+    /**
+     * An immutable view of the tree as it was when the snapshot was taken
+     */
+    public static class Snapshot {
+        private final Node root;
+
+        private Snapshot(Node root){
+            this.root = root;
+        }
+
+        /**
+         * Search for a given key in the snapshot
+         * @param key - the key to be searched
+         * @return - Double value associated with the key. If the key is not found, then the value is null
+         */
+        public Double search(int key){
+            return SnapshotBPlusTree.search(this.root, key);
+        }
+
+        /**
+         * Search for a range of values in the snapshot
+         * @param key1 - the lower bound of the search
+         * @param key2 -  the higher bound of the search
+         * @return - List<Double> contains values of all the keys that fall in the range
+         */
+        public List<Double> search(int key1, int key2){
+            List<Double> result = new ArrayList<>();
+            collectRange(this.root, key1, key2, result);
+            return result;
+        }
+    }
+
+    /**
+     * Pins the current version of the tree. Any number of reads can be made on the snapshot and all of them see the
+     * same pairs, whatever is written to the tree in the meantime
+     * @return - a snapshot of the current version
+     */
+    public Snapshot snapshot(){
+        return new Snapshot(this.root);
+    }
+
+    /**
+     * Search for a given key in the current version of the tree
+     * @param key - the key to be searched
+     * @return - Double value associated with the key. If the key is not found, then the value is null
+     */
+    public Double search(int key){
+        return search(this.root, key);
+    }
+
+    /**
+     * Search for a range of values. The scan pins the current version of the tree, so its result is consistent even
+     * if pairs are inserted or deleted while it runs
+     * @param key1 - the lower bound of the search
+     * @param key2 -  the higher bound of the search
+     * @return - List<Double> contains values of all the keys that fall in the range
+     */
+    public List<Double> search(int key1, int key2){
+        return snapshot().search(key1, key2);
+    }
+
+    /**
+     * Search for a key in the version of the tree under a root
+     * @param node - the root of the version
+     * @param key - the key to be searched
+     * @return - Double value associated with the key, null if the key is not found
+     */
+    private static Double search(Node node, int key){
+        while(!node.isLeaf){
+            IndexNode indexNode = (IndexNode) node;
+            node = indexNode.getChildren()[indexNode.getChildSubtreeIdxForAKey(key)];
+        }
+        LeafNode leafNode = (LeafNode) node;
+        int idx = leafNode.search(key);
+        return idx == -1 ? null : leafNode.getValue(idx);
+    }
+
+    /**
+     * Adds the values of all the keys in a range that are in a subtree to a list, in key order
+     * @param node - the root of the subtree
+     * @param key1 - the lower bound of the range
+     * @param key2 - the higher bound of the range
+     * @param result - list the values are added to
+     */
+    private static void collectRange(Node node, int key1, int key2, List<Double> result){
+        if(node.isLeaf){
+            LeafNode leafNode = (LeafNode) node;
+            int[] keys = leafNode.getKeys();
+            double[] values = leafNode.getValues();
+            for(int i = 0; i < leafNode.getCurNumPairs() && keys[i] <= key2; i++){
+                if(keys[i] >= key1){
+                    result.add(values[i]);
+                }
+            }
+            return;
+        }
+        //only the children whose key range overlaps the range are visited
+        IndexNode indexNode = (IndexNode) node;
+        Node[] children = indexNode.getChildren();
+        int last = indexNode.getChildSubtreeIdxForAKey(key2);
+        for(int i = indexNode.getChildSubtreeIdxForAKey(key1); i <= last; i++){
+            collectRange(children[i], key1, key2, result);
+        }
+    }
+
+    /**
+     * Finds the leaf node for a key in the current version and records the path to it in pathNodes and pathSlots,
+     * pathNodes[i] being the index node at depth i and pathSlots[i] the index of the next node on the path in its
+     * children array
+     * @param key - the key
+     * @return - the leaf node for the key
+     */
+    private LeafNode getLeafNodeAndPath(int key){
+        Node node = this.root;
+        this.pathDepth = 0;
+        while(!node.isLeaf){
+            IndexNode indexNode = (IndexNode) node;
+            int idx = indexNode.getChildSubtreeIdxForAKey(key);
+            if(this.pathDepth == this.pathNodes.length){
+                this.pathNodes = Arrays.copyOf(this.pathNodes, this.pathDepth * 2);
+                this.pathSlots = Arrays.copyOf(this.pathSlots, this.pathDepth * 2);
+            }
+            this.pathNodes[this.pathDepth] = indexNode;
+            this.pathSlots[this.pathDepth] = idx;
+            this.pathDepth++;
+            node = indexNode.getChildren()[idx];
+        }
+        return (LeafNode) node;
+    }
+
+    /**
+     * Inserts a key value pair into a new version of the tree, replacing the value if the key is already present
+     * @param key - key of the dictionary pair to be inserted
+     * @param value - value of the dictionary pair to be inserted
+     */
+    public synchronized void insert(int key, double value){
+        LeafNode leafNode = copyLeafNode(getLeafNodeAndPath(key));
+        int idx = leafNode.search(key);
+        if(idx != -1){
+            leafNode.setValue(idx, value);
+        }else{
+            leafNode.insertPair(key, value);
+        }
+
+        Node node = leafNode;
+        Node newSibling = null;
+        int newKey = 0;
+        if(leafNode.getCurNumPairs() > this.maxPairs){
+            int midIdx = (int) Math.ceil((this.m + 1) / 2.0) - 1;
+            newKey = leafNode.getKey(midIdx);
+            newSibling = leafNode.split(midIdx);
+        }
+
+        //copy the path bottom up, adding the separator of a split to the copy of the parent
+        for(int level = this.pathDepth - 1; level >= 0; level--){
+            IndexNode parent = copyIndexNode(this.pathNodes[level]);
+            int slot = this.pathSlots[level];
+            parent.getChildren()[slot] = node;
+            if(newSibling != null){
+                parent.insertKey(newKey, slot);
+                parent.insertChild(newSibling, slot + 1);
+                newSibling = null;
+                if(parent.isExceedingLimit()){
+                    int midIdx = (int) Math.ceil((this.m + 1) / 2.0) - 1;
+                    newKey = parent.getKeys()[midIdx];
+                    newSibling = parent.split(midIdx);
+                }
+            }
+            node = parent;
+        }
+
+        if(newSibling != null){
+            int[] keys = new int[this.m];
+            keys[0] = newKey;
+            IndexNode newRoot = new IndexNode(this.m, keys);
+            newRoot.addChild(node);
+            newRoot.addChild(newSibling);
+            node = newRoot;
+        }
+        this.root = node;
+    }
+
+    /**
+     * Deletes the pair with the target key in a new version of the tree. A node left deficient is merged with or
+     * borrows from a sibling, which is copied as well
+     * @param key - target key
+     */
+    public synchronized void delete(int key){
+        LeafNode found = getLeafNodeAndPath(key);
+        int idx = found.search(key);
+        if(idx == -1){
+            return;
+        }
+        LeafNode leafNode = copyLeafNode(found);
+        leafNode.deletePair(idx);
+
+        Node node = leafNode;
+        for(int level = this.pathDepth - 1; level >= 0; level--){
+            IndexNode parent = copyIndexNode(this.pathNodes[level]);
+            int slot = this.pathSlots[level];
+            parent.getChildren()[slot] = node;
+            if(node.isLeaf ? ((LeafNode) node).isDeficient() : ((IndexNode) node).isDeficient()){
+                rebalance(parent, slot > 0 ? slot - 1 : slot);
+            }
+            node = parent;
+        }
+
+        //the root is dropped when it is left with a single child
+        if(!node.isLeaf && ((IndexNode) node).getCurrentDegree() == 1){
+            node = ((IndexNode) node).getChildren()[0];
+        }
+        this.root = node;
+    }
+
+    /**
+     * Merges two adjacent children of a copied index node if their entries fit in one node, or else splits their
+     * entries evenly between two new nodes. The children themselves are not modified
+     * @param parent - the copied parent
+     * @param idx - index of the left one of the two children
+     */
+    private void rebalance(IndexNode parent, int idx){
+        Node[] children = parent.getChildren();
+        if(children[idx].isLeaf){
+            rebalanceLeafNodes(parent, idx, (LeafNode) children[idx], (LeafNode) children[idx + 1]);
+        }else{
+            rebalanceIndexNodes(parent, idx, (IndexNode) children[idx], (IndexNode) children[idx + 1]);
+        }
+    }
+
+    /**
+     * Merges or evenly splits the pairs of two adjacent leaf nodes
+     * @param parent - the copied parent
+     * @param idx - index of the left leaf node in the parent's children array
+     * @param left - the left leaf node
+     * @param right - the right leaf node
+     */
+    private void rebalanceLeafNodes(IndexNode parent, int idx, LeafNode left, LeafNode right){
+        int total = left.getCurNumPairs() + right.getCurNumPairs();
+        int[] keys = new int[total];
+        double[] values = new double[total];
+        System.arraycopy(left.getKeys(), 0, keys, 0, left.getCurNumPairs());
+        System.arraycopy(left.getValues(), 0, values, 0, left.getCurNumPairs());
+        System.arraycopy(right.getKeys(), 0, keys, left.getCurNumPairs(), right.getCurNumPairs());
+        System.arraycopy(right.getValues(), 0, values, left.getCurNumPairs(), right.getCurNumPairs());
+
+        if(total <= this.maxPairs){
+            parent.getChildren()[idx] = newLeafNode(keys, values, 0, total);
+            parent.deleteKey(idx);
+            parent.deleteChildReference(idx + 1);
+            return;
+        }
+        int numLeft = total - total / 2;
+        parent.getChildren()[idx] = newLeafNode(keys, values, 0, numLeft);
+        parent.getChildren()[idx + 1] = newLeafNode(keys, values, numLeft, total - numLeft);
+        parent.getKeys()[idx] = keys[numLeft];
+    }
+
+    /**
+     * Merges or evenly splits the children of two adjacent index nodes. The separator between them in the parent
+     * moves down between their keys, and when they are split again the key at the new boundary moves up
+     * @param parent - the copied parent
+     * @param idx - index of the left index node in the parent's children array
+     * @param left - the left index node
+     * @param right - the right index node
+     */
+    private void rebalanceIndexNodes(IndexNode parent, int idx, IndexNode left, IndexNode right){
+        int leftDegree = left.getCurrentDegree();
+        int rightDegree = right.getCurrentDegree();
+        int total = leftDegree + rightDegree;
+        int[] keys = new int[total - 1];
+        Node[] children = new Node[total];
+        System.arraycopy(left.getKeys(), 0, keys, 0, leftDegree - 1);
+        keys[leftDegree - 1] = parent.getKeys()[idx];
+        System.arraycopy(right.getKeys(), 0, keys, leftDegree, rightDegree - 1);
+        System.arraycopy(left.getChildren(), 0, children, 0, leftDegree);
+        System.arraycopy(right.getChildren(), 0, children, leftDegree, rightDegree);
+
+        if(total <= this.m){
+            parent.getChildren()[idx] = newIndexNode(keys, children, 0, total);
+            parent.deleteKey(idx);
+            parent.deleteChildReference(idx + 1);
+            return;
+        }
+        int numLeft = total - total / 2;
+        parent.getChildren()[idx] = newIndexNode(keys, children, 0, numLeft);
+        parent.getChildren()[idx + 1] = newIndexNode(keys, children, numLeft, total - numLeft);
+        parent.getKeys()[idx] = keys[numLeft - 1];
+    }
+
+    /**
+     * Copies a leaf node so that it can be modified without affecting the versions that contain it
+     * @param leafNode - the leaf node
+     * @return - a copy with its own arrays
+     */
+    private LeafNode copyLeafNode(LeafNode leafNode){
+        return newLeafNode(leafNode.getKeys(), leafNode.getValues(), 0, leafNode.getCurNumPairs());
+    }
+
+    /**
+     * Copies an index node so that it can be modified without affecting the versions that contain it
+     * @param indexNode - the index node
+     * @return - a copy with its own arrays
+     */
+    private IndexNode copyIndexNode(IndexNode indexNode){
+        return new IndexNode(this.m, Arrays.copyOf(indexNode.getKeys(), this.m),
+                Arrays.copyOf(indexNode.getChildren(), this.m + 1));
+    }
+
+    /**
+     * Creates a leaf node from a slice of two parallel arrays of keys and values
+     * @param keys - the keys
+     * @param values - the values
+     * @param from - index of the first pair
+     * @param numPairs - number of pairs
+     * @return - a new leaf node
+     */
+    private LeafNode newLeafNode(int[] keys, double[] values, int from, int numPairs){
+        int[] nodeKeys = new int[this.m];
+        double[] nodeValues = new double[this.m];
+        System.arraycopy(keys, from, nodeKeys, 0, numPairs);
+        System.arraycopy(values, from, nodeValues, 0, numPairs);
+        return new LeafNode(this.m, nodeKeys, nodeValues, numPairs);
+    }
+
+    /**
+     * Creates an index node from a slice of children and the keys between them
+     * @param keys - the keys, keys[i] separating children[i] and children[i + 1]
+     * @param children - the children
+     * @param from - index of the first child
+     * @param degree - number of children
+     * @return - a new index node
+     */
+    private IndexNode newIndexNode(int[] keys, Node[] children, int from, int degree){
+        int[] nodeKeys = new int[this.m];
+        Node[] nodeChildren = new Node[this.m + 1];
+        System.arraycopy(keys, from, nodeKeys, 0, degree - 1);
+        System.arraycopy(children, from, nodeChildren, 0, degree);
+        return new IndexNode(this.m, nodeKeys, nodeChildren);
+    }
+}
@@ -0,0 +1,67 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernel of KeySearch, built on the incubating Vector API. It is compiled and run with
+ * --add-modules jdk.incubator.vector and is only reached through KeySearch, which falls back to the scalar search
+ * when this class cannot be loaded.
+ *
+ * As the keys are sorted, the keys of a chunk that compare less than the key are a prefix of the chunk, so the count
+ * of true lanes of the comparison is the position of the answer within the first chunk that is not all true.
+ */
+final class VectorKeySearch {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    //the binary search stops once the answer is known to lie within this many keys, which are then scanned linearly
+    private static final int WINDOW = 4 * LANES;
+
+    private VectorKeySearch(){
+    }
+
+    static int countLess(int[] keys, int n, int key){
+        int l = 0, r = n;
+        while(r - l > WINDOW){
+            int mid = (l + r) >>> 1;
+            if(keys[mid] < key){
+                l = mid + 1;
+            }else{
+                r = mid;
+            }
+        }
+        int i = l;
+        for(int bound = l + SPECIES.loopBound(r - l); i < bound; i += LANES){
+            int count = IntVector.fromArray(SPECIES, keys, i).compare(VectorOperators.LT, key).trueCount();
+            if(count < LANES){
+                return i + count;
+            }
+        }
+        while(i < r && keys[i] < key){
+            i++;
+        }
+        return i;
+    }
+
+    static int countLessOrEqual(int[] keys, int n, int key){
+        int l = 0, r = n;
+        while(r - l > WINDOW){
+            int mid = (l + r) >>> 1;
+            if(keys[mid] <= key){
+                l = mid + 1;
+            }else{
+                r = mid;
+            }
+        }
+        int i = l;
+        for(int bound = l + SPECIES.loopBound(r - l); i < bound; i += LANES){
+            int count = IntVector.fromArray(SPECIES, keys, i).compare(VectorOperators.LE, key).trueCount();
+            if(count < LANES){
+                return i + count;
+            }
+        }
+        while(i < r && keys[i] <= key){
+            i++;
+        }
+        return i;
+    }
+}
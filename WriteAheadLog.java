@@ -0,0 +1,413 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of the inserts and deletes applied to a tree, used to recover the writes made since the last
+ * checkpoint after a crash. Every operation is appended as a fixed-size binary record and is identified by its log
+ * sequence number (LSN): the records of a log are numbered consecutively from the start LSN stored in its header.
+ *
+ * Appending only copies the record into a buffer in memory. commit writes the buffer to the file and, depending on the
+ * sync policy, forces it to the storage device. Commits are grouped: the first thread that commits becomes the leader
+ * and writes and forces everything appended so far in one go, while the threads that commit in the meantime wait for
+ * it or for the next leader, so concurrent writers share the cost of one fsync.
+ *
+ * File layout, big endian:
+ * header (HEADER_SIZE bytes): magic (4), format version (4), start LSN (8)
+ * records (RECORD_SIZE bytes each): type (1), key (4), value (8), CRC32C of the previous 13 bytes (4)
+ *
+ * A crash may leave a partially written record at the end of the file. Recovery stops at the first record that is
+ * incomplete or fails its checksum and cuts the file there, as the records after it were never committed.
+ */
+public class WriteAheadLog implements Closeable {
+    static final byte INSERT = 1;
+    static final byte DELETE = 2;
+
+    private static final int MAGIC = 0x57414C31; //"WAL1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 17;
+
+    /**
+     * When committed records are forced to the storage device
+     */
+    public enum SyncPolicy {
+        /** commit returns once the record is forced, so no committed write is lost */
+        COMMIT,
+        /** commit returns once the record is written to the file, which is forced every sync interval, so a power
+         * failure loses at most the writes of the last interval and a crash of the process loses none */
+        INTERVAL,
+        /** commit returns once the record is written to the file, which is only forced by sync, truncate and close */
+        NONE
+    }
+
+    /**
+     * Receives the records read back by recovery
+     */
+    public interface RecordHandler {
+        /**
+         * @param type - INSERT or DELETE
+         * @param key - key of the operation
+         * @param value - value of an insert, 0 for a delete
+         */
+        void apply(byte type, int key, double value);
+    }
+
+    private final Path path;
+    private final SyncPolicy policy;
+    private final CRC32C crc;
+    private FileChannel channel;
+    private long fileSize;
+
+    //records appended since the last write, and the buffer the last leader wrote, which is reused by the next one
+    private ByteBuffer buffer;
+    private ByteBuffer spare;
+
+    private long appendedLsn; //LSN of the last appended record
+    private long writtenLsn; //LSN of the last record written to the file
+    private long syncedLsn; //LSN of the last record forced to the storage device
+    private boolean flushing; //whether a leader is writing the buffer
+    private IOException failure; //the error that made the log unusable, if any
+    private Thread syncer;
+    private volatile boolean closing;
+
+    /**
+     * Opens a log, creating it if it does not exist, and replays the records that follow a checkpoint
+     * @param path - path of the log file
+     * @param policy - when committed records are forced to the storage device
+     * @param syncIntervalMillis - time between two forces with the INTERVAL policy, ignored otherwise
+     * @param checkpointLsn - LSN of the last record whose operation is contained in the checkpoint, or 0 if there is
+     *                      no checkpoint. The records up to it are skipped
+     * @param handler - receives the records after the checkpoint in log order
+     * @throws IOException - if the file cannot be read or written, or misses records after the checkpoint
+     */
+    public WriteAheadLog(Path path, SyncPolicy policy, long syncIntervalMillis, long checkpointLsn,
+                         RecordHandler handler) throws IOException {
+        this.path = path;
+        this.policy = policy;
+        this.crc = new CRC32C();
+        this.buffer = ByteBuffer.allocate(1 << 16);
+        this.spare = ByteBuffer.allocate(1 << 16);
+        if(!Files.exists(path)){
+            createLog(checkpointLsn);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            recover(checkpointLsn, handler);
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+
+        if(policy == SyncPolicy.INTERVAL){
+            //the thread is parked rather than interrupted, as an interrupt during a write closes the channel
+            this.syncer = new Thread(() -> {
+                try {
+                    while(!this.closing){
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis));
+                        sync();
+                    }
+                } catch (IOException e) {
+                    //a failed sync is reported to the next commit
+                }
+            }, "wal-sync");
+            this.syncer.setDaemon(true);
+            this.syncer.start();
+        }
+    }
+
+    /**
+     * Replaces the log file with an empty log. The new log is written to a temporary file that is then renamed over
+     * the old one, so a crash leaves either the old or the new log and never a log without a header
+     * @param startLsn - the LSN after which the records of the new log are numbered
+     * @throws IOException - if the file cannot be written
+     */
+    private void createLog(long startLsn) throws IOException {
+        Path tmp = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+        try(FileChannel newChannel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(startLsn).flip();
+            while(header.hasRemaining()){
+                newChannel.write(header);
+            }
+            newChannel.force(true);
+        }
+        Files.move(tmp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(this.path);
+    }
+
+    /**
+     * Forces the directory entry of a file that was created or renamed to the storage device
+     * @param file - the file
+     * @throws IOException - if the directory cannot be synced
+     */
+    static void syncDirectory(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        try(FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)){
+            dirChannel.force(true);
+        }
+    }
+
+    /**
+     * Reads the log, passes the valid records after the checkpoint to a handler and cuts the file after the last valid
+     * record
+     * @param checkpointLsn - LSN of the last record contained in the checkpoint
+     * @param handler - receives the records after the checkpoint
+     * @throws IOException - if the file cannot be read or written, or misses records after the checkpoint
+     */
+    private void recover(long checkpointLsn, RecordHandler handler) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while(header.hasRemaining()){
+            if(this.channel.read(header, header.position()) < 0){
+                break;
+            }
+        }
+        if(header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION){
+            throw new IOException("not a write-ahead log file, or written by another version");
+        }
+        long lsn = header.getLong(8);
+        if(lsn > checkpointLsn){
+            throw new IOException("the log starts at LSN " + lsn + ", after the checkpoint at LSN " + checkpointLsn);
+        }
+
+        //read whole records in chunks until the end of the file or the first invalid record
+        long position = HEADER_SIZE;
+        ByteBuffer chunk = ByteBuffer.allocate(RECORD_SIZE * 4096);
+        boolean valid = true;
+        while(valid){
+            chunk.clear();
+            while(chunk.hasRemaining()){
+                if(this.channel.read(chunk, position + chunk.position()) < 0){
+                    break;
+                }
+            }
+            chunk.flip();
+            if(chunk.remaining() < RECORD_SIZE){
+                break;
+            }
+            while(chunk.remaining() >= RECORD_SIZE){
+                int start = chunk.position();
+                byte type = chunk.get();
+                int key = chunk.getInt();
+                double value = chunk.getDouble();
+                this.crc.reset();
+                this.crc.update(chunk.array(), start, RECORD_SIZE - 4);
+                if(chunk.getInt() != (int) this.crc.getValue() || (type != INSERT && type != DELETE)){
+                    valid = false;
+                    break;
+                }
+                lsn++;
+                position += RECORD_SIZE;
+                if(lsn > checkpointLsn){
+                    handler.apply(type, key, value);
+                }
+            }
+        }
+        if(this.channel.size() > position){
+            this.channel.truncate(position);
+            this.channel.force(true);
+        }
+        this.fileSize = position;
+        this.appendedLsn = this.writtenLsn = this.syncedLsn = lsn;
+
+        if(lsn < checkpointLsn){
+            //the checkpoint holds writes whose records never reached the file. New records must be numbered after
+            //them, otherwise the next recovery would take them for records of the checkpoint and skip them
+            this.appendedLsn = checkpointLsn;
+            truncate();
+        }
+    }
+
+    /**
+     * Appends a record to the log. The record is not in the file until it is committed
+     * @param type - INSERT or DELETE
+     * @param key - key of the operation
+     * @param value - value of an insert, 0 for a delete
+     * @return - LSN of the record
+     */
+    public synchronized long append(byte type, int key, double value){
+        if(this.failure != null){
+            throw new IllegalStateException("the write-ahead log failed", this.failure);
+        }
+        if(this.buffer.remaining() < RECORD_SIZE){
+            ByteBuffer bigger = ByteBuffer.allocate(this.buffer.capacity() * 2);
+            this.buffer.flip();
+            bigger.put(this.buffer);
+            this.buffer = bigger;
+        }
+        int start = this.buffer.position();
+        this.buffer.put(type).putInt(key).putDouble(value);
+        this.crc.reset();
+        this.crc.update(this.buffer.array(), start, RECORD_SIZE - 4);
+        this.buffer.putInt((int) this.crc.getValue());
+        return ++this.appendedLsn;
+    }
+
+    /**
+     * Waits until a record is durable according to the sync policy, writing and forcing the pending records itself if
+     * no other thread is doing it
+     * @param lsn - LSN of the record
+     * @throws IOException - if the log cannot be written or forced
+     */
+    public void commit(long lsn) throws IOException {
+        flushUpTo(lsn, this.policy == SyncPolicy.COMMIT);
+    }
+
+    /**
+     * Writes every appended record to the file and forces the file to the storage device
+     * @throws IOException - if the log cannot be written or forced
+     */
+    public void sync() throws IOException {
+        long lsn;
+        synchronized (this){
+            lsn = this.appendedLsn;
+        }
+        flushUpTo(lsn, true);
+    }
+
+    /**
+     * Group commit. Waits until a record is written, or forced, either by the current leader or by this thread as the
+     * next leader. A leader takes every record appended so far, so the followers that wait for it are usually done
+     * when it is
+     * @param lsn - LSN of the record
+     * @param force - true to wait until the record is forced to the storage device
+     * @throws IOException - if the log cannot be written or forced
+     */
+    private void flushUpTo(long lsn, boolean force) throws IOException {
+        ByteBuffer batch;
+        long batchLsn;
+        long position;
+        synchronized (this){
+            while(true){
+                if(this.failure != null){
+                    throw new IOException("the write-ahead log failed", this.failure);
+                }
+                if((force ? this.syncedLsn : this.writtenLsn) >= lsn){
+                    return;
+                }
+                if(!this.flushing){
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting for a commit", e);
+                }
+            }
+            //become the leader: swap the buffers so that other threads can keep appending while this one writes
+            this.flushing = true;
+            batch = this.buffer;
+            this.buffer = this.spare;
+            this.spare = null;
+            batchLsn = this.appendedLsn;
+            position = this.fileSize;
+            this.fileSize += batch.position();
+        }
+
+        IOException error = null;
+        try {
+            batch.flip();
+            while(batch.hasRemaining()){
+                this.channel.write(batch, position + batch.position());
+            }
+            if(force){
+                this.channel.force(false);
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+
+        synchronized (this){
+            batch.clear();
+            this.spare = batch;
+            this.flushing = false;
+            if(error != null){
+                //the state of the file after a failed write or force is unknown, so the log cannot be trusted anymore
+                this.failure = error;
+            }else{
+                this.writtenLsn = batchLsn;
+                if(force){
+                    this.syncedLsn = batchLsn;
+                }
+            }
+            notifyAll();
+        }
+        if(error != null){
+            throw error;
+        }
+    }
+
+    /**
+     * Drops every record and starts an empty log numbered after the last appended record. It is called once a
+     * checkpoint that contains all the appended records is durable, and no record may be appended meanwhile
+     * @throws IOException - if the new log cannot be written
+     */
+    public synchronized void truncate() throws IOException {
+        while(this.flushing){
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for a commit", e);
+            }
+        }
+        this.channel.close();
+        createLog(this.appendedLsn);
+        this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.fileSize = HEADER_SIZE;
+        this.buffer.clear();
+        //the records that were still pending are durable in the checkpoint
+        this.writtenLsn = this.syncedLsn = this.appendedLsn;
+        notifyAll();
+    }
+
+    /**
+     * Returns the LSN of the last appended record
+     * @return - long value
+     */
+    public synchronized long getAppendedLsn() {
+        return appendedLsn;
+    }
+
+    /**
+     * Returns the LSN of the last record forced to the storage device
+     * @return - long value
+     */
+    public synchronized long getSyncedLsn() {
+        return syncedLsn;
+    }
+
+    /**
+     * Stops the periodic sync, forces every appended record to the storage device and closes the file
+     * @throws IOException - if the log cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        if(this.syncer != null){
+            this.closing = true;
+            LockSupport.unpark(this.syncer);
+            try {
+                this.syncer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if(this.failure == null){
+                sync();
+            }
+        } finally {
+            this.channel.close();
+        }
+    }
+}
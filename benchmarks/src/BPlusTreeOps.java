@@ -0,0 +1,37 @@
+import java.util.List;
+
+/**
+ * Adapter that exposes a bplustree to the benchmarks, see bench.TreeOps
+ */
+public class BPlusTreeOps implements bench.TreeOps {
+    private final bplustree tree;
+
+    public BPlusTreeOps(int indexOrder, int leafOrder){
+        this.tree = new bplustree(indexOrder, leafOrder, false);
+    }
+
+    @Override
+    public void insert(int key, double value){
+        this.tree.insert(key, value);
+    }
+
+    @Override
+    public Double search(int key){
+        return this.tree.search(key);
+    }
+
+    @Override
+    public List<Double> search(int key1, int key2){
+        return this.tree.search(key1, key2);
+    }
+
+    @Override
+    public void delete(int key){
+        this.tree.delete(key);
+    }
+
+    @Override
+    public void enableWriteBuffering(int bufferCapacity){
+        this.tree.enableWriteBuffering(bufferCapacity);
+    }
+}
@@ -0,0 +1,39 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Adapter that exposes the replay of bplustree.main to the benchmarks, see bench.Replay
+ */
+public class ReplayOps implements bench.Replay {
+    private static OperationSource open(Path input, boolean binary) throws IOException {
+        return binary ? new BinaryOperationReader(input) : new OperationReader(input);
+    }
+
+    @Override
+    public long parse(Path input, boolean binary) throws IOException {
+        long checksum = 0;
+        try(OperationSource reader = open(input, binary)){
+            while(reader.next()){
+                checksum += reader.getType() + reader.getKey1() + reader.getKey2()
+                        + Double.doubleToRawLongBits(reader.getValue());
+            }
+            return checksum == 0 ? 0 : reader.getLineNumber();
+        }
+    }
+
+    @Override
+    public long replay(Path input, Path output, boolean binary, boolean pipelined) throws IOException {
+        try(OperationSource reader = open(input, binary);
+            ResultWriter writer = new ResultWriter(output)){
+            return pipelined ? new PipelinedReplay(reader, writer).replay() : bplustree.replay(reader, writer);
+        }
+    }
+
+    @Override
+    public void convert(Path text, Path binary) throws IOException {
+        try(OperationReader reader = new OperationReader(text);
+            BinaryOperationWriter writer = new BinaryOperationWriter(binary)){
+            BinaryOperationWriter.convert(reader, writer);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Adapter that exposes the KeySearch kernels to the benchmarks, see bench.SearchKernel
+ */
+public class SearchKernelOps implements bench.SearchKernel {
+    private final boolean scalar;
+
+    public SearchKernelOps(boolean scalar){
+        this.scalar = scalar;
+    }
+
+    @Override
+    public int countLessOrEqual(int[] keys, int n, int key){
+        return this.scalar ? KeySearch.scalarCountLessOrEqual(keys, n, key) : KeySearch.countLessOrEqual(keys, n, key);
+    }
+}
@@ -0,0 +1,32 @@
+import java.util.List;
+
+/**
+ * Adapter that exposes a ShardedBPlusTree to the benchmarks, see bench.TreeOps
+ */
+public class ShardedBPlusTreeOps implements bench.TreeOps {
+    private final ShardedBPlusTree tree;
+
+    public ShardedBPlusTreeOps(int numShards, int order){
+        this.tree = new ShardedBPlusTree(numShards, order);
+    }
+
+    @Override
+    public void insert(int key, double value){
+        this.tree.insert(key, value);
+    }
+
+    @Override
+    public Double search(int key){
+        return this.tree.search(key);
+    }
+
+    @Override
+    public List<Double> search(int key1, int key2){
+        return this.tree.search(key1, key2);
+    }
+
+    @Override
+    public void delete(int key){
+        this.tree.delete(key);
+    }
+}
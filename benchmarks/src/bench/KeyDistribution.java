@@ -0,0 +1,91 @@
+package bench;
+
+import java.util.Random;
+
+/**
+ * The order in which a workload accesses the keys of a key space of n keys, numbered 0 to n - 1
+ */
+public enum KeyDistribution {
+    /** every key in increasing order, wrapping around at the end of the key space */
+    SEQUENTIAL,
+    /** keys drawn uniformly at random */
+    RANDOM,
+    /** keys drawn from a Zipfian distribution with exponent ZIPF_THETA, as in YCSB. The popularity ranks are mapped
+     * to keys by a random permutation, so the hot keys are spread over the whole tree rather than clustered */
+    ZIPFIAN;
+
+    public static final double ZIPF_THETA = 0.99;
+
+    /**
+     * Generates a sequence of key numbers ahead of the measurement, so that generating them costs nothing while the
+     * tree is measured
+     * @param length - length of the sequence
+     * @param n - number of keys in the key space
+     * @param seed - seed of the random numbers
+     * @return - key numbers between 0 and n - 1
+     */
+    public int[] generate(int length, int n, long seed){
+        Random random = new Random(seed);
+        int[] sequence = new int[length];
+        switch(this){
+            case SEQUENTIAL:
+                for(int i = 0; i < length; i++){
+                    sequence[i] = i % n;
+                }
+                break;
+            case RANDOM:
+                for(int i = 0; i < length; i++){
+                    sequence[i] = random.nextInt(n);
+                }
+                break;
+            default:
+                int[] keyOfRank = permutation(n, random);
+                //Gray et al., "Quickly generating billion-record synthetic databases"
+                double zetaN = zeta(n, ZIPF_THETA);
+                double alpha = 1 / (1 - ZIPF_THETA);
+                double eta = (1 - Math.pow(2.0 / n, 1 - ZIPF_THETA)) / (1 - zeta(2, ZIPF_THETA) / zetaN);
+                for(int i = 0; i < length; i++){
+                    double u = random.nextDouble();
+                    double uz = u * zetaN;
+                    int rank;
+                    if(uz < 1){
+                        rank = 0;
+                    }else if(uz < 1 + Math.pow(0.5, ZIPF_THETA)){
+                        rank = 1;
+                    }else{
+                        rank = (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+                    }
+                    sequence[i] = keyOfRank[rank];
+                }
+        }
+        return sequence;
+    }
+
+    /**
+     * Returns the numbers 0 to n - 1 in a random order
+     * @param n - number of numbers
+     * @param random - source of the random order
+     * @return - int array
+     */
+    public static int[] permutation(int n, Random random){
+        int[] numbers = new int[n];
+        for(int i = 0; i < n; i++){
+            numbers[i] = i;
+        }
+        for(int i = n - 1; i > 0; i--){
+            int j = random.nextInt(i + 1);
+            int tmp = numbers[i];
+            numbers[i] = numbers[j];
+            numbers[j] = tmp;
+        }
+        return numbers;
+    }
+
+    private static double zeta(int n, double theta){
+        double sum = 0;
+        for(int i = 1; i <= n; i++){
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
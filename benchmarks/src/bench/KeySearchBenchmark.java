@@ -0,0 +1,66 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The in-node key search alone, on a sorted node of width keys, for the scalar binary search and for the kernel
+ * KeySearch picks, which is the SIMD one when VectorKeySearch was built (make simd) and the node is wide enough. The
+ * fork adds the incubator module the SIMD kernel needs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class KeySearchBenchmark {
+    static final int NUM_PROBES = 1024;
+
+    @Param({"8", "16", "32", "64", "128", "256", "512"})
+    int width;
+
+    @Param({"scalar", "default"})
+    String kernel;
+
+    SearchKernel search;
+    int[] keys;
+    int[] probes;
+    int next;
+
+    @Setup
+    public void setup(){
+        this.search = SearchKernel.newKernel(this.kernel.equals("scalar"));
+        if(this.kernel.equals("default") && !SearchKernel.isVectorized()){
+            System.err.println("KeySearch has no SIMD kernel, the default kernel is the scalar one");
+        }
+        Random random = new Random(0);
+        this.keys = new int[this.width];
+        for(int i = 0; i < this.width; i++){
+            this.keys[i] = 3 * i;
+        }
+        this.probes = new int[NUM_PROBES];
+        for(int i = 0; i < NUM_PROBES; i++){
+            this.probes[i] = random.nextInt(3 * this.width + 2) - 1;
+        }
+    }
+
+    @Benchmark
+    public int countLessOrEqual(){
+        int probe = this.probes[this.next];
+        this.next = (this.next + 1) & (NUM_PROBES - 1);
+        return this.search.countLessOrEqual(this.keys, this.width, probe);
+    }
+}
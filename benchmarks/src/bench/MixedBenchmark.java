@@ -0,0 +1,93 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A read/write mix on a tree loaded like the one of ReadBenchmark. The keys follow the distribution over both the
+ * loaded even keys and the odd keys between them; readPercent of the operations search the key and the others write
+ * it, deleting it if it is in the tree and inserting it otherwise, so the tree stays about the same size. A
+ * bufferCapacity other than 0 runs the mix on the write buffered mode of the tree, which is meant for the write heavy
+ * mixes such as readPercent 9.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class MixedBenchmark {
+    @Param({"64"})
+    int order;
+
+    /** order of the leaf nodes, 0 for the same order as the index nodes */
+    @Param({"0"})
+    int leafOrder;
+
+    @Param({"1000000"})
+    int size;
+
+    @Param({"RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"9", "50", "90", "99"})
+    int readPercent;
+
+    /** maximum number of pending messages of an index node, 0 to write the leaf nodes directly */
+    @Param({"0", "4096"})
+    int bufferCapacity;
+
+    TreeOps tree;
+    int[] keys;
+    boolean[] reads;
+    //which of the keys 0 to 2 * size - 1 are in the tree, so that a write knows whether to insert or delete
+    boolean[] present;
+    int next;
+
+    @Setup
+    public void setup(){
+        this.tree = ReadBenchmark.load(this.order, this.leafOrder, this.size);
+        if(this.bufferCapacity > 0){
+            this.tree.enableWriteBuffering(this.bufferCapacity);
+        }
+        this.present = new boolean[2 * this.size];
+        for(int i = 0; i < this.size; i++){
+            this.present[2 * i] = true;
+        }
+        this.keys = this.distribution.generate(ReadBenchmark.SEQUENCE_LENGTH, 2 * this.size, 1);
+        this.reads = new boolean[ReadBenchmark.SEQUENCE_LENGTH];
+        Random random = new Random(2);
+        for(int i = 0; i < this.reads.length; i++){
+            this.reads[i] = random.nextInt(100) < this.readPercent;
+        }
+    }
+
+    @Benchmark
+    public Double readWrite(){
+        int i = this.next;
+        this.next = (i + 1) & (ReadBenchmark.SEQUENCE_LENGTH - 1);
+        int key = this.keys[i];
+        if(this.reads[i]){
+            return this.tree.search(key);
+        }
+        if(this.present[key]){
+            this.tree.delete(key);
+        }else{
+            this.tree.insert(key, key);
+        }
+        this.present[key] = !this.present[key];
+        return null;
+    }
+}
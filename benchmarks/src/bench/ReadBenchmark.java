@@ -0,0 +1,96 @@
+package bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Point and range searches on a tree loaded with the even keys 0, 2, ..., 2 * (size - 1), inserted in random order.
+ * The searched keys follow the distribution, so SEQUENTIAL measures a scan of the tree in key order with hot caches,
+ * RANDOM a lookup that misses the caches and ZIPFIAN a skewed workload whose hot keys stay cached.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ReadBenchmark {
+    /** length of the pre-generated key sequence, a power of two so that it wraps around with a mask */
+    static final int SEQUENCE_LENGTH = 1 << 20;
+
+    @Param({"8", "64", "256"})
+    int order;
+
+    /** order of the leaf nodes, 0 for the same order as the index nodes */
+    @Param({"0"})
+    int leafOrder;
+
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    /** number of loaded keys covered by a range search */
+    @Param({"100"})
+    int rangeWidth;
+
+    TreeOps tree;
+    int[] keys;
+    int next;
+
+    @Setup
+    public void setup(){
+        this.tree = load(this.order, this.leafOrder, this.size);
+        this.keys = this.distribution.generate(SEQUENCE_LENGTH, this.size, 1);
+        for(int i = 0; i < this.keys.length; i++){
+            this.keys[i] *= 2;
+        }
+    }
+
+    /**
+     * Builds a tree holding the even keys 0 to 2 * (size - 1), inserted in random order so that the nodes are as full
+     * as after a random workload
+     * @param order - order of the index nodes
+     * @param leafOrder - order of the leaf nodes, 0 for the order of the index nodes
+     * @param size - number of pairs
+     * @return - the tree
+     */
+    static TreeOps load(int order, int leafOrder, int size){
+        TreeOps tree = TreeOps.newBPlusTree(order, leafOrder);
+        for(int i : KeyDistribution.permutation(size, new Random(0))){
+            tree.insert(2 * i, i);
+        }
+        return tree;
+    }
+
+    private int nextKey(){
+        int key = this.keys[this.next];
+        this.next = (this.next + 1) & (SEQUENCE_LENGTH - 1);
+        return key;
+    }
+
+    @Benchmark
+    public Double pointSearch(){
+        return this.tree.search(nextKey());
+    }
+
+    @Benchmark
+    public List<Double> rangeSearch(){
+        int key = nextKey();
+        return this.tree.search(key, key + 2 * (this.rangeWidth - 1));
+    }
+}
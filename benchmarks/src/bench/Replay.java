@@ -0,0 +1,45 @@
+package bench;
+
+import java.nio.file.Path;
+
+/**
+ * The replay of an operation file by bplustree.main, implemented by the ReplayOps adapter in the default package, see
+ * TreeOps
+ */
+public interface Replay {
+    /**
+     * Decodes every operation of an operation file without running it
+     * @param input - the operation file
+     * @param binary - true for the binary format, false for the text one
+     * @return - number of operations
+     * @throws Exception - if the file cannot be read
+     */
+    long parse(Path input, boolean binary) throws Exception;
+
+    /**
+     * Runs an operation file on a tree as bplustree.main does
+     * @param input - the operation file
+     * @param output - the result file
+     * @param binary - true for the binary format, false for the text one
+     * @param pipelined - true to parse, run and write the results on separate threads, as with --pipelined
+     * @return - number of operations
+     * @throws Exception - if a file cannot be read or written
+     */
+    long replay(Path input, Path output, boolean binary, boolean pipelined) throws Exception;
+
+    /**
+     * Converts a text operation file to the binary format
+     * @param text - the text file
+     * @param binary - the binary file
+     * @throws Exception - if a file cannot be read or written
+     */
+    void convert(Path text, Path binary) throws Exception;
+
+    static Replay newReplay(){
+        try {
+            return (Replay) Class.forName("ReplayOps").getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("the tree classes are not on the class path", e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The replay of an operation file of LINES lines by bplustree.main, in lines per second: parse decodes the file alone,
+ * replay also runs it on a tree and writes the results, and replayPipelined does the same on three threads. The file is
+ * generated in the temporary directory, in the text format and converted to the binary one: 60% inserts, 15% deletes,
+ * 20% point searches and 5% range searches of random keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ReplayBenchmark {
+    static final int LINES = 1000000;
+
+    @Param({"text", "binary"})
+    String format;
+
+    Replay replay;
+    Path input;
+    Path output;
+    boolean binary;
+
+    @Setup
+    public void setup() throws Exception {
+        this.replay = Replay.newReplay();
+        this.input = Files.createTempFile("operations", ".txt");
+        this.output = Files.createTempFile("results", ".txt");
+        Random random = new Random(0);
+        try(BufferedWriter writer = Files.newBufferedWriter(this.input)){
+            writer.write("Initialize(64)");
+            writer.newLine();
+            for(int i = 1; i < LINES; i++){
+                int op = random.nextInt(100);
+                int key = random.nextInt(LINES);
+                if(op < 60){
+                    writer.write("Insert(" + key + ", " + String.format(Locale.ROOT, "%.4f",
+                            2000 * random.nextDouble() - 1000) + ")");
+                }else if(op < 75){
+                    writer.write("Delete (" + key + ")");
+                }else if(op < 95){
+                    writer.write("Search(" + key + ")");
+                }else{
+                    writer.write("Search(" + key + ", " + (key + 40) + ")");
+                }
+                writer.newLine();
+            }
+        }
+        this.binary = this.format.equals("binary");
+        if(this.binary){
+            Path text = this.input;
+            this.input = Files.createTempFile("operations", ".ops");
+            this.replay.convert(text, this.input);
+            Files.delete(text);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.input);
+        Files.deleteIfExists(this.output);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long parse() throws Exception {
+        return this.replay.parse(this.input, this.binary);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long replay() throws Exception {
+        return this.replay.replay(this.input, this.output, this.binary, false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long replayPipelined() throws Exception {
+        return this.replay.replay(this.input, this.output, this.binary, true);
+    }
+}
@@ -0,0 +1,34 @@
+package bench;
+
+/**
+ * An in-node search kernel under benchmark, implemented by the SearchKernelOps adapter in the default package, see
+ * TreeOps
+ */
+public interface SearchKernel {
+    int countLessOrEqual(int[] keys, int n, int key);
+
+    /**
+     * Creates a kernel through its adapter
+     * @param scalar - true for the scalar binary search, false for the search KeySearch selects for the node width
+     * @return - the kernel
+     */
+    static SearchKernel newKernel(boolean scalar){
+        try {
+            return (SearchKernel) Class.forName("SearchKernelOps").getConstructor(boolean.class).newInstance(scalar);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("the tree classes are not on the class path", e);
+        }
+    }
+
+    /**
+     * Check if KeySearch loaded its SIMD kernel
+     * @return - boolean value
+     */
+    static boolean isVectorized(){
+        try {
+            return (boolean) Class.forName("KeySearch").getMethod("isVectorized").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("the tree classes are not on the class path", e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes from several threads to one ShardedBPlusTree, loaded like the tree of ReadBenchmark but with the keys spread
+ * over the whole int range. Every thread inserts keys of its own random sequence and deletes each of them WINDOW
+ * inserts later, so the tree keeps its size. With one shard every write takes the same lock, which is the baseline
+ * the other shard counts are compared with; run with -t to change the number of threads.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(4)
+public class ShardedBenchmark {
+    static final int WINDOW = 1 << 12;
+
+    @State(Scope.Benchmark)
+    public static class Tree {
+        @Param({"1", "4", "16"})
+        int numShards;
+
+        @Param({"64"})
+        int order;
+
+        @Param({"1000000"})
+        int size;
+
+        TreeOps tree;
+
+        @Setup
+        public void setup(){
+            this.tree = TreeOps.newShardedBPlusTree(this.numShards, this.order);
+            Random random = new Random(0);
+            for(int i = 0; i < this.size; i++){
+                //even keys, so that they never collide with the odd keys of the writers
+                this.tree.insert(random.nextInt() & ~1, i);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        int[] keys;
+        int next;
+
+        @Setup
+        public void setup(){
+            this.keys = new int[ReadBenchmark.SEQUENCE_LENGTH];
+            Random random = new Random(Thread.currentThread().getId());
+            for(int i = 0; i < this.keys.length; i++){
+                this.keys[i] = random.nextInt() | 1;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void insertDelete(Tree tree, Writer writer){
+        int i = writer.next;
+        writer.next = (i + 1) & (ReadBenchmark.SEQUENCE_LENGTH - 1);
+        tree.tree.insert(writer.keys[i], i);
+        tree.tree.delete(writer.keys[(i - WINDOW) & (ReadBenchmark.SEQUENCE_LENGTH - 1)]);
+    }
+}
@@ -0,0 +1,56 @@
+package bench;
+
+import java.util.List;
+
+/**
+ * The operations of a tree under benchmark. JMH only accepts benchmarks in a named package, which cannot import the
+ * classes of the tree as they are in the default package, so every tree is wrapped by an adapter class in the default
+ * package that implements this interface and is created by name.
+ */
+public interface TreeOps {
+    void insert(int key, double value);
+
+    Double search(int key);
+
+    List<Double> search(int key1, int key2);
+
+    void delete(int key);
+
+    /**
+     * Turns on the write buffered mode of a tree that has one, see bplustree.enableWriteBuffering
+     * @param bufferCapacity - maximum number of pending messages of an index node
+     */
+    default void enableWriteBuffering(int bufferCapacity){
+        throw new UnsupportedOperationException(getClass().getName() + " has no write buffered mode");
+    }
+
+    /**
+     * Creates an empty bplustree through its adapter
+     * @param indexOrder - order of the index nodes
+     * @param leafOrder - order of the leaf nodes, 0 for the order of the index nodes
+     * @return - the tree
+     */
+    static TreeOps newBPlusTree(int indexOrder, int leafOrder){
+        try {
+            return (TreeOps) Class.forName("BPlusTreeOps").getConstructor(int.class, int.class)
+                    .newInstance(indexOrder, leafOrder == 0 ? indexOrder : leafOrder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("the tree classes are not on the class path", e);
+        }
+    }
+
+    /**
+     * Creates an empty ShardedBPlusTree through its adapter
+     * @param numShards - number of shards
+     * @param order - order of the trees of the shards
+     * @return - the tree
+     */
+    static TreeOps newShardedBPlusTree(int numShards, int order){
+        try {
+            return (TreeOps) Class.forName("ShardedBPlusTreeOps").getConstructor(int.class, int.class)
+                    .newInstance(numShards, order);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("the tree classes are not on the class path", e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Inserts and deletes on a tree loaded like the one of ReadBenchmark. Every invocation runs a batch of BATCH writes,
+ * and the batch is undone before the next invocation, outside of the measurement, so the tree keeps its size however
+ * long the benchmark runs. Inserts add odd keys, which fall between the loaded ones, and deletes remove loaded keys;
+ * both follow the distribution. A key a Zipfian batch deletes twice is only found the first time.
+ *
+ * The per-operation times of SampleTime are the times of a batch divided by BATCH, so they are averages over a batch
+ * rather than the latency of single writes; the tail of the distribution shows the batches that split or merged most.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class WriteBenchmark {
+    static final int BATCH = 1000;
+
+    @State(Scope.Thread)
+    public static class Workload {
+        @Param({"8", "64", "256"})
+        int order;
+
+        /** order of the leaf nodes, 0 for the same order as the index nodes */
+        @Param({"0"})
+        int leafOrder;
+
+        @Param({"100000", "1000000"})
+        int size;
+
+        @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+        KeyDistribution distribution;
+
+        TreeOps tree;
+        int[] sequence;
+        int[] batch = new int[BATCH];
+        int next;
+        boolean dirty;
+
+        @Setup(Level.Trial)
+        public void setup(){
+            this.tree = ReadBenchmark.load(this.order, this.leafOrder, this.size);
+            this.sequence = this.distribution.generate(ReadBenchmark.SEQUENCE_LENGTH, this.size, 1);
+        }
+
+        /**
+         * Copies the next BATCH key numbers of the sequence into batch
+         */
+        void nextBatch(){
+            for(int i = 0; i < BATCH; i++){
+                this.batch[i] = this.sequence[this.next];
+                this.next = (this.next + 1) & (ReadBenchmark.SEQUENCE_LENGTH - 1);
+            }
+        }
+    }
+
+    public static class InsertWorkload extends Workload {
+        @Setup(Level.Invocation)
+        public void undoLastBatch(){
+            if(this.dirty){
+                //every insert of the batch added a pair, even those of a repeated key
+                for(int k : this.batch){
+                    this.tree.delete(2 * k + 1);
+                }
+            }
+            nextBatch();
+            this.dirty = true;
+        }
+    }
+
+    public static class DeleteWorkload extends Workload {
+        @Setup(Level.Invocation)
+        public void undoLastBatch(){
+            if(this.dirty){
+                //a key deleted twice was only found once
+                int[] deleted = this.batch.clone();
+                Arrays.sort(deleted);
+                for(int i = 0; i < deleted.length; i++){
+                    if(i == 0 || deleted[i] != deleted[i - 1]){
+                        this.tree.insert(2 * deleted[i], deleted[i]);
+                    }
+                }
+            }
+            nextBatch();
+            this.dirty = true;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void insert(InsertWorkload workload){
+        TreeOps tree = workload.tree;
+        for(int k : workload.batch){
+            tree.insert(2 * k + 1, k);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void delete(DeleteWorkload workload){
+        TreeOps tree = workload.tree;
+        for(int k : workload.batch){
+            tree.delete(2 * k);
+        }
+    }
+}
@@ -1,22 +1,303 @@
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
 
 /**
  * A class that represents a B+ tree
  */
 public class bplustree {
-    private final int m;
+    //Sizes in bytes of the keys and of the pairs stored in a node, which decide the orders in forNodeSizes
+    static final int KEY_BYTES = 4;
+    static final int PAIR_BYTES = 12;
+
+    private final int indexOrder; //maximum number of children of an index node
+    private final int leafOrder; //a leaf node holds at most leafOrder - 1 pairs
+    private final boolean augmented; //whether the index nodes keep subtree counts and sums, see enableAugmentation
     private IndexNode root;
     private LeafNode leftMostLeaf; //A reference to the leftmost leaf node
 
+    //The index nodes visited by the last descent of a write operation, from the root down to the parent of the leaf,
+    //along with the slot of the child that was followed in each of them. pathNodes[pathDepth - 1] is the parent of
+    //the leaf and pathSlots[pathDepth - 1] is the index of the leaf in its children array
+    private IndexNode[] pathNodes;
+    private int[] pathSlots;
+    private int pathDepth;
+
+    //Maximum number of pending messages an index node holds before some of them are moved down, 0 if the tree is not
+    //write buffered, see enableWriteBuffering
+    private int bufferCapacity;
+    //The run of messages that flushBuffer applies to the leaf nodes, and the messages of a root that was removed while
+    //they were applied, which are applied after them
+    private MessageBuffer flushedMessages;
+    private MessageBuffer orphanedMessages;
+
     public bplustree(int m){
-        this.m = m;
-        this.root = null;
+        this(m, false);
+    }
+
+    /**
+     * @param m - order of the tree
+     * @param augmented - true to keep the number of pairs and the sum of the values of every subtree in the index
+     *                  nodes, which makes count, sum, rank and select run in O(log n) at the cost of keeping them up
+     *                  to date on every write
+     */
+    public bplustree(int m, boolean augmented){
+        this(m, m, augmented, null, null);
+    }
+
+    /**
+     * Creates a tree whose index nodes and leaf nodes have different orders. A lookup-heavy workload is usually best
+     * served by index nodes that span one or a few cache lines, which keeps the search in each of them cheap, and by
+     * wide leaves, which keep the tree shallow and the range scans sequential
+     * @param indexOrder - maximum number of children of an index node, at least 3
+     * @param leafOrder - order of the leaf nodes, which hold at most leafOrder - 1 pairs, at least 3
+     * @param augmented - whether the index nodes keep subtree counts and sums
+     */
+    public bplustree(int indexOrder, int leafOrder, boolean augmented){
+        this(indexOrder, leafOrder, augmented, null, null);
+        if(indexOrder < 3 || leafOrder < 3){
+            throw new IllegalArgumentException("the orders of the nodes must be at least 3, got " + indexOrder
+                    + " and " + leafOrder);
+        }
+    }
+
+    /**
+     * Creates a tree from nodes that were built elsewhere, e.g by a BulkLoader. The orders are not checked, so the
+     * single order constructors keep accepting an order of 2 as they always did
+     * @param indexOrder - order of the index nodes
+     * @param leafOrder - order of the leaf nodes
+     * @param augmented - whether the index nodes keep subtree counts and sums
+     * @param root - root index node, null if the tree has at most one leaf
+     * @param leftMostLeaf - the leftmost leaf node, null if the tree is empty
+     */
+    bplustree(int indexOrder, int leafOrder, boolean augmented, IndexNode root, LeafNode leftMostLeaf){
+        this.indexOrder = indexOrder;
+        this.leafOrder = leafOrder;
+        this.augmented = augmented;
+        this.root = root;
+        this.leftMostLeaf = leftMostLeaf;
+        this.pathNodes = new IndexNode[8];
+        this.pathSlots = new int[8];
+    }
+
+    /**
+     * Creates a tree whose node orders are chosen to fit target node sizes in bytes rather than given directly. The
+     * sizes count the keys that an index node searches and the keys and values of a leaf, not the object headers and
+     * child references, e.g 64 or 128 bytes for index nodes that fit one or two cache lines and 4096 bytes for leaves
+     * @param indexNodeBytes - size of the keys of an index node, at least 12 bytes
+     * @param leafNodeBytes - size of the pairs of a leaf node, at least 36 bytes
+     * @param augmented - whether the index nodes keep subtree counts and sums
+     * @return - a new empty bplustree
+     */
+    public static bplustree forNodeSizes(int indexNodeBytes, int leafNodeBytes, boolean augmented){
+        //the key and pair arrays have one spare slot for a node that is overfull before it is split
+        return new bplustree(indexNodeBytes / KEY_BYTES, leafNodeBytes / PAIR_BYTES, augmented);
+    }
+
+    /**
+     * getter for indexOrder variable
+     * @return - maximum number of children of an index node
+     */
+    public int getIndexOrder() {
+        return indexOrder;
+    }
+
+    /**
+     * getter for leafOrder variable
+     * @return - order of the leaf nodes, which hold at most leafOrder - 1 pairs
+     */
+    public int getLeafOrder() {
+        return leafOrder;
+    }
+
+    /**
+     * getter for bufferCapacity variable
+     * @return - maximum number of pending messages of an index node, 0 if the tree is not write buffered
+     */
+    public int getBufferCapacity() {
+        return bufferCapacity;
+    }
+
+    /**
+     * Turns on the write buffered mode, in which the index nodes are the buffers of a B-epsilon tree. An insert or a
+     * delete is added as a message to the buffer of the root instead of descending to a leaf node, and when a buffer
+     * holds more than bufferCapacity messages, all of them are moved down to the children in one pass. The leaf nodes
+     * then receive sorted batches of writes instead of single random ones, at the cost of a search looking up its key
+     * in the buffers on its path. A range search, cursor, stream, aggregate or reduce flushes every buffer first. A
+     * tree with a single leaf node has no index node and is written directly.
+     *
+     * A flush only pays off when it moves many messages to each child, so the capacity should be tens of times the
+     * index order, e.g 4096 for index nodes of order 16 to 64. Even then, a tree that fits in memory is written about
+     * as fast as without buffers and searched slower, so the mode is for write heavy loads of trees whose descents
+     * miss the caches; MixedBenchmark compares both modes
+     * @param bufferCapacity - maximum number of pending messages of an index node, at least 1
+     */
+    public void enableWriteBuffering(int bufferCapacity){
+        if(this.augmented){
+            throw new IllegalStateException("write buffering cannot be used on an augmented tree, whose subtree "
+                    + "counts and sums have to include every write");
+        }
+        if(bufferCapacity < 1){
+            throw new IllegalArgumentException("the buffer capacity must be at least 1, got " + bufferCapacity);
+        }
+        if(this.bufferCapacity == 0){
+            this.flushedMessages = new MessageBuffer();
+            this.orphanedMessages = new MessageBuffer();
+            for(int depth = 0; getFirstIndexNode(depth) != null; depth++){
+                for(IndexNode node = getFirstIndexNode(depth); node != null; node = node.getRightSibling()){
+                    node.enableBuffer();
+                }
+            }
+        }
+        this.bufferCapacity = bufferCapacity;
+    }
+
+    /**
+     * Applies every pending message to the leaf nodes and turns off the write buffered mode
+     */
+    public void disableWriteBuffering(){
+        flushBuffers();
+        for(int depth = 0; getFirstIndexNode(depth) != null; depth++){
+            for(IndexNode node = getFirstIndexNode(depth); node != null; node = node.getRightSibling()){
+                node.disableBuffer();
+            }
+        }
+        this.bufferCapacity = 0;
+        this.flushedMessages = null;
+        this.orphanedMessages = null;
+    }
+
+    /**
+     * Returns the leftmost index node at a depth, from which the rest of the level is reached through the right
+     * sibling references
+     * @param depth - depth of the level, 0 for the root
+     * @return - IndexNode reference, null if the index nodes do not go that deep
+     */
+    private IndexNode getFirstIndexNode(int depth){
+        Node node = this.root;
+        for(int i = 0; i < depth && node != null && !node.isLeaf; i++){
+            node = ((IndexNode) node).getChildren()[0];
+        }
+        return node == null || node.isLeaf ? null : (IndexNode) node;
+    }
+
+    /**
+     * Applies every pending message to the leaf nodes. The levels are emptied from the root down. A flush can split or
+     * merge index nodes and so move messages into a level that was already emptied, hence the levels are walked again
+     * until no message is found. Does nothing if the tree is not write buffered
+     */
+    public void flushBuffers(){
+        if(this.bufferCapacity == 0){
+            return;
+        }
+        boolean flushed = true;
+        while(flushed){
+            flushed = false;
+            for(int depth = 0; getFirstIndexNode(depth) != null; depth++){
+                for(IndexNode node = getFirstIndexNode(depth); node != null; node = node.getRightSibling()){
+                    while(node.getBuffer().size() > 0){
+                        flushBuffer(node);
+                        flushed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds an insert or a delete to the buffer of the root and flushes the root while it holds too many messages
+     * @param key - key of the message
+     * @param value - value of an insert
+     * @param type - MessageBuffer.INSERT or MessageBuffer.DELETE
+     */
+    private void bufferMessage(int key, double value, byte type){
+        this.root.getBuffer().add(key, value, type);
+        while(this.root != null && this.root.getBuffer().size() > this.bufferCapacity){
+            flushBuffer(this.root);
+        }
+    }
+
+    /**
+     * Moves every message of an index node one level down, in a single pass over the sorted buffer. The messages of
+     * an index child are appended to its buffer, and the children that overflow are flushed in turn; the messages
+     * for leaf children are applied to the leaf nodes
+     * @param node - the index node
+     */
+    private void flushBuffer(IndexNode node){
+        MessageBuffer buffer = node.getBuffer();
+        if(node.getChildren()[0].isLeaf){
+            buffer.moveAllTo(this.flushedMessages);
+            applyFlushedMessages();
+            return;
+        }
+        buffer.sort();
+        int numKeys = node.getCurrentDegree() - 1;
+        int from = 0;
+        for(int i = 0; i <= numKeys && from < buffer.size(); i++){
+            //a key equal to a separator key goes to the child right of it, as in getChildSubtreeIdxForAKey
+            int to = i == numKeys ? buffer.size() : buffer.lowerBound(node.getKeys()[i]);
+            if(to > from){
+                buffer.appendTo(((IndexNode) node.getChildren()[i]).getBuffer(), from, to);
+            }
+            from = to;
+        }
+        buffer.clear();
+
+        //a split or a merge below may change the children of node, so they are read again after every flush, and may
+        //move the messages of a child elsewhere, which empties its buffer
+        for(int i = 0; i < node.getCurrentDegree(); i++){
+            IndexNode indexChild = (IndexNode) node.getChildren()[i];
+            while(indexChild.getBuffer().size() > this.bufferCapacity){
+                flushBuffer(indexChild);
+            }
+        }
+    }
+
+    /**
+     * Applies the messages of flushedMessages to the leaf nodes in key order. As in insertAll, a leaf node is reused
+     * for as long as the keys stay in its key range and no split, borrow or merge has changed it. The messages of a
+     * root that is removed meanwhile are newer than these and are applied after them
+     */
+    private void applyFlushedMessages(){
+        long[] range = new long[2];
+        while(this.flushedMessages.size() > 0){
+            MessageBuffer messages = this.flushedMessages;
+            LeafNode leafNode = null;
+            for(int i = 0; i < messages.size(); i++){
+                int key = messages.getKey(i);
+                if(this.leftMostLeaf == null){ //the deletes emptied the tree
+                    if(messages.getType(i) == MessageBuffer.INSERT){
+                        this.leftMostLeaf = new LeafNode(this.leafOrder, key, messages.getValue(i));
+                    }
+                    leafNode = null;
+                    continue;
+                }
+                if(leafNode == null || key < range[0] || key >= range[1]){
+                    leafNode = getLeafNodeAndPath(key);
+                    getPathKeyRange(range);
+                }
+                if(messages.getType(i) == MessageBuffer.INSERT){
+                    if(insertIntoLeaf(leafNode, key, messages.getValue(i))){
+                        leafNode = null;
+                    }
+                }else{
+                    int idx = leafNode.search(key);
+                    if(idx != -1 && deletePairAndRebalance(leafNode, idx)){
+                        leafNode = null;
+                    }
+                }
+            }
+            messages.clear();
+            this.flushedMessages = this.orphanedMessages;
+            this.orphanedMessages = messages;
+        }
     }
 
     /**
@@ -27,9 +308,12 @@ public class bplustree {
     static final String DELETE = "Delete";
     static final String SEARCH = "Search";
     static final String NULL = "Null";
+    static final String PIPELINED = "--pipelined";
+    static final String BINARY = "--binary";
 
     /**
-     * Returns the leaf node for a given key
+     * Returns the leaf node for a given key. The descent is iterative and checks the isLeaf flag of a node instead of
+     * its type, so the loop allocates nothing and stays small enough to be inlined into its callers
      * @param node - Index node from which the search should start
      * @param key - key to be searched
      * @return - LeafNode that the key belongs to
@@ -39,99 +323,99 @@ public class bplustree {
         //the child references are c0,c1,c2,c3.. where c0 < k0 <= c1 < k1 <= c2
         //Hence, the index i of first key that is greater than target key is returned. The corresponding child at that
         //index will be pointer to a subtree that has value less than the key at index i
-        int idx = getChildSubtreeIdxForAKey(node, key);
-        Node child = node.getChildren()[idx];
-        if(child instanceof IndexNode){
-            return getLeafNode((IndexNode) child, key);
-        }else{
-            return (LeafNode) child;
+        Node child = node;
+        while(!child.isLeaf){
+            IndexNode indexNode = (IndexNode) child;
+            child = indexNode.getChildren()[indexNode.getChildSubtreeIdxForAKey(key)];
         }
+        return (LeafNode) child;
     }
 
     /**
-     * Returns the index of child subtree to which the key belongs to
-     * @param node - IndexNode under consideration for the search
-     * @param key - value for the search
-     * @return - index of the child subtree to which the key belongs to
+     * Returns the leaf node for a given key and records the path to it in pathNodes and pathSlots, so that a split
+     * or a merge can reach the parent of a node and the position of the node in it without searching for them
+     * @param key - key to be searched
+     * @return - LeafNode that the key belongs to
      */
-    private int getChildSubtreeIdxForAKey(IndexNode node, int key){
-        //Binary search
-        Integer[] keys = node.getKeys();
-
-        //r starts from currentDegree - 2 since r is 0-index based and number of keys = currentDegree - 1
-        int l = 0, r = node.getCurrentDegree() - 2;
-        while(l <= r){
-            int mid = l + (r - l) / 2;
-            if(keys[mid] <= key){
-                l = mid + 1;
-            }else{
-                r = mid - 1;
+    private LeafNode getLeafNodeAndPath(int key){
+        this.pathDepth = 0;
+        if(this.root == null){
+            return this.leftMostLeaf;
+        }
+        Node child = this.root;
+        while(!child.isLeaf){
+            IndexNode indexNode = (IndexNode) child;
+            int idx = indexNode.getChildSubtreeIdxForAKey(key);
+            if(this.pathDepth == this.pathNodes.length){
+                this.pathNodes = Arrays.copyOf(this.pathNodes, this.pathDepth * 2);
+                this.pathSlots = Arrays.copyOf(this.pathSlots, this.pathDepth * 2);
             }
+            this.pathNodes[this.pathDepth] = indexNode;
+            this.pathSlots[this.pathDepth] = idx;
+            this.pathDepth++;
+            child = indexNode.getChildren()[idx];
         }
-        return l;
+        return (LeafNode) child;
     }
 
     /**
-     * Split pairs by copying half of the pairs in the original array to a new array
-     * @param leafNode - LeafNode whose pairs have to be split
-     * @param splitIdx- the index for split
-     * @return - an array of Pair that has the right half of the original pairs
+     * Adds the separator key and the new right node created by a split to the parent of the node that was split.
+     * If the node that was split is the root, a new root is created
+     * @param level - level of the parent in the recorded path, -1 if the node that was split is the root
+     * @param node - the node that was split
+     * @param newKey - the separator key between node and newSibling
+     * @param newSibling - the new right sibling of node
      */
-    private Pair[] splitPairs(LeafNode leafNode, int splitIdx){
-        Pair[] pairs = leafNode.getPairs() ;
-        Pair[] newLeafNodePairs = new Pair[this.m];
-        int k = 0;
-        for(int i = splitIdx; i < pairs.length; i++){
-            newLeafNodePairs[k++] = pairs[i];
-            leafNode.deletePair(i);
+    private void insertIntoParent(int level, Node node, int newKey, Node newSibling){
+        if(level < 0){
+            //A new index node is created and is set as the root node
+            int[] keys = new int[this.indexOrder];
+            keys[0] = newKey;
+            IndexNode newRoot = new IndexNode(this.indexOrder, keys);
+            if(this.augmented){
+                newRoot.enableAugmentation();
+            }
+            if(this.bufferCapacity > 0){
+                newRoot.enableBuffer();
+            }
+            newRoot.addChild(node);
+            newRoot.addChild(newSibling);
+            this.root = newRoot;
+            return;
         }
-        return newLeafNodePairs;
-    }
 
-    /**
-     * Split keys array at the splitIdx
-     * @param keys - Integer keys array to be split
-     * @param splitIdx - Index at which the keys array have to be split
-     * @return - new Integer array that contains all the key from splitIdx + 1 of the old keys array
-     */
-    private Integer[] splitKeys(Integer[] keys, int splitIdx){
-        Integer[] splitKeys = new Integer[this.m];
-        int k = 0;
-        keys[splitIdx] = null;
+        //node is at pathSlots[level] in the parent, so the separator key goes to the same index in the keys array
+        //and the new sibling goes right after node
+        IndexNode parent = this.pathNodes[level];
+        int idx = this.pathSlots[level];
+        parent.insertKey(newKey, idx);
+        parent.insertChild(newSibling, idx + 1);
+        parent.refreshChild(idx); //node lost the pairs or children that moved to newSibling
 
-        for(int i = splitIdx + 1; i < keys.length; i++){
-            splitKeys[k++] = keys[i];
-            keys[i] = null;
-        }
-        return splitKeys;
+        splitIndexNodeIfOverfull(level);
     }
 
     /**
-     * Split children array at the splitIdx
-     * @param node - Index node whose children have to be split
-     * @param splitIdx - Index at which the children array have to be split
-     * @return - new Node array that contains all the children from splitIdx + 1 of the old children array
+     * Adds a pair inserted into or deleted from the leaf node at the end of the last recorded path to the subtree
+     * counts and sums of the index nodes on the path
+     * @param count - change in the number of pairs
+     * @param sum - change in the sum of the values
      */
-    private Node[] splitChildren(IndexNode node, int splitIdx){
-        Node[] splitChildren = new Node[this.m + 1];
-        int k = 0;
-        Node[] children = node.getChildren();
-        for(int i = splitIdx + 1; i < children.length; i++){
-            splitChildren[k++] = children[i];
-            node.removeChild(i);
+    private void addToPath(long count, double sum){
+        if(!this.augmented){
+            return;
+        }
+        for(int level = 0; level < this.pathDepth; level++){
+            this.pathNodes[level].addToChild(this.pathSlots[level], count, sum);
         }
-        return splitChildren;
     }
 
     /**
-     * Split the index node if it is overfull
-     * @param indexNode - reference to the index node
+     * Split the index node at a level of the recorded path if it is overfull
+     * @param level - level of the index node in the recorded path
      */
-    private void splitIndexNodeIfOverfull(IndexNode indexNode){
-        if(indexNode == null){
-            return;
-        }
-
+    private void splitIndexNodeIfOverfull(int level){
+        IndexNode indexNode = this.pathNodes[level];
         if(!indexNode.isExceedingLimit()){
             return;
         }
@@ -139,27 +423,9 @@ public class bplustree {
         //The current index node is split by creating a new index node with half of the keys and child from the
         //old node.
 
-        int midIdx = (int) Math.ceil((this.m + 1) / 2.0) - 1;
+        int midIdx = (int) Math.ceil((this.indexOrder + 1) / 2.0) - 1;
         int newKey = indexNode.getKeys()[midIdx];
-        Integer[] splitKeys = splitKeys(indexNode.getKeys(), midIdx);
-        Node[] splitChildren = splitChildren(indexNode, midIdx);
-
-        //calculate new degree of the current index node
-        Node[] children = indexNode.getChildren();
-        for(int i = 0; i < children.length; i++){
-            if(children[i] == null){
-                indexNode.setCurrentDegree(i);
-                break;
-            }
-        }
-
-        //Create a new index node with split keys and children
-        IndexNode newSibling = new IndexNode(this.m, splitKeys, splitChildren);
-        Arrays.stream(splitChildren).forEach((child) -> {
-            if(child != null){
-                child.parent = newSibling;
-            }
-        });
+        IndexNode newSibling = indexNode.split(midIdx);
 
         //update sibling pointers
         newSibling.setRightSibling(indexNode.getRightSibling());
@@ -170,60 +436,21 @@ public class bplustree {
         newSibling.setLeftSibling(indexNode);
 
         //The key at the split index i.e midIdx is added to the parent and a new child pointer reference to the new
-        //index node is added in the parent
-        IndexNode parent = indexNode.parent;
-        if(parent != null){
-            parent.getKeys()[parent.getCurrentDegree() - 1] = newKey;
-            Arrays.sort(parent.getKeys(), 0, parent.getCurrentDegree());
-            int newSiblingIdx = parent.getChildIdx(indexNode) + 1;
-            parent.insertChild(newSibling, newSiblingIdx);
-            newSibling.parent = parent;
-        }else{
-            //A new index node is created and is set as the root node
-            Integer[] keys = new Integer[this.m];
-            keys[0] = newKey;
-            IndexNode newRoot = new IndexNode(this.m, keys);
-            newRoot.addChild(indexNode);
-            newRoot.addChild(newSibling);
-            indexNode.parent = newRoot;
-            newSibling.parent = newRoot;
-            this.root = newRoot;
-        }
-
-        //recursive call for the parent
-        splitIndexNodeIfOverfull(indexNode.parent);
+        //index node is added in the parent. This continues up the path until there are no overfull nodes
+        insertIntoParent(level - 1, indexNode, newKey, newSibling);
     }
 
     /**
-     * split the leaf node
+     * split the leaf node reached by the last recorded path
      * @param leafNode - the leaf node that is to be split
      */
     private void splitLeafNode(LeafNode leafNode){
-        int midIdx = (int)Math.ceil((this.m + 1) / 2.0) - 1;
-        Pair[] newLeafNodePairs = splitPairs(leafNode, midIdx);
-
-        if(leafNode.parent == null){
-            //If the parent is null, a new index node is created. The first key of this index node is equal
-            //to the first key of it's new child which is not added yet
-            Integer[] keys = new Integer[this.m];
-            keys[0] = newLeafNodePairs[0].key;
-            IndexNode parent = new IndexNode(this.m, keys);
-            leafNode.parent = parent;
-            parent.addChild(leafNode);
-        }else{
-            //parent is not null and hence, a new key is inserted to the parent and the parent keys are sorted
-            int newKey = newLeafNodePairs[0].key;
-            leafNode.parent.getKeys()[leafNode.parent.getCurrentDegree() - 1] = newKey;
-            Arrays.sort(leafNode.parent.getKeys(), 0, leafNode.parent.getCurrentDegree());
-        }
-
-        //Create a new leaf node with newLeafNodePairs created earlier
-        LeafNode newSibling = new LeafNode(this.m, newLeafNodePairs, leafNode.parent);
-
-        //Identify the index of the current leafNode in the parent's children reference array.
-        //The index is incremented by 1 since the new leaf node will be a right sibling of the current leaf node
-        int newSiblingIdx = leafNode.parent.getChildIdx(leafNode) + 1;
-        leafNode.parent.insertChild(newSibling, newSiblingIdx);
+        int midIdx = (int)Math.ceil((this.leafOrder + 1) / 2.0) - 1;
+        //The first key of the new leaf node becomes the separator key in the parent
+        int newKey = leafNode.getKey(midIdx);
+
+        //Create a new leaf node with the right half of the pairs
+        LeafNode newSibling = leafNode.split(midIdx);
 
         //Modify the sibling references to incorporate the newly added leaf node
         newSibling.setRightSibling(leafNode.getRightSibling());
@@ -233,41 +460,50 @@ public class bplustree {
         leafNode.setRightSibling(newSibling);
         newSibling.setLeftSibling(leafNode);
 
-        if(this.root != null){
-            splitIndexNodeIfOverfull(leafNode.parent);
-        }else{
-            this.root = leafNode.parent;
-        }
+        //If the leaf node has no parent i.e it is the only node in the tree, a new root is created
+        insertIntoParent(this.pathDepth - 1, leafNode, newKey, newSibling);
     }
 
     /**
      * Inserts a new key value pair into the B+ tree. If the inserted node causes a leaf node to be overfull,
      * a new leaf is created with half of the values from the overfull node and a new key is added to parent node along
      * with a child reference to the new node. If the parent node is overful,it is further split and the process
-     * continues untill there are no overfull nodes in the tree
+     * continues untill there are no overfull nodes in the tree. In a write buffered tree, the pair is added to the
+     * buffer of the root instead
      * @param key - key of the dictionary pair to be inserted
      * @param value - value of the dictionary pair to be inserted
      */
     public void insert(int key, double value){
-        Pair newPair = new Pair(key, value);
-
+        if(this.bufferCapacity > 0 && this.root != null){
+            bufferMessage(key, value, MessageBuffer.INSERT);
+            return;
+        }
         if(this.leftMostLeaf == null){ //There are no nodes in the tree
-            this.leftMostLeaf = new LeafNode(this.m, newPair);
+            this.leftMostLeaf = new LeafNode(this.leafOrder, key, value);
             return;
         }
 
-        LeafNode leafNode = this.root == null? this.leftMostLeaf : getLeafNode(this.root, key);
+        LeafNode leafNode = getLeafNodeAndPath(key);
+        insertIntoLeaf(leafNode, key, value);
+    }
 
-        if(!leafNode.addPair(newPair)){
-            //leaf node is full
-            int curNumPairs = leafNode.getCurNumPairs();
-            leafNode.getPairs()[curNumPairs] = newPair;
-            leafNode.setCurNumPairs(curNumPairs + 1);
-            leafNode.sortPairs();
-            //leaf node is overfull and needs to be split
-            splitLeafNode(leafNode);
+    /**
+     * Inserts a pair into a leaf node reached by the last recorded path and splits the leaf node if it overflows
+     * @param leafNode - the leaf node that the key belongs to
+     * @param key - key of the dictionary pair to be inserted
+     * @param value - value of the dictionary pair to be inserted
+     * @return - true if the leaf node was split
+     */
+    private boolean insertIntoLeaf(LeafNode leafNode, int key, double value){
+        addToPath(1, value);
+        if(leafNode.addPair(key, value)){
+            return false;
         }
-
+        //leaf node is full
+        leafNode.insertPair(key, value);
+        //leaf node is overfull and needs to be split
+        splitLeafNode(leafNode);
+        return true;
     }
 
     /**
@@ -279,9 +515,34 @@ public class bplustree {
         if(this.leftMostLeaf == null){
             return null;
         }
+        if(this.bufferCapacity > 0 && this.root != null){
+            return searchBuffered(this.root, key).search();
+        }
         LeafNode node = this.root == null ? this.leftMostLeaf : getLeafNode(this.root, key);
         int idx = node.search(key);
-        return idx == -1 ? null : node.getPairs()[idx].value;
+        return idx == -1 ? null : node.getValue(idx);
+    }
+
+    /**
+     * Search for a key in a write buffered tree, returning the pair that the search would find once the messages for
+     * the key on the path to its leaf node are applied. The messages are applied to a copy of the pairs with the key,
+     * from the deepest buffer, which holds the oldest of them, up to the root. The pending messages for other keys of
+     * the leaf node are not taken into account, though they can move the pairs with the key and so change which of
+     * several equal pairs a search finds
+     * @param node - root of the subtree to search
+     * @param key - the key to be searched
+     * @return - the pairs with the key, with the messages of the subtree applied
+     */
+    private static KeyRun searchBuffered(Node node, int key){
+        if(node.isLeaf){
+            return new KeyRun((LeafNode) node, key);
+        }
+        IndexNode indexNode = (IndexNode) node;
+        KeyRun run = searchBuffered(indexNode.getChildren()[indexNode.getChildSubtreeIdxForAKey(key)], key);
+        if(indexNode.getBuffer().size() > 0){
+            indexNode.getBuffer().applyTo(key, run);
+        }
+        return run;
     }
 
     /**
@@ -292,123 +553,423 @@ public class bplustree {
      */
     public List<Double> search(int key1, int key2){
         List<Double> result = new ArrayList<>();
+        RangeCursor cursor = cursor(key1, key2);
+        while(cursor.next()){
+            result.add(cursor.getValue());
+        }
+        return result;
+    }
 
+    /**
+     * Opens a cursor over the pairs whose keys fall in a range. Unlike search, the pairs are read lazily along the
+     * leaf nodes, so the caller can stop early and no memory is used per pair. The cursor must not be used after
+     * the tree is modified
+     * @param key1 - the lower bound of the range
+     * @param key2 - the higher bound of the range
+     * @return - a cursor positioned before the first pair in the range
+     */
+    public RangeCursor cursor(int key1, int key2){
+        flushBuffers();
         if(this.leftMostLeaf == null){
-            return result;
+            return new RangeCursor(null, 0, key2);
         }
-
         LeafNode node = this.root == null ? this.leftMostLeaf : getLeafNode(this.root, key1);
-        boolean stopLoop = false;
+        return new RangeCursor(node, node.lowerBound(key1), key2);
+    }
 
-        //Once a leaf node is found, keep traversing through it's right sibling until a key > high is found
-        while(node != null){
-            for(Pair pair : node.getPairs()){
-                if(pair == null){
-                    break;
+    /**
+     * Returns a lazy stream of the values whose keys fall in a range, in key order. The stream must be consumed
+     * before the tree is modified
+     * @param key1 - the lower bound of the range
+     * @param key2 - the higher bound of the range
+     * @return - DoubleStream of the values
+     */
+    public DoubleStream stream(int key1, int key2){
+        return StreamSupport.doubleStream(cursor(key1, key2), false);
+    }
+
+    /**
+     * Computes the count, sum, minimum, maximum and average of the values whose keys fall in a range. The subtrees
+     * that overlap the range are aggregated in parallel on the common fork-join pool and the values are never
+     * materialized. The tree must not be modified until the method returns
+     * @param key1 - the lower bound of the range
+     * @param key2 - the higher bound of the range
+     * @return - DoubleSummaryStatistics of the values in the range
+     */
+    public DoubleSummaryStatistics aggregate(int key1, int key2){
+        flushBuffers();
+        Node node = this.root == null ? this.leftMostLeaf : this.root;
+        return ForkJoinPool.commonPool().invoke(new RangeAggregateTask<>(node, key1, key2,
+                new RangeAggregateTask.Aggregator<DoubleSummaryStatistics>() {
+            @Override
+            public DoubleSummaryStatistics newResult(){
+                return new DoubleSummaryStatistics();
+            }
+
+            @Override
+            public DoubleSummaryStatistics accumulate(DoubleSummaryStatistics result, double[] values, int from,
+                                                      int to){
+                for(int i = from; i < to; i++){
+                    result.accept(values[i]);
                 }
-                if(pair.key >= key1 && pair.key <= key2){
-                    result.add(pair.value);
-                }else if(pair.key > key2){
-                    stopLoop = true;
-                    break;
+                return result;
+            }
+
+            @Override
+            public DoubleSummaryStatistics combine(DoubleSummaryStatistics left, DoubleSummaryStatistics right){
+                left.combine(right);
+                return left;
+            }
+        }));
+    }
+
+    /**
+     * Reduces the values whose keys fall in a range with a custom operator, in parallel like aggregate. The values
+     * are combined in key order but in an unspecified grouping, so the operator has to be associative
+     * @param key1 - the lower bound of the range
+     * @param key2 - the higher bound of the range
+     * @param identity - identity value of the operator, returned for an empty range
+     * @param op - associative operator that combines two values
+     * @return - the reduction of the values in the range
+     */
+    public double reduce(int key1, int key2, double identity, DoubleBinaryOperator op){
+        flushBuffers();
+        //the partial results are boxed once per leaf run, not once per value
+        Node node = this.root == null ? this.leftMostLeaf : this.root;
+        return ForkJoinPool.commonPool().invoke(new RangeAggregateTask<>(node, key1, key2,
+                new RangeAggregateTask.Aggregator<Double>() {
+            @Override
+            public Double newResult(){
+                return identity;
+            }
+
+            @Override
+            public Double accumulate(Double result, double[] values, int from, int to){
+                double value = result;
+                for(int i = from; i < to; i++){
+                    value = op.applyAsDouble(value, values[i]);
                 }
+                return value;
             }
-            if(stopLoop){
-                break;
+
+            @Override
+            public Double combine(Double left, Double right){
+                return op.applyAsDouble(left, right);
             }
-            node = node.getRightSibling();
+        }));
+    }
+
+    /**
+     * Throws if the tree does not keep subtree counts and sums
+     */
+    private void checkAugmented(){
+        if(!this.augmented){
+            throw new IllegalStateException("the tree was not created in augmented mode");
         }
+    }
 
-        return result;
+    /**
+     * Returns the number of pairs in the tree. Runs in O(1) on an augmented tree
+     * @return - long value
+     */
+    public long size(){
+        checkAugmented();
+        if(this.leftMostLeaf == null){
+            return 0;
+        }
+        return this.root == null ? this.leftMostLeaf.getCurNumPairs() : this.root.getSubtreeCount();
+    }
+
+    /**
+     * Counts the pairs whose keys fall in a range in O(log n) using the subtree counts. Requires an augmented tree
+     * @param key1 - the lower bound of the range
+     * @param key2 - the higher bound of the range
+     * @return - number of pairs in the range
+     */
+    public long count(int key1, int key2){
+        return aggregateRange(key1, key2, new double[1]);
+    }
+
+    /**
+     * Sums the values whose keys fall in a range in O(log n) using the subtree sums. Requires an augmented tree
+     * @param key1 - the lower bound of the range
+     * @param key2 - the higher bound of the range
+     * @return - sum of the values in the range
+     */
+    public double sum(int key1, int key2){
+        double[] sumHolder = new double[1];
+        aggregateRange(key1, key2, sumHolder);
+        return sumHolder[0];
+    }
+
+    /**
+     * Counts and sums the pairs in a range. The descent follows both bounds until they reach different children of an
+     * index node; from there the children in between are taken whole from the subtree counts and sums, and only the
+     * two boundary subtrees are descended into
+     * @param key1 - the lower bound of the range
+     * @param key2 - the higher bound of the range
+     * @param sumHolder - array whose first element is set to the sum of the values in the range
+     * @return - number of pairs in the range
+     */
+    private long aggregateRange(int key1, int key2, double[] sumHolder){
+        checkAugmented();
+        sumHolder[0] = 0;
+        if(this.leftMostLeaf == null || key1 > key2){
+            return 0;
+        }
+        Node node = this.root == null ? this.leftMostLeaf : this.root;
+        while(!node.isLeaf){
+            IndexNode indexNode = (IndexNode) node;
+            Node[] children = indexNode.getChildren();
+            int first = indexNode.getFirstChildIdxForAKey(key1);
+            int last = indexNode.getChildSubtreeIdxForAKey(key2);
+            if(first == last){
+                node = children[first];
+                continue;
+            }
+            long count = 0;
+            double sum = 0;
+            long[] childCounts = indexNode.getChildCounts();
+            double[] childSums = indexNode.getChildSums();
+            for(int i = first + 1; i < last; i++){
+                count += childCounts[i];
+                sum += childSums[i];
+            }
+            count += aggregateFrom(children[first], key1, sumHolder);
+            count += aggregateTo(children[last], key2, sumHolder);
+            sumHolder[0] += sum;
+            return count;
+        }
+        LeafNode leafNode = (LeafNode) node;
+        return sumLeafNode(leafNode, leafNode.lowerBound(key1), leafNode.upperBound(key2), sumHolder);
+    }
+
+    /**
+     * Counts and sums the pairs of a subtree whose keys are greater than or equal to a key
+     * @param node - root of the subtree
+     * @param key - the lower bound
+     * @param sumHolder - array whose first element the sum of the values is added to
+     * @return - number of pairs
+     */
+    private long aggregateFrom(Node node, int key, double[] sumHolder){
+        long count = 0;
+        while(!node.isLeaf){
+            IndexNode indexNode = (IndexNode) node;
+            int idx = indexNode.getFirstChildIdxForAKey(key);
+            long[] childCounts = indexNode.getChildCounts();
+            double[] childSums = indexNode.getChildSums();
+            for(int i = idx + 1; i < indexNode.getCurrentDegree(); i++){
+                count += childCounts[i];
+                sumHolder[0] += childSums[i];
+            }
+            node = indexNode.getChildren()[idx];
+        }
+        LeafNode leafNode = (LeafNode) node;
+        return count + sumLeafNode(leafNode, leafNode.lowerBound(key), leafNode.getCurNumPairs(), sumHolder);
+    }
+
+    /**
+     * Counts and sums the pairs of a subtree whose keys are less than or equal to a key
+     * @param node - root of the subtree
+     * @param key - the higher bound
+     * @param sumHolder - array whose first element the sum of the values is added to
+     * @return - number of pairs
+     */
+    private long aggregateTo(Node node, int key, double[] sumHolder){
+        long count = 0;
+        while(!node.isLeaf){
+            IndexNode indexNode = (IndexNode) node;
+            int idx = indexNode.getChildSubtreeIdxForAKey(key);
+            long[] childCounts = indexNode.getChildCounts();
+            double[] childSums = indexNode.getChildSums();
+            for(int i = 0; i < idx; i++){
+                count += childCounts[i];
+                sumHolder[0] += childSums[i];
+            }
+            node = indexNode.getChildren()[idx];
+        }
+        LeafNode leafNode = (LeafNode) node;
+        return count + sumLeafNode(leafNode, 0, leafNode.upperBound(key), sumHolder);
+    }
+
+    /**
+     * Sums a slice of the values of a leaf node
+     * @param leafNode - the leaf node
+     * @param from - index of the first pair, inclusive
+     * @param to - index of the last pair, exclusive
+     * @param sumHolder - array whose first element the sum is added to
+     * @return - number of pairs in the slice
+     */
+    private static long sumLeafNode(LeafNode leafNode, int from, int to, double[] sumHolder){
+        double[] values = leafNode.getValues();
+        for(int i = from; i < to; i++){
+            sumHolder[0] += values[i];
+        }
+        return Math.max(0, to - from);
+    }
+
+    /**
+     * Returns the rank of a key, i.e the number of pairs whose keys are less than it, in O(log n). Requires an
+     * augmented tree
+     * @param key - the key
+     * @return - long value between 0 and size()
+     */
+    public long rank(int key){
+        checkAugmented();
+        if(this.leftMostLeaf == null){
+            return 0;
+        }
+        long rank = 0;
+        Node node = this.root == null ? this.leftMostLeaf : this.root;
+        while(!node.isLeaf){
+            IndexNode indexNode = (IndexNode) node;
+            int idx = indexNode.getFirstChildIdxForAKey(key);
+            long[] childCounts = indexNode.getChildCounts();
+            for(int i = 0; i < idx; i++){
+                rank += childCounts[i];
+            }
+            node = indexNode.getChildren()[idx];
+        }
+        return rank + ((LeafNode) node).lowerBound(key);
+    }
+
+    /**
+     * Returns the key of the pair at a position in key order in O(log n). Requires an augmented tree
+     * @param position - 0 based position of the pair
+     * @return - int value of the key
+     */
+    public int selectKey(long position){
+        int[] idxHolder = new int[1];
+        return select(position, idxHolder).getKey(idxHolder[0]);
+    }
+
+    /**
+     * Returns the value of the pair at a position in key order in O(log n). Requires an augmented tree
+     * @param position - 0 based position of the pair
+     * @return - double value
+     */
+    public double selectValue(long position){
+        int[] idxHolder = new int[1];
+        return select(position, idxHolder).getValue(idxHolder[0]);
+    }
+
+    /**
+     * Finds the pair at a position in key order by skipping whole subtrees with the subtree counts
+     * @param position - 0 based position of the pair
+     * @param idxHolder - array whose first element is set to the index of the pair in the returned leaf node
+     * @return - the leaf node that holds the pair
+     */
+    private LeafNode select(long position, int[] idxHolder){
+        if(position < 0 || position >= size()){
+            throw new IndexOutOfBoundsException("position " + position + " is out of range for size " + size());
+        }
+        Node node = this.root == null ? this.leftMostLeaf : this.root;
+        while(!node.isLeaf){
+            IndexNode indexNode = (IndexNode) node;
+            long[] childCounts = indexNode.getChildCounts();
+            int idx = 0;
+            while(position >= childCounts[idx]){
+                position -= childCounts[idx];
+                idx++;
+            }
+            node = indexNode.getChildren()[idx];
+        }
+        idxHolder[0] = (int) position;
+        return (LeafNode) node;
     }
 
     /**
      * checks if a leafNode can borrow a pair from it's right sibling
      * @param leafNode - reference to a leaf node
+     * @param parent - parent of the leaf node
+     * @param idx - index of the leaf node in the parent's children array
      * @return - boolean value
      */
-    private boolean canBorrowFromRightSibling(LeafNode leafNode){
-        LeafNode rightSibling = leafNode.getRightSibling();
-        return rightSibling != null && rightSibling.parent == leafNode.parent && rightSibling.canLendAPair();
-
+    private boolean canBorrowFromRightSibling(LeafNode leafNode, IndexNode parent, int idx){
+        return idx < parent.getCurrentDegree() - 1 && leafNode.getRightSibling().canLendAPair();
     }
 
     /**
      * checks if an IndexNode can borrow a key from it's right sibling
      * @param indexNode - reference to an index node
+     * @param parent - parent of the index node
+     * @param idx - index of the index node in the parent's children array
      * @return - boolean value
      */
-    private boolean canBorrowFromRightSibling(IndexNode indexNode){
-        IndexNode rightSibling = indexNode.getRightSibling();
-        return rightSibling != null && rightSibling.parent == indexNode.parent && rightSibling.canLend();
+    private boolean canBorrowFromRightSibling(IndexNode indexNode, IndexNode parent, int idx){
+        return idx < parent.getCurrentDegree() - 1 && indexNode.getRightSibling().canLend();
     }
 
     /**
      * checks if a leafNode can borrow a pair from it's left sibling
      * @param leafNode - reference to a leaf node
+     * @param idx - index of the leaf node in the parent's children array
      * @return - boolean value
      */
-    private boolean canBorrowFromLeftSibling(LeafNode leafNode){
-        LeafNode leftSibling = leafNode.getLeftSibling();
-        return leftSibling != null && leftSibling.parent == leafNode.parent && leftSibling.canLendAPair();
+    private boolean canBorrowFromLeftSibling(LeafNode leafNode, int idx){
+        return idx > 0 && leafNode.getLeftSibling().canLendAPair();
     }
 
     /**
      * checks if an IndexNode can borrow a pair from it's left sibling
      * @param indexNode - reference to an index node
+     * @param idx - index of the index node in the parent's children array
      * @return - boolean value
      */
-    private boolean canBorrowFromLeftSibling(IndexNode indexNode){
-        IndexNode leftSibling = indexNode.getLeftSibling();
-        return leftSibling != null && leftSibling.parent == indexNode.parent && leftSibling.canLend();
+    private boolean canBorrowFromLeftSibling(IndexNode indexNode, int idx){
+        return idx > 0 && indexNode.getLeftSibling().canLend();
     }
 
     /**
      * checks if a leafNode can merge with it's right sibling
      * @param leafNode - reference to a leaf node
+     * @param parent - parent of the leaf node
+     * @param idx - index of the leaf node in the parent's children array
      * @return - boolean value
      */
-    private boolean canMergeWithRightSibling(LeafNode leafNode){
-        LeafNode rightSibling = leafNode.getRightSibling();
-        return rightSibling != null && rightSibling.parent == leafNode.parent && rightSibling.canMerge();
+    private boolean canMergeWithRightSibling(LeafNode leafNode, IndexNode parent, int idx){
+        return idx < parent.getCurrentDegree() - 1 && leafNode.getRightSibling().canMerge();
     }
 
     /**
      * checks if an IndexNode can merge with it's right sibling
      * @param indexNode - reference to an index node
+     * @param parent - parent of the index node
+     * @param idx - index of the index node in the parent's children array
      * @return - boolean value
      */
-    private boolean canMergeWithRightSibling(IndexNode indexNode){
-        IndexNode rightSibling = indexNode.getRightSibling();
-        return rightSibling != null && rightSibling.parent == indexNode.parent && rightSibling.canMerge();
+    private boolean canMergeWithRightSibling(IndexNode indexNode, IndexNode parent, int idx){
+        return idx < parent.getCurrentDegree() - 1 && indexNode.getRightSibling().canMerge();
     }
 
     /**
      * checks if a leafNode can merge with it's left sibling
      * @param leafNode - reference to a leaf node
+     * @param idx - index of the leaf node in the parent's children array
      * @return - boolean value
      */
-    private boolean canMergeWithLeftSibling(LeafNode leafNode){
-        LeafNode leftSibling = leafNode.getLeftSibling();
-        return leftSibling != null && leftSibling.parent == leafNode.parent && leftSibling.canMerge();
+    private boolean canMergeWithLeftSibling(LeafNode leafNode, int idx){
+        return idx > 0 && leafNode.getLeftSibling().canMerge();
     }
 
     /**
      * checks if an indexNode can merge with it's left sibling
      * @param indexNode - reference to an index node
+     * @param idx - index of the index node in the parent's children array
      * @return - boolean value
      */
-    private boolean canMergeWithLeftSibling(IndexNode indexNode){
-        IndexNode leftSibling = indexNode.getLeftSibling();
-        return leftSibling != null && leftSibling.parent == indexNode.parent && leftSibling.canMerge();
+    private boolean canMergeWithLeftSibling(IndexNode indexNode, int idx){
+        return idx > 0 && indexNode.getLeftSibling().canMerge();
     }
 
     /**
      * fix deficiency in an index node either by borrowing a key from sibling or merging with the sibling
-     * @param node - reference to an index node
+     * @param level - level of the index node in the recorded path
      */
-    public void fixDeficiencyInIndexNode(IndexNode node){
-        IndexNode parent = node.parent;
+    private void fixDeficiencyInIndexNode(int level){
+        IndexNode node = this.pathNodes[level];
+        IndexNode parent = level > 0 ? this.pathNodes[level - 1] : null;
+        int index = level > 0 ? this.pathSlots[level - 1] : -1; //index of node in the parent's children array
         IndexNode rightSibling = node.getRightSibling();
         IndexNode leftSibling = node.getLeftSibling();
 
@@ -420,23 +981,31 @@ public class bplustree {
             }
 
             Node[] children = node.getChildren();
-            if(children[0] instanceof IndexNode){
+            if(!children[0].isLeaf){
                 this.root = (IndexNode)children[0];
-                this.root.parent = null;
+                if(this.bufferCapacity > 0){
+                    //the messages of the old root are newer than those of its child
+                    node.getBuffer().moveAllTo(this.root.getBuffer());
+                }
             }else{
                 this.root = null;
+                if(this.bufferCapacity > 0){
+                    node.getBuffer().moveAllTo(this.orphanedMessages);
+                }
             }
-        }else if(canBorrowFromRightSibling(node)){
+        }else if(canBorrowFromRightSibling(node, parent, index)){
             //borrow first key and first child reference of the right sibling
             int borrowedKey = rightSibling.getKeys()[0];
             Node child = rightSibling.getChildren()[0];
-
-            int index = parent.getChildIdx(node);
+            if(this.bufferCapacity > 0){
+                //the messages for the keys of the borrowed child move with it
+                MessageBuffer buffer = rightSibling.getBuffer();
+                buffer.moveTo(node.getBuffer(), 0, buffer.lowerBound(borrowedKey));
+            }
 
             node.addChild(child);
             //Add the parent key to index node
             node.getKeys()[node.getCurrentDegree() - 2] = parent.getKeys()[index];
-            child.parent = node;
 
             //update the parent key to the borrowed key from right sibling
             parent.getKeys()[index] = borrowedKey;
@@ -444,21 +1013,21 @@ public class bplustree {
             //delete the lended key and child reference in the right sibling
             rightSibling.deleteKey(0);
             rightSibling.deleteChildReference(0);
-        }else if(canBorrowFromLeftSibling(node)){
+            parent.refreshChild(index);
+            parent.refreshChild(index + 1);
+        }else if(canBorrowFromLeftSibling(node, index)){
             //borrow last key and child reference of the left sibling
             int borrowedKey = leftSibling.getKeys()[leftSibling.getCurrentDegree() - 2];
             Node child = leftSibling.getChildren()[leftSibling.getCurrentDegree() - 1];
-
-            int index = parent.getChildIdx(node);
+            if(this.bufferCapacity > 0){
+                MessageBuffer buffer = leftSibling.getBuffer();
+                int from = buffer.lowerBound(borrowedKey);
+                buffer.moveTo(node.getBuffer(), from, buffer.size());
+            }
 
             //Add parent key to the 0th index of the index node
-            Integer[] nodeKeys = node.getKeys();
-            for(int i = node.getCurrentDegree() - 2; i >= 0; i--){
-                nodeKeys[i + 1] = nodeKeys[i];
-            }
-            nodeKeys[0] = parent.getKeys()[index - 1];
+            node.insertKey(parent.getKeys()[index - 1], 0);
             node.insertChild(child, 0);
-            child.parent = node;
 
             //update the parent key to the borrowed key from the left sibling
             parent.getKeys()[index - 1] = borrowedKey;
@@ -466,14 +1035,14 @@ public class bplustree {
             //delete the lended key and child from the left sibling
             leftSibling.deleteKey(leftSibling.getCurrentDegree() - 2);
             leftSibling.deleteChildReference(leftSibling.getCurrentDegree() - 1);
-        }else if(canMergeWithRightSibling(node)){
-            int index = parent.getChildIdx(node);
-
+            parent.refreshChild(index);
+            parent.refreshChild(index - 1);
+        }else if(canMergeWithRightSibling(node, parent, index)){
             //When merging with the right sibling, the new right sibling keys will consist of
             // all remaining keys from index node + parent key + right sibling keys
-            Integer[] newKeys = new Integer[this.m];
-            Integer[] nodeKeys = node.getKeys();
-            Integer[] rightSiblingKeys = rightSibling.getKeys();
+            int[] newKeys = new int[this.indexOrder];
+            int[] nodeKeys = node.getKeys();
+            int[] rightSiblingKeys = rightSibling.getKeys();
             int i;
             for(i = 0; i < node.getCurrentDegree() - 1; i++){
                 newKeys[i] = nodeKeys[i];
@@ -483,33 +1052,34 @@ public class bplustree {
                 newKeys[i++] = rightSiblingKeys[j];
             }
             rightSibling.setKeys(newKeys);
+            if(this.bufferCapacity > 0){
+                node.getBuffer().moveAllTo(rightSibling.getBuffer());
+            }
 
             //All the children of indexNode is prepended to the children of right sibling
             Node[] nodeChildren = node.getChildren();
             for (int k = nodeChildren.length - 1; k >= 0; k--) {
                 if (nodeChildren[k] != null) {
                     rightSibling.insertChild(nodeChildren[k], 0);
-                    nodeChildren[k].parent = rightSibling;
                 }
             }
 
             //The parent key and child reference to the indexNode is deleted
             parent.deleteKey(index);
             parent.deleteChildReference(index);
+            parent.refreshChild(index);
 
             //update sibling references
             rightSibling.setLeftSibling(node.getLeftSibling());
             if(rightSibling.getLeftSibling() != null){
                 rightSibling.getLeftSibling().setRightSibling(rightSibling);
             }
-        }else if(canMergeWithLeftSibling(node)){
-            int index = parent.getChildIdx(node);
-
+        }else if(canMergeWithLeftSibling(node, index)){
             //When merging with the left sibling, the new left sibling keys will consist of
             // left sibling keys + parent key + all remaining keys from index node
-            Integer[] newKeys = new Integer[this.m];
-            Integer[] leftSiblingKeys = leftSibling.getKeys();
-            Integer[] nodeKeys = node.getKeys();
+            int[] newKeys = new int[this.indexOrder];
+            int[] leftSiblingKeys = leftSibling.getKeys();
+            int[] nodeKeys = node.getKeys();
             int i = 0;
             for(i = 0; i < leftSibling.getCurrentDegree() - 1; i++){
                 newKeys[i] = leftSiblingKeys[i];
@@ -519,19 +1089,22 @@ public class bplustree {
                 newKeys[i++] = nodeKeys[j];
             }
             leftSibling.setKeys(newKeys);
+            if(this.bufferCapacity > 0){
+                node.getBuffer().moveAllTo(leftSibling.getBuffer());
+            }
 
             //All the children of indexNode is appended to the children of left sibling
             Node[] nodeChildren = node.getChildren();
             for(int k = 0; k < nodeChildren.length; k++){
                 if(nodeChildren[k] != null){
                     leftSibling.addChild(nodeChildren[k]);
-                    nodeChildren[k].parent = leftSibling;
                 }
             }
 
             //The parent key and child reference to the indexNode is deleted
             parent.deleteKey(index - 1);
             parent.deleteChildReference(index);
+            parent.refreshChild(index - 1);
 
             //update sibling references
             leftSibling.setRightSibling(node.getRightSibling());
@@ -543,82 +1116,119 @@ public class bplustree {
         //since merge operation results in a key and child reference being deleted from parent node, it is possible
         //that a parent node can become deficient. If so, handle that scenario
         if (parent != null && parent.isDeficient()) {
-            fixDeficiencyInIndexNode(parent);
+            fixDeficiencyInIndexNode(level - 1);
         }
     }
 
     /**
-     * Deletes a pair from B+ tree that has key equal to the target key
+     * Deletes a pair from B+ tree that has key equal to the target key. In a write buffered tree, the delete is added
+     * to the buffer of the root instead
      * @param key - target key
      */
     public void delete(int key){
-        if(this.leftMostLeaf == null){
+        if(this.bufferCapacity > 0 && this.root != null){
+            bufferMessage(key, 0, MessageBuffer.DELETE);
             return;
         }
+        remove(key);
+    }
+
+    /**
+     * Deletes a pair from B+ tree that has key equal to the target key. A write buffered tree is flushed first, as
+     * whether a pair has the key is only known once every pending message is applied
+     * @param key - target key
+     * @return - false if no pair has the key
+     */
+    boolean remove(int key){
+        flushBuffers();
+        if(this.leftMostLeaf == null){
+            return false;
+        }
 
-        LeafNode leafNode = this.root == null ? this.leftMostLeaf : getLeafNode(this.root, key);
+        LeafNode leafNode = getLeafNodeAndPath(key);
         int idx = leafNode.search(key);
 
         if(idx == -1){
-            return; //the key is not found in the B+ tree
+            return false; //the key is not found in the B+ tree
         }
 
-        //delete the pair from leaf node and sort all the pairs
+        deletePairAndRebalance(leafNode, idx);
+        return true;
+    }
+
+    /**
+     * Deletes a pair from a leaf node reached by the last recorded path. If the leaf node becomes deficient, it
+     * borrows a pair from a sibling or is merged with a sibling, which may in turn make the index nodes above it
+     * deficient
+     * @param leafNode - the leaf node that holds the pair
+     * @param idx - index of the pair in the leaf node
+     * @return - true if separator keys or nodes of the tree were changed to fix a deficiency
+     */
+    private boolean deletePairAndRebalance(LeafNode leafNode, int idx){
+        //delete the pair from leaf node, the remaining pairs stay sorted
+        addToPath(-1, -leafNode.getValue(idx));
         leafNode.deletePair(idx);
-        leafNode.sortPairs();
 
-        if(leafNode.isDeficient()){
+        boolean deficient = leafNode.isDeficient();
+        if(deficient){
 
             LeafNode rightSibling = leafNode.getRightSibling();
             LeafNode leftSibling = leafNode.getLeftSibling();
-            IndexNode parent = leafNode.parent;
 
-            if(canBorrowFromRightSibling(leafNode)){
+            if(this.pathDepth == 0){
+                //incase the last remaining pair of a B+ tree is deleted
+                if(leafNode.getCurNumPairs() == 0){
+                    this.leftMostLeaf = null;
+                }
+                return true;
+            }
+
+            //the parent of the leaf node and the index of the leaf node in the parent's children array
+            IndexNode parent = this.pathNodes[this.pathDepth - 1];
+            idx = this.pathSlots[this.pathDepth - 1];
+
+            if(canBorrowFromRightSibling(leafNode, parent, idx)){
                 //the first pair from right sibling is added to the leaf node
-                //the first pair in right sibling is deleted and remaining pairs are sorted
+                //the first pair in right sibling is deleted and remaining pairs are shifted to the left
                 //parent key is updated if needed
-                Pair borrowedPair = rightSibling.getPairs()[0];
-                leafNode.addPair(borrowedPair);
+                int borrowedKey = rightSibling.getKey(0);
+                leafNode.addPair(borrowedKey, rightSibling.getValue(0));
                 rightSibling.deletePair(0);
-                rightSibling.sortPairs();
 
                 //idx is the index of key which is greater than all the values in the left subtree of key
                 //i.e parent.children[idx]. Hence, when a pair is borrowed from right sibling, the parent key has to be
                 //updated if borrowed pair key is >= parent.keys[idx];
-                idx = parent.getChildIdx(leafNode);
-                if(borrowedPair.key >= parent.getKeys()[idx]){
-                    parent.getKeys()[idx] = rightSibling.getPairs()[0].key;
+                if(borrowedKey >= parent.getKeys()[idx]){
+                    parent.getKeys()[idx] = rightSibling.getKey(0);
                 }
-            }else if(canBorrowFromLeftSibling(leafNode)){
-                //the last pair in left sibling is added to the leaf node and pairs are sorted
+                parent.refreshChild(idx);
+                parent.refreshChild(idx + 1);
+            }else if(canBorrowFromLeftSibling(leafNode, idx)){
+                //the last pair in left sibling is added to the front of the leaf node
                 //the last pair in left sibling is deleted
                 //parent key is updated if needed
-                Pair borrowedPair = leftSibling.getPairs()[leftSibling.getCurNumPairs() - 1];
-                leafNode.addPair(borrowedPair);
-                leafNode.sortPairs();
+                int borrowedKey = leftSibling.getKey(leftSibling.getCurNumPairs() - 1);
+                leafNode.addPair(borrowedKey, leftSibling.getValue(leftSibling.getCurNumPairs() - 1));
                 leftSibling.deletePair(leftSibling.getCurNumPairs() - 1);
 
                 //idx - 1 is the index of key which is <=  the values in the right subtree of keys[idx - 1]
                 //i.e parent.children[idx]. Hence, when a pair is borrowed from left sibling, the parent key has to be
                 //updated if borrowed pair key is < parent.keys[idx - 1];
-                idx = parent.getChildIdx(leafNode);
-                if(borrowedPair.key < parent.getKeys()[idx - 1]){
-                    parent.getKeys()[idx - 1] = leafNode.getPairs()[0].key;
+                if(borrowedKey < parent.getKeys()[idx - 1]){
+                    parent.getKeys()[idx - 1] = leafNode.getKey(0);
                 }
-            }else if(canMergeWithRightSibling(leafNode)){
+                parent.refreshChild(idx);
+                parent.refreshChild(idx - 1);
+            }else if(canMergeWithRightSibling(leafNode, parent, idx)){
                 //while merging, the parent key is deleted and the left and right child of the parent are merged.
                 //While merging with the right sibling, all the remaining pairs of the leafnode are added to
                 //the right sibling
 
-                idx = parent.getChildIdx(leafNode);
                 parent.deleteKey(idx);
                 parent.deleteChildReference(idx);
 
-                for(int i = 0; i < leafNode.getPairs().length; i++){
-                    if(leafNode.getPairs()[i] != null){
-                        rightSibling.addPair(leafNode.getPairs()[i]);
-                    }
-                }
+                rightSibling.prependPairs(leafNode);
+                parent.refreshChild(idx);
 
                 //update sibling references
                 rightSibling.setLeftSibling(leafNode.getLeftSibling());
@@ -631,22 +1241,18 @@ public class bplustree {
                 //since a parent key and child is deleted, the parent degree might be < minimum degree of a node.
                 //If that is the case, need to fix the deficiency in the parent
                 if (parent.isDeficient()) {
-                    fixDeficiencyInIndexNode(parent);
+                    fixDeficiencyInIndexNode(this.pathDepth - 1);
                 }
-            }else if(canMergeWithLeftSibling(leafNode)){
+            }else if(canMergeWithLeftSibling(leafNode, idx)){
                 //while merging, the parent key is deleted and the left and right child of the parent are merged.
                 //While merging with the left sibling, all the remaining pairs of the leafnode are added to
                 //the left sibling
 
-                idx = parent.getChildIdx(leafNode);
                 parent.deleteKey(idx - 1);
                 parent.deleteChildReference(idx);
 
-                for(int i = 0; i < leafNode.getPairs().length; i++){
-                    if(leafNode.getPairs()[i] != null){
-                        leftSibling.addPair(leafNode.getPairs()[i]);
-                    }
-                }
+                leftSibling.appendPairs(leafNode);
+                parent.refreshChild(idx - 1);
 
                 //update sibling references
                 leftSibling.setRightSibling(leafNode.getRightSibling());
@@ -657,12 +1263,164 @@ public class bplustree {
                 //since a parent key and child is deleted, the parent degree might be < minimum degree of a node.
                 //If that is the case, need to fix the deficiency in the parent
                 if (parent.isDeficient()) {
-                    fixDeficiencyInIndexNode(parent);
+                    fixDeficiencyInIndexNode(this.pathDepth - 1);
                 }
+            }
+        }
+        return deficient;
+    }
 
-            }else if(this.root == null && this.leftMostLeaf.getCurNumPairs() == 0){
-                //incase the last remaining pair of a B+ tree is deleted
-                this.leftMostLeaf = null;
+    /**
+     * Returns the order in which a batch of keys is visited by the batch operations. Each key is packed with its
+     * position in the batch into a long, so sorting the longs sorts the batch by key and keeps equal keys in batch
+     * order without boxing
+     * @param keys - keys of the batch
+     * @return - sorted array of (key << 32 | position) values
+     */
+    private static long[] sortedBatch(int[] keys){
+        long[] order = new long[keys.length];
+        for(int i = 0; i < keys.length; i++){
+            order[i] = ((long) keys[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    /**
+     * Computes the range of keys that are routed to the leaf node at the end of the last recorded path. Deeper index
+     * nodes give tighter bounds, so a bound found at a lower level overrides the one found above it
+     * @param range - array in which range[0] is set to the inclusive lower bound and range[1] to the exclusive upper
+     *              bound. An unbounded side is Long.MIN_VALUE or Long.MAX_VALUE
+     */
+    private void getPathKeyRange(long[] range){
+        range[0] = Long.MIN_VALUE;
+        range[1] = Long.MAX_VALUE;
+        for(int level = 0; level < this.pathDepth; level++){
+            IndexNode node = this.pathNodes[level];
+            int slot = this.pathSlots[level];
+            if(slot > 0){
+                range[0] = node.getKeys()[slot - 1];
+            }
+            if(slot < node.getCurrentDegree() - 1){
+                range[1] = node.getKeys()[slot];
+            }
+        }
+    }
+
+    /**
+     * Inserts a batch of pairs. The batch is sorted by key and the tree is walked once: consecutive keys that fall in
+     * the key range of the current leaf node are inserted into it directly, and the tree is only descended again
+     * when a key leaves that range or a split has changed the leaf node. Pairs with equal keys are inserted in batch
+     * order, as if insert was called for each pair in turn
+     * @param keys - keys of the dictionary pairs to be inserted
+     * @param values - values[i] is the value of keys[i]
+     */
+    public void insertAll(int[] keys, double[] values){
+        if(keys.length != values.length){
+            throw new IllegalArgumentException("keys and values must have the same length");
+        }
+        if(this.bufferCapacity > 0){
+            //the buffers already batch the writes
+            for(int i = 0; i < keys.length; i++){
+                insert(keys[i], values[i]);
+            }
+            return;
+        }
+        long[] order = sortedBatch(keys);
+        long[] range = new long[2];
+        LeafNode leafNode = null;
+        for(long entry : order){
+            int key = (int)(entry >> 32);
+            double value = values[(int) entry];
+            if(this.leftMostLeaf == null){
+                insert(key, value);
+                continue;
+            }
+            if(leafNode == null || key < range[0] || key >= range[1]){
+                leafNode = getLeafNodeAndPath(key);
+                getPathKeyRange(range);
+            }
+            if(insertIntoLeaf(leafNode, key, value)){
+                leafNode = null; //the split changed the leaf node and its path
+            }
+        }
+    }
+
+    /**
+     * Searches for a batch of keys. The batch is sorted by key and a leaf node is reused for as long as the following
+     * keys fall in its key range
+     * @param keys - the keys to be searched
+     * @return - Double values where the i-th value is associated with keys[i], or null if keys[i] is not found
+     */
+    public Double[] searchAll(int[] keys){
+        Double[] result = new Double[keys.length];
+        if(this.leftMostLeaf == null){
+            return result;
+        }
+        if(this.bufferCapacity > 0 && this.root != null){
+            for(int i = 0; i < keys.length; i++){
+                result[i] = searchBuffered(this.root, keys[i]).search();
+            }
+            return result;
+        }
+        long[] order = sortedBatch(keys);
+        long low = Long.MIN_VALUE, high = Long.MIN_VALUE;
+        LeafNode leafNode = null;
+        for(long entry : order){
+            int key = (int)(entry >> 32);
+            if(key < low || key >= high){
+                //descend from the root, narrowing the key range of the subtree at every level
+                low = Long.MIN_VALUE;
+                high = Long.MAX_VALUE;
+                Node child = this.root == null ? this.leftMostLeaf : this.root;
+                while(!child.isLeaf){
+                    IndexNode indexNode = (IndexNode) child;
+                    int idx = indexNode.getChildSubtreeIdxForAKey(key);
+                    if(idx > 0){
+                        low = indexNode.getKeys()[idx - 1];
+                    }
+                    if(idx < indexNode.getCurrentDegree() - 1){
+                        high = indexNode.getKeys()[idx];
+                    }
+                    child = indexNode.getChildren()[idx];
+                }
+                leafNode = (LeafNode) child;
+            }
+            int idx = leafNode.search(key);
+            if(idx != -1){
+                result[(int) entry] = leafNode.getValue(idx);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes a batch of keys. The batch is sorted by key and a leaf node is reused for as long as the following keys
+     * fall in its key range and no borrow or merge has changed it
+     * @param keys - the keys to be deleted
+     */
+    public void deleteAll(int[] keys){
+        if(this.bufferCapacity > 0){
+            for(int key : keys){
+                delete(key);
+            }
+            return;
+        }
+        long[] order = sortedBatch(keys);
+        long[] range = new long[2];
+        LeafNode leafNode = null;
+        for(long entry : order){
+            if(this.leftMostLeaf == null){
+                return;
+            }
+            int key = (int)(entry >> 32);
+            if(leafNode == null || key < range[0] || key >= range[1]){
+                leafNode = getLeafNodeAndPath(key);
+                getPathKeyRange(range);
+            }
+            int idx = leafNode.search(key);
+            if(idx != -1 && deletePairAndRebalance(leafNode, idx)){
+                leafNode = null; //the leaf node or its separator keys were changed
             }
         }
     }
@@ -672,58 +1430,80 @@ public class bplustree {
      * @param args - arguments passed while invoking this java program
      */
     public static void main(String args[]){
-        if(args.length != 1){
-            System.out.println("Pass the input file name as an arguement to the java program");
+        boolean pipelined = false;
+        boolean binary = false;
+        for(int i = 1; i < args.length; i++){
+            pipelined |= args[i].equals(PIPELINED);
+            binary |= args[i].equals(BINARY);
+        }
+        if(args.length < 1 || args.length != 1 + (pipelined ? 1 : 0) + (binary ? 1 : 0)){
+            System.out.println("Pass the input file name as an arguement to the java program, followed by "
+                    + PIPELINED + " to parse, run and write the results on separate threads and by " + BINARY
+                    + " to read the operations from the binary file written by BinaryOperationWriter");
             return;
         }
 
         //All the outputs are written to a file named output_file.txt
-        try(BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter("output_file.txt"));
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(args[0]+".txt"))){
-            String line = bufferedReader.readLine();
-            bplustree tree = null;
-            while(line != null){
-                line = line.trim();
-                String[] parts = line.split("[,()]"); //Input will be of the form Insert(1,6.7), Search(1)
-
-                switch(parts[0].trim()){
-                    case INITIALIZE:
-                        tree = new bplustree(Integer.parseInt(parts[1].trim()));
-                        break;
-                    case INSERT:
-                        tree.insert(Integer.parseInt(parts[1].trim()), Double.parseDouble(parts[2].trim()));
-                        break;
-                    case SEARCH:
-                        String result = "";
-                        if(parts.length == 2){
-                            Double value = tree.search(Integer.parseInt(parts[1].trim()));
-                            result = value == null ? NULL : String.valueOf(value);
-                        }else{
-                            StringBuffer sb = new StringBuffer();
-                            List<Double> list = tree.search(Integer.parseInt(parts[1].trim()), Integer.parseInt(parts[2].trim()));
-                            if(list.size() == 0){
-                                sb.append(NULL);
-                            }else{
-                                list.forEach((value) -> sb.append(value).append(','));
-                                sb.deleteCharAt(sb.length() - 1);
-                            }
-                            bufferedWriter.write(sb.toString());
-                        }
-                        bufferedWriter.write(result);
-                        bufferedWriter.newLine();
-                        break;
-                    case DELETE:
-                        tree.delete(Integer.parseInt(parts[1].trim()));
-                        break;
-                    default:
-                        System.out.println("Invalid operation "+ parts[0]);
-                }
-
-                line = bufferedReader.readLine();
+        try(OperationSource reader = binary ? new BinaryOperationReader(Paths.get(args[0]+".ops"))
+                : new OperationReader(Paths.get(args[0]+".txt"));
+            ResultWriter writer = new ResultWriter(Paths.get("output_file.txt"))){
+            if(pipelined){
+                new PipelinedReplay(reader, writer).replay();
+            }else{
+                replay(reader, writer);
             }
         }catch(Exception e){
             e.printStackTrace();
         }
     }
+
+    /**
+     * Runs the operations of an operation file on a tree and writes the result of every search on its own line
+     * @param reader - the operation file
+     * @param writer - the result file
+     * @return - number of lines replayed
+     * @throws IOException - if a file cannot be read or written
+     */
+    static long replay(OperationSource reader, ResultWriter writer) throws IOException {
+        bplustree tree = null;
+        while(reader.next()){
+            switch(reader.getType()){
+                case OperationSource.INITIALIZE:
+                    tree = new bplustree(reader.getKey1());
+                    break;
+                case OperationSource.INSERT:
+                    tree.insert(reader.getKey1(), reader.getValue());
+                    break;
+                case OperationSource.SEARCH:
+                    Double value = tree.search(reader.getKey1());
+                    if(value == null){
+                        writer.writeNull();
+                    }else{
+                        writer.writeValue(value);
+                    }
+                    writer.newLine();
+                    break;
+                case OperationSource.RANGE_SEARCH:
+                    RangeCursor cursor = tree.cursor(reader.getKey1(), reader.getKey2());
+                    if(!cursor.next()){
+                        writer.writeNull();
+                    }else{
+                        writer.writeValue(cursor.getValue());
+                        while(cursor.next()){
+                            writer.writeChar(',');
+                            writer.writeValue(cursor.getValue());
+                        }
+                    }
+                    writer.newLine();
+                    break;
+                case OperationSource.DELETE:
+                    tree.delete(reader.getKey1());
+                    break;
+                default:
+                    System.out.println("Invalid operation "+ reader.getName());
+            }
+        }
+        return reader.getLineNumber();
+    }
 }
 
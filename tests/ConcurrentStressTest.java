@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stress checks of ConcurrentBPlusTree. Writer threads insert and delete disjoint sets of keys in random order while
+ * reader threads search single keys and ranges, at small orders where almost every insert splits a node. Both split
+ * modes are run: with lock coupling and with B-link splits, where readers and writers often reach a node whose new
+ * right sibling is not yet in the parent. Every pair has its key as value, so a reader can tell a pair that was read
+ * torn or from the wrong node. Run with make test, or with a number of keys per writer as argument for a longer run
+ */
+public class ConcurrentStressTest {
+    private static final int WRITERS = 4;
+    private static final int READERS = 2;
+    private static final int[] ORDERS = {3, 4, 5, 8, 64};
+
+    public static void main(String[] args) throws InterruptedException {
+        int keysPerWriter = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        for(int m : ORDERS){
+            stress(m, false, keysPerWriter);
+            stress(m, true, keysPerWriter);
+        }
+        System.out.println("ConcurrentStressTest passed");
+    }
+
+    /**
+     * Writer w inserts the keys k with k % WRITERS == w in a random order, checking that it finds each one right after
+     * inserting it, and then deletes every other one of them, checking that it no longer finds them. Readers run
+     * until the writers are done. The tree must end up with exactly the keys that were not deleted
+     * @param m - order of the tree
+     * @param bLink - true to split nodes B-link style
+     * @param keysPerWriter - number of keys inserted by each writer
+     */
+    private static void stress(int m, boolean bLink, int keysPerWriter) throws InterruptedException {
+        ConcurrentBPlusTree tree = new ConcurrentBPlusTree(m, bLink);
+        String name = (bLink ? "B-link" : "lock coupling") + ", order " + m;
+        int numKeys = WRITERS * keysPerWriter;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean writersDone = new AtomicBoolean();
+
+        List<Thread> writers = new ArrayList<>();
+        for(int w = 0; w < WRITERS; w++){
+            int writer = w;
+            writers.add(start(failure, () -> {
+                int[] keys = shuffledKeys(writer, keysPerWriter, new Random(writer));
+                for(int key : keys){
+                    tree.insert(key, key);
+                    Double value = tree.search(key);
+                    check(value != null && value == key, name + ": search after insert of " + key + " returned "
+                            + value);
+                }
+                for(int key : keys){
+                    if(isDeleted(key)){
+                        tree.delete(key);
+                        check(tree.search(key) == null, name + ": " + key + " found after its delete");
+                    }
+                }
+            }));
+        }
+        List<Thread> readers = new ArrayList<>();
+        for(int r = 0; r < READERS; r++){
+            int reader = r;
+            readers.add(start(failure, () -> {
+                Random random = new Random(100 + reader);
+                while(!writersDone.get()){
+                    int key1 = random.nextInt(numKeys);
+                    int key2 = key1 + random.nextInt(1000);
+                    checkRange(tree.search(key1, key2), key1, key2, name);
+                    Double value = tree.search(key1);
+                    check(value == null || value == key1, name + ": search of " + key1 + " returned " + value);
+                }
+            }));
+        }
+        join(writers);
+        writersDone.set(true);
+        join(readers);
+        if(failure.get() != null){
+            throw new AssertionError(name + " failed", failure.get());
+        }
+
+        List<Double> values = tree.search(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        int i = 0;
+        for(int key = 0; key < numKeys; key++){
+            if(!isDeleted(key)){
+                check(i < values.size() && values.get(i) == key, name + ": final scan is missing key " + key);
+                i++;
+            }
+        }
+        check(i == values.size(), name + ": final scan has " + values.size() + " pairs, expected " + i);
+    }
+
+    /**
+     * @param key - a key inserted by a writer
+     * @return - true if its writer deletes it again
+     */
+    private static boolean isDeleted(int key){
+        return (key / WRITERS) % 2 == 1;
+    }
+
+    private static int[] shuffledKeys(int writer, int keysPerWriter, Random random){
+        int[] keys = new int[keysPerWriter];
+        for(int i = 0; i < keysPerWriter; i++){
+            keys[i] = i * WRITERS + writer;
+        }
+        for(int i = keysPerWriter - 1; i > 0; i--){
+            int j = random.nextInt(i + 1);
+            int key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * A range search has to return the values of distinct keys in ascending order, all within the range. Pairs may
+     * come and go while it runs, so which of them it returns is not checked
+     */
+    private static void checkRange(List<Double> values, int key1, int key2, String name){
+        double previous = Double.NEGATIVE_INFINITY;
+        for(double value : values){
+            check(value > previous && value >= key1 && value <= key2,
+                    name + ": range search " + key1 + ".." + key2 + " returned " + values);
+            previous = value;
+        }
+    }
+
+    private static Thread start(AtomicReference<Throwable> failure, Runnable task){
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void join(List<Thread> threads) throws InterruptedException {
+        for(Thread thread : threads){
+            thread.join();
+        }
+    }
+
+    private static void check(boolean condition, String message){
+        if(!condition){
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Stress checks of PagedBPlusTree and its BufferPool. The trees use small pages and pools of a few frames, so nearly
+ * every descent evicts a page and dirty pages are written back all the time, and they are compared with a TreeMap
+ * after every operation. The file is closed and opened again along the way, so pages that were not written back
+ * would be lost. Run with make test, or with a number of operations per tree as argument for a longer run
+ */
+public class PagedStressTest {
+    public static void main(String[] args) throws IOException {
+        int numOperations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        clockEviction();
+        pinnedPageStaysCached();
+        int seed = 0;
+        for(int pageSize : new int[]{64, 72, 512}){
+            for(int poolPages : new int[]{8, 32}){
+                for(boolean compressedLeaves : new boolean[]{false, true}){
+                    randomOperations(pageSize, poolPages, compressedLeaves, numOperations, seed++);
+                }
+            }
+        }
+        System.out.println("PagedStressTest passed");
+    }
+
+    /**
+     * Writes many more pages than the pool has frames, each filled with its own id, and reads them back twice: once
+     * through the pool, after most of them were evicted, and once from the file after a flush. A page that is pinned
+     * over and over between the misses has its reference bit set each time and must stay cached
+     */
+    private static void clockEviction() throws IOException {
+        Path path = Files.createTempFile("paged", ".db");
+        try(PageFile file = new PageFile(path, 64)){
+            BufferPool pool = new BufferPool(file, 4);
+            for(int pageId = 0; pageId < 64; pageId++){
+                fillPage(pool.pinNew(pageId), pageId);
+                pool.unpin(pageId, true);
+            }
+            for(int pageId = 0; pageId < 64; pageId++){
+                checkPage(pool.pin(pageId), pageId, "page read back through the pool");
+                pool.unpin(pageId, false);
+            }
+            pool.flush();
+            ByteBuffer page = ByteBuffer.allocate(64);
+            for(int pageId = 0; pageId < 64; pageId++){
+                file.read(pageId, page);
+                checkPage(page, pageId, "page read back from the file");
+            }
+
+            int hot = 100;
+            fillPage(pool.pinNew(hot), hot);
+            pool.unpin(hot, true);
+            //every frame is referenced when the first miss comes, so its sweep clears them all and may evict the hot
+            //page, but from then on the hot page is pinned again before the clock hand comes back to it
+            long hits = 0;
+            for(int pageId = 0; pageId < 64; pageId++){
+                pool.pin(pageId);
+                pool.unpin(pageId, false);
+                long before = pool.getHits();
+                checkPage(pool.pin(hot), hot, "hot page");
+                pool.unpin(hot, false);
+                hits += pool.getHits() - before;
+            }
+            check(hits >= 63, "the hot page was evicted " + (64 - hits) + " times");
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * A pinned page must survive any number of misses, and a pool whose frames are all pinned must refuse to evict
+     */
+    private static void pinnedPageStaysCached() throws IOException {
+        Path path = Files.createTempFile("paged", ".db");
+        try(PageFile file = new PageFile(path, 64)){
+            BufferPool pool = new BufferPool(file, 4);
+            ByteBuffer pinned = pool.pinNew(0);
+            fillPage(pinned, 0);
+            for(int pageId = 1; pageId < 64; pageId++){
+                fillPage(pool.pinNew(pageId), pageId);
+                pool.unpin(pageId, true);
+            }
+            check(pool.pin(0) == pinned, "a pinned page was moved to another frame");
+            checkPage(pinned, 0, "pinned page");
+            pool.unpin(0, false);
+
+            for(int pageId = 1; pageId < 4; pageId++){
+                pool.pin(pageId);
+            }
+            try {
+                pool.pin(64);
+                throw new AssertionError("a page was evicted from a pool whose frames are all pinned");
+            } catch (IllegalStateException e) {
+                //expected
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Random inserts and deletes over a small key range with a search of the key after each of them and a range
+     * search now and then. Every few thousand operations the tree is closed and opened again, and every 10000
+     * operations ends with a run of deletes that empties it, so leaves and index nodes are freed and their pages
+     * reused by later splits
+     * @param pageSize - size of a page in bytes
+     * @param poolPages - number of frames of the buffer pool
+     * @param compressedLeaves - true to delta encode the keys of the leaves
+     * @param numOperations - number of inserts and deletes
+     * @param seed - seed of the workload
+     */
+    private static void randomOperations(int pageSize, int poolPages, boolean compressedLeaves, int numOperations,
+                                         int seed) throws IOException {
+        String name = "page size " + pageSize + ", " + poolPages + " frames" + (compressedLeaves ? ", compressed" : "");
+        Random random = new Random(seed);
+        Path path = Files.createTempFile("paged", ".db");
+        PagedBPlusTree tree = new PagedBPlusTree(path, pageSize, poolPages, compressedLeaves);
+        TreeMap<Integer, Double> expected = new TreeMap<>();
+        int range = 4000;
+        long misses = 0;
+        try {
+            for(int op = 0; op < numOperations; op++){
+                int key = random.nextInt(range);
+                boolean draining = op % 10000 >= 7000;
+                if(draining){
+                    Integer first = expected.ceilingKey(key);
+                    key = first != null ? first : expected.isEmpty() ? key : expected.firstKey();
+                }
+                if(!draining && random.nextInt(10) < 6){
+                    double value = random.nextDouble();
+                    tree.insert(key, value);
+                    expected.put(key, value);
+                }else{
+                    tree.delete(key);
+                    expected.remove(key);
+                }
+                Double value = tree.search(key);
+                check(Objects.equals(value, expected.get(key)),
+                        name + ", op " + op + ": search of " + key + " returned " + value);
+                if(op % 211 == 0){
+                    int key1 = random.nextInt(range);
+                    int key2 = key1 + random.nextInt(range / 4);
+                    check(tree.search(key1, key2).equals(new ArrayList<>(expected.subMap(key1, true, key2, true)
+                            .values())), name + ", op " + op + ": range search " + key1 + ".." + key2);
+                }
+                if(op % 3001 == 3000){
+                    misses += tree.getBufferPool().getMisses();
+                    tree.close();
+                    tree = new PagedBPlusTree(path, pageSize, poolPages, compressedLeaves);
+                    check(tree.search(Integer.MIN_VALUE, Integer.MAX_VALUE).equals(new ArrayList<>(expected.values())),
+                            name + ", op " + op + ": tree differs after it was opened again");
+                }
+                if(op % 10000 == 9999){
+                    check(expected.isEmpty(), name + ": the workload did not empty the tree");
+                }
+            }
+            misses += tree.getBufferPool().getMisses();
+            check(misses > numOperations / 10, name + ": only " + misses + " misses, the pool is too large");
+            tree.close();
+
+            //a larger pool has to read the same pages
+            try(PagedBPlusTree reopened = new PagedBPlusTree(path, pageSize, 4 * poolPages, compressedLeaves)){
+                for(int key = 0; key < range; key++){
+                    check(Objects.equals(reopened.search(key), expected.get(key)),
+                            name + ": key " + key + " after close");
+                }
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static void fillPage(ByteBuffer page, int pageId){
+        for(int i = 0; i + 4 <= page.capacity(); i += 4){
+            page.putInt(i, pageId);
+        }
+    }
+
+    private static void checkPage(ByteBuffer page, int pageId, String name){
+        for(int i = 0; i + 4 <= page.capacity(); i += 4){
+            check(page.getInt(i) == pageId, name + " " + pageId + " holds " + page.getInt(i));
+        }
+    }
+
+    private static void check(boolean condition, String message){
+        if(!condition){
+            throw new AssertionError(message);
+        }
+    }
+}
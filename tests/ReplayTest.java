@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Regression checks of the operation file replay of bplustree.main, which compare the lines of the result file with
+ * the ones the baseline tree writes. Run with make test
+ */
+public class ReplayTest {
+    public static void main(String[] args) throws IOException {
+        orderTwo();
+        duplicateKeys();
+        mergeWithDuplicates();
+        orderTwoRejectedByTwoOrderConstructor();
+        System.out.println("ReplayTest passed");
+    }
+
+    /**
+     * Initialize(2) builds a tree whose leaf nodes hold a single pair, which bplustree(int m) has always accepted
+     */
+    private static void orderTwo() throws IOException {
+        List<String> operations = Arrays.asList("Initialize(2)", "Insert(1, 1.0)", "Insert(2, 2.0)", "Insert(3, 3.0)",
+                "Insert(4, 4.0)", "Insert(5, 5.0)", "Delete (2)", "Search(3)", "Search(1, 5)");
+        List<String> expected = Arrays.asList("3.0", "1.0,3.0,4.0,5.0");
+        check(expected.equals(replay(operations, false)), "order 2 replay wrote " + replay(operations, false));
+        check(expected.equals(replay(operations, true)), "order 2 pipelined replay wrote " + replay(operations, true));
+    }
+
+    /**
+     * Search and delete act on the pair with the key that a binary search over the leaf node lands on first, which is
+     * not the first of several equal pairs
+     */
+    private static void duplicateKeys() throws IOException {
+        List<String> operations = Arrays.asList("Initialize(8)", "Insert(1, 1.0)", "Insert(2, 2.0)", "Insert(3, 3.0)",
+                "Insert(5, 5.1)", "Insert(5, 5.2)", "Insert(5, 5.3)", "Search(5)", "Delete (5)", "Search(5)",
+                "Delete (5)", "Search(5)", "Search(1, 5)");
+        List<String> expected = Arrays.asList("5.2", "5.1", "5.3", "1.0,2.0,3.0,5.3");
+        check(expected.equals(replay(operations, false)), "duplicate keys replay wrote " + replay(operations, false));
+    }
+
+    /**
+     * A deficient leaf node whose pair has the same key as the first pairs of its right sibling is merged into the
+     * sibling, where its pair goes after the equal pairs of the sibling
+     */
+    private static void mergeWithDuplicates() throws IOException {
+        List<String> operations = Arrays.asList("Initialize(5)", "Insert(1, 1.0)", "Insert(3, 3.1)", "Insert(3, 3.2)",
+                "Insert(3, 3.3)", "Insert(3, 3.4)", "Delete (3)", "Delete (1)", "Search(3)", "Search(1, 5)");
+        List<String> expected = Arrays.asList("3.4", "3.2,3.4,3.1");
+        check(expected.equals(replay(operations, false)), "merge with duplicates replay wrote "
+                + replay(operations, false));
+    }
+
+    /**
+     * The constructor with separate index and leaf orders is new and requires both to be at least 3
+     */
+    private static void orderTwoRejectedByTwoOrderConstructor(){
+        try{
+            new bplustree(2, 3, false);
+            throw new AssertionError("bplustree(2, 3, false) was accepted");
+        }catch(IllegalArgumentException e){
+            //expected
+        }
+    }
+
+    /**
+     * Replays operations from a temporary file and returns the lines of the result file
+     * @param operations - lines of the operation file
+     * @param pipelined - true to replay them with PipelinedReplay
+     * @return - lines of the result file
+     */
+    private static List<String> replay(List<String> operations, boolean pipelined) throws IOException {
+        Path input = Files.createTempFile("replay", ".txt");
+        Path output = Files.createTempFile("replay", ".out");
+        try{
+            Files.write(input, operations, StandardCharsets.UTF_8);
+            try(OperationSource reader = new OperationReader(input); ResultWriter writer = new ResultWriter(output)){
+                if(pipelined){
+                    new PipelinedReplay(reader, writer).replay();
+                }else{
+                    bplustree.replay(reader, writer);
+                }
+            }
+            return Files.readAllLines(output, StandardCharsets.UTF_8);
+        }finally{
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+    private static void check(boolean condition, String message){
+        if(!condition){
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Crash recovery checks of WriteAheadLog and DurableBPlusTree. A crash is simulated by copying the files of a log or a
+ * tree directory as they are at some point, cutting or damaging them the way a crash can, and opening the copy: it
+ * has to recover exactly the writes committed before that point. Run with make test, or with a number of rounds as
+ * argument for a longer run
+ */
+public class WalRecoveryTest {
+    private static final String LOG_FILE = "wal.log";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        tornRecords();
+        for(int seed = 0; seed < rounds; seed++){
+            checkpointCrashWindows(seed);
+        }
+        System.out.println("WalRecoveryTest passed");
+    }
+
+    /**
+     * Cuts a log of committed records at every byte, and damages every record of it in turn. Recovery has to return
+     * the records before the first incomplete or damaged one and cut the file there, so that a record appended after
+     * the recovery is read back right after them
+     */
+    private static void tornRecords() throws IOException {
+        Path dir = Files.createTempDirectory("wal");
+        try {
+            int headerSize = headerSize(dir);
+
+            Path full = dir.resolve("full.log");
+            List<String> records = new ArrayList<>();
+            try(WriteAheadLog log = new WriteAheadLog(full, WriteAheadLog.SyncPolicy.COMMIT, 0, 0,
+                    (type, key, value) -> { })){
+                for(int i = 0; i < 20; i++){
+                    byte type = i % 3 == 2 ? WriteAheadLog.DELETE : WriteAheadLog.INSERT;
+                    double value = type == WriteAheadLog.INSERT ? i * 1.5 : 0;
+                    log.commit(log.append(type, i * 7, value));
+                    records.add(record(type, i * 7, value));
+                }
+            }
+            byte[] bytes = Files.readAllBytes(full);
+            int recordSize = (bytes.length - headerSize) / records.size();
+
+            Path log = dir.resolve(LOG_FILE);
+            for(int length = headerSize; length <= bytes.length; length++){
+                Files.write(log, Arrays.copyOf(bytes, length));
+                int numValid = (length - headerSize) / recordSize;
+                checkRecovery(log, records.subList(0, numValid), headerSize + numValid * recordSize,
+                        "log cut at byte " + length);
+            }
+            for(int i = 0; i < records.size(); i++){
+                for(int offset : new int[]{0, 1, recordSize - 1}){
+                    byte[] damaged = bytes.clone();
+                    damaged[headerSize + i * recordSize + offset] ^= 0x10;
+                    Files.write(log, damaged);
+                    checkRecovery(log, records.subList(0, i), headerSize + i * recordSize,
+                            "record " + i + " damaged at byte " + offset);
+                }
+            }
+            byte[] garbage = new byte[recordSize - 1];
+            new Random(1).nextBytes(garbage);
+            byte[] withGarbage = Arrays.copyOf(bytes, bytes.length + garbage.length);
+            System.arraycopy(garbage, 0, withGarbage, bytes.length, garbage.length);
+            Files.write(log, withGarbage);
+            checkRecovery(log, records, bytes.length, "log with garbage after the last record");
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * Opens a damaged log, checks what it recovers and the size it is cut to, appends a record and opens it again
+     * @param log - the damaged log
+     * @param expected - the records it must recover
+     * @param size - size of the file once recovered
+     * @param name - description of the damage
+     */
+    private static void checkRecovery(Path log, List<String> expected, long size, String name) throws IOException {
+        List<String> recovered = new ArrayList<>();
+        try(WriteAheadLog wal = new WriteAheadLog(log, WriteAheadLog.SyncPolicy.COMMIT, 0, 0,
+                (type, key, value) -> recovered.add(record(type, key, value)))){
+            check(recovered.equals(expected), name + ": recovered " + recovered + ", expected " + expected);
+            check(Files.size(log) == size, name + ": log is " + Files.size(log) + " bytes, expected " + size);
+            wal.commit(wal.append(WriteAheadLog.INSERT, -1, -1.0));
+        }
+        List<String> reopened = new ArrayList<>();
+        new WriteAheadLog(log, WriteAheadLog.SyncPolicy.COMMIT, 0, 0,
+                (type, key, value) -> reopened.add(record(type, key, value))).close();
+        List<String> appended = new ArrayList<>(expected);
+        appended.add(record(WriteAheadLog.INSERT, -1, -1.0));
+        check(reopened.equals(appended), name + ": record appended after recovery was not read back, got " + reopened);
+    }
+
+    /**
+     * Writes to a tree with the COMMIT policy, so every write that returned is in the files of the directory, and
+     * snapshots the directory before and after a checkpoint. From the two snapshots it builds the directory a crash
+     * leaves at each step of the checkpoint:
+     * - the new checkpoint is partially written to its temporary file
+     * - the new checkpoint is renamed into place but the log is not truncated yet and the old checkpoint is still
+     *   there
+     * - the log is truncated but the old checkpoint is not deleted yet
+     * - the new checkpoint is in place but the last records of the old log never reached the file, as with the NONE
+     *   policy. Their writes are in the checkpoint, and new records have to be numbered after them
+     * Each of them has to recover the writes made before the checkpoint, and the writes made after that recovery have
+     * to survive the next one
+     * @param seed - seed of the workload
+     */
+    private static void checkpointCrashWindows(int seed) throws IOException {
+        Random random = new Random(seed);
+        int m = 3 + random.nextInt(8);
+        Path dir = Files.createTempDirectory("durable");
+        List<Path> crashes = new ArrayList<>();
+        try {
+            int headerSize = headerSize(dir);
+            TreeMap<Integer, Double> expected = new TreeMap<>();
+            try(DurableBPlusTree tree = new DurableBPlusTree(dir, m, WriteAheadLog.SyncPolicy.COMMIT, 0)){
+                for(int round = 0; round < 3; round++){
+                    write(tree, expected, random, 50 + random.nextInt(300));
+                    Path before = copyDirectory(dir);
+                    crashes.add(before);
+                    tree.checkpoint();
+                    Path after = copyDirectory(dir);
+                    crashes.add(after);
+                    String name = "seed " + seed + ", checkpoint " + round;
+
+                    Path tmpWritten = copyDirectory(before);
+                    crashes.add(tmpWritten);
+                    byte[] checkpoint = Files.readAllBytes(checkpointFiles(after).get(0));
+                    Files.write(tmpWritten.resolve(CHECKPOINT_PREFIX + "tmp"),
+                            Arrays.copyOf(checkpoint, random.nextInt(checkpoint.length)));
+                    checkRecovery(tmpWritten, m, expected, random, name + ", temporary file written");
+
+                    Path renamed = copyDirectory(before);
+                    crashes.add(renamed);
+                    copyInto(checkpointFiles(after), renamed);
+                    checkRecovery(renamed, m, expected, random, name + ", renamed before the log was truncated");
+
+                    Path truncated = copyDirectory(after);
+                    crashes.add(truncated);
+                    copyInto(checkpointFiles(before), truncated);
+                    checkRecovery(truncated, m, expected, random, name + ", truncated before the old one was deleted");
+
+                    Path lostTail = copyDirectory(before);
+                    crashes.add(lostTail);
+                    copyInto(checkpointFiles(after), lostTail);
+                    Path log = lostTail.resolve(LOG_FILE);
+                    byte[] records = Files.readAllBytes(log);
+                    Files.write(log, Arrays.copyOf(records, headerSize + random.nextInt(records.length - headerSize)));
+                    checkRecovery(lostTail, m, expected, random, name + ", log tail lost");
+
+                    checkRecovery(after, m, expected, random, name + ", completed");
+                }
+            }
+        } finally {
+            deleteDirectory(dir);
+            for(Path crash : crashes){
+                deleteDirectory(crash);
+            }
+        }
+    }
+
+    /**
+     * Opens a crashed tree directory and compares it with the writes committed before the crash, then writes to it,
+     * closes it and opens it again
+     * @param dir - the crashed directory, modified by the check
+     * @param m - order of the tree
+     * @param committed - the writes committed before the crash
+     * @param random - source of the writes made after the recovery
+     * @param name - description of the crash
+     */
+    private static void checkRecovery(Path dir, int m, TreeMap<Integer, Double> committed, Random random,
+                                      String name) throws IOException {
+        TreeMap<Integer, Double> expected = new TreeMap<>(committed);
+        try(DurableBPlusTree tree = new DurableBPlusTree(dir, m, WriteAheadLog.SyncPolicy.NONE, 0)){
+            check(tree.search(Integer.MIN_VALUE, Integer.MAX_VALUE).equals(new ArrayList<>(expected.values())),
+                    name + ": recovered tree differs from the committed writes");
+            write(tree, expected, random, 1 + random.nextInt(50));
+        }
+        try(DurableBPlusTree tree = new DurableBPlusTree(dir, m, WriteAheadLog.SyncPolicy.NONE, 0)){
+            check(tree.search(Integer.MIN_VALUE, Integer.MAX_VALUE).equals(new ArrayList<>(expected.values())),
+                    name + ": writes made after the recovery were lost");
+        }
+    }
+
+    /**
+     * Deletes a random key if it is in the tree and inserts it otherwise, a number of times
+     */
+    private static void write(DurableBPlusTree tree, TreeMap<Integer, Double> expected, Random random, int n){
+        for(int i = 0; i < n; i++){
+            int key = random.nextInt(200);
+            if(expected.containsKey(key)){
+                tree.delete(key);
+                expected.remove(key);
+            }else{
+                double value = random.nextDouble();
+                tree.insert(key, value);
+                expected.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Returns the size of a log without records
+     * @param dir - a directory to create the log in, which is deleted again
+     * @return - int value
+     */
+    private static int headerSize(Path dir) throws IOException {
+        Path empty = dir.resolve("empty.log");
+        new WriteAheadLog(empty, WriteAheadLog.SyncPolicy.COMMIT, 0, 0, (type, key, value) -> { }).close();
+        int size = (int) Files.size(empty);
+        Files.delete(empty);
+        return size;
+    }
+
+    private static String record(byte type, int key, double value){
+        return (type == WriteAheadLog.INSERT ? "insert " : "delete ") + key + " " + value;
+    }
+
+    private static List<Path> checkpointFiles(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir, CHECKPOINT_PREFIX + "*")){
+            for(Path file : stream){
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static void copyInto(List<Path> files, Path dir) throws IOException {
+        for(Path file : files){
+            Files.copy(file, dir.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Path copyDirectory(Path dir) throws IOException {
+        Path copy = Files.createTempDirectory("crash");
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)){
+            for(Path file : stream){
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+        return copy;
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        if(!Files.exists(dir)){
+            return;
+        }
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)){
+            for(Path file : stream){
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static void check(boolean condition, String message){
+        if(!condition){
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.Random;
+
+/**
+ * Regression checks of the write buffered mode of bplustree, which compare a buffered tree with one that applies
+ * every write directly. Run with make test
+ */
+public class WriteBufferingTest {
+    private static final int FILLER_KEYS = 500;
+    private static final int FILLER_GAP = 1000;
+
+    public static void main(String[] args){
+        deleteAfterFlushedDuplicates();
+        deleteAfterBufferedInsert();
+        int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        for(int seed = 0; seed < seeds; seed++){
+            singleLeafDuplicates(seed);
+        }
+        System.out.println("WriteBufferingTest passed");
+    }
+
+    /**
+     * Two pairs with the same key reach a leaf node with room for them and a buffered delete for the key follows. A
+     * search has to return the pair that is left once the delete removes one of the two from the leaf node
+     */
+    private static void deleteAfterFlushedDuplicates(){
+        bplustree plain = new bplustree(8);
+        bplustree buffered = new bplustree(8);
+        buffered.enableWriteBuffering(64);
+        for(bplustree tree : new bplustree[]{plain, buffered}){
+            fill(tree, 8);
+            tree.insert(55, 1.0);
+            tree.insert(55, 2.0);
+            tree.flushBuffers();
+            tree.delete(55);
+        }
+        compare(plain, buffered, 55, "delete after flushed duplicates");
+        buffered.flushBuffers();
+        compare(plain, buffered, 55, "delete after flushed duplicates, flushed");
+        compareScans(plain, buffered, "delete after flushed duplicates");
+    }
+
+    /**
+     * The leaf node holds a pair and an insert and a delete for its key are buffered. The delete can remove the pair of
+     * the leaf node rather than the buffered insert, so it must not cancel the insert
+     */
+    private static void deleteAfterBufferedInsert(){
+        bplustree plain = new bplustree(8);
+        bplustree buffered = new bplustree(8);
+        buffered.enableWriteBuffering(64);
+        for(bplustree tree : new bplustree[]{plain, buffered}){
+            fill(tree, 8);
+            tree.insert(55, 1.0);
+            tree.flushBuffers();
+            tree.insert(55, 2.0);
+            tree.delete(55);
+        }
+        compare(plain, buffered, 55, "delete after buffered insert");
+        buffered.flushBuffers();
+        compare(plain, buffered, 55, "delete after buffered insert, flushed");
+        compareScans(plain, buffered, "delete after buffered insert");
+    }
+
+    /**
+     * Random inserts, deletes and searches of a few keys with duplicates. Both trees are bulk loaded with the same half
+     * full leaf nodes and at most three pairs of each duplicated key are live, so no leaf node splits, merges or
+     * borrows and the pairs with equal keys stay in one leaf node in the order they were inserted. Which of them a
+     * search returns and a delete removes depends on where they are in the leaf node, so the duplicated keys are put
+     * in different leaf nodes, where the writes of one cannot move the pairs of another
+     * @param seed - seed of the workload
+     */
+    private static void singleLeafDuplicates(int seed){
+        Random random = new Random(seed);
+        int indexOrder = 3 + random.nextInt(6);
+        int leafOrder = 16 + random.nextInt(33);
+        int bufferCapacity = 1 + random.nextInt(16);
+        bplustree plain = load(indexOrder, leafOrder);
+        bplustree buffered = load(indexOrder, leafOrder);
+        buffered.enableWriteBuffering(bufferCapacity);
+
+        //a leaf node holds fewer than 50 of the filler keys, so keys that are 100 of them apart are in different ones
+        int[] keys = new int[3];
+        for(int i = 0; i < keys.length; i++){
+            keys[i] = (i * 150 + random.nextInt(50)) * FILLER_GAP + 1 + random.nextInt(FILLER_GAP - 1);
+        }
+        int[] copies = new int[keys.length];
+        String name = "seed " + seed;
+        for(int op = 0; op < 400; op++){
+            int k = random.nextInt(keys.length);
+            int choice = random.nextInt(10);
+            if(choice < 4 && copies[k] < 3){
+                double value = op;
+                plain.insert(keys[k], value);
+                buffered.insert(keys[k], value);
+                copies[k]++;
+            }else if(choice < 7){
+                plain.delete(keys[k]);
+                buffered.delete(keys[k]);
+                copies[k] = Math.max(0, copies[k] - 1);
+            }else if(choice < 9){
+                compare(plain, buffered, keys[k], name + ", op " + op);
+            }else{
+                buffered.flushBuffers();
+            }
+        }
+        for(int key : keys){
+            compare(plain, buffered, key, name);
+        }
+        compareScans(plain, buffered, name);
+    }
+
+    private static bplustree load(int indexOrder, int leafOrder){
+        BulkLoader loader = new BulkLoader(indexOrder, leafOrder, 0.5, false);
+        for(int i = 0; i < FILLER_KEYS; i++){
+            loader.add(i * FILLER_GAP, i);
+        }
+        return loader.build();
+    }
+
+    private static void fill(bplustree tree, int n){
+        for(int i = 0; i < n; i++){
+            tree.insert(i * 10, i);
+        }
+    }
+
+    private static void compare(bplustree plain, bplustree buffered, int key, String name){
+        Double expected = plain.search(key);
+        Double actual = buffered.search(key);
+        check(expected == null ? actual == null : expected.equals(actual),
+                name + ": search of " + key + " returned " + actual + ", expected " + expected);
+    }
+
+    private static void compareScans(bplustree plain, bplustree buffered, String name){
+        RangeCursor expected = plain.cursor(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        RangeCursor actual = buffered.cursor(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        while(expected.next()){
+            check(actual.next(), name + ": scan ended before key " + expected.getKey());
+            check(expected.getKey() == actual.getKey() && expected.getValue() == actual.getValue(),
+                    name + ": scan returned " + actual.getKey() + "=" + actual.getValue() + ", expected "
+                            + expected.getKey() + "=" + expected.getValue());
+        }
+        check(!actual.next(), name + ": scan returned extra key " + actual.getKey());
+    }
+
+    private static void check(boolean condition, String message){
+        if(!condition){
+            throw new AssertionError(message);
+        }
+    }
+}